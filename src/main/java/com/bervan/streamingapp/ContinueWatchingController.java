@@ -0,0 +1,51 @@
+package com.bervan.streamingapp;
+
+import com.bervan.common.user.User;
+import com.bervan.streamingapp.watch.ContinueWatchingService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/streaming/continue-watching")
+public class ContinueWatchingController {
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final ContinueWatchingService continueWatchingService;
+
+    public ContinueWatchingController(ContinueWatchingService continueWatchingService) {
+        this.continueWatchingService = continueWatchingService;
+    }
+
+    /**
+     * @param position       seconds to resume from, 0 for an up-next episode
+     * @param durationSeconds {@code null} when the duration is unknown
+     * @param upNext         the previous episode was nearly finished, this is the one after it
+     */
+    public record ContinueWatchingItemDto(
+            String productionName,
+            String title,
+            String posterUrl,
+            String videoFolderId,
+            String videoName,
+            String seasonName,
+            double position,
+            Double durationSeconds,
+            boolean upNext,
+            LocalDateTime lastWatched
+    ) {}
+
+    @GetMapping
+    public ResponseEntity<List<ContinueWatchingItemDto>> getContinueWatching(
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal User user) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        int size = limit != null ? Math.max(1, limit) : DEFAULT_LIMIT;
+        return ResponseEntity.ok(continueWatchingService.getFeed(user.getId(), size));
+    }
+}
@@ -1,5 +1,13 @@
 package com.bervan.streamingapp;
 
+import com.bervan.common.user.User;
+import com.bervan.streamingapp.catalog.CatalogFacetIndex;
+import com.bervan.streamingapp.catalog.CatalogPage;
+import com.bervan.streamingapp.catalog.CatalogSearchIndex;
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.catalog.CatalogSnapshot;
+import com.bervan.streamingapp.catalog.CatalogSort;
+import com.bervan.streamingapp.catalog.CatalogVideoIndex;
 import com.bervan.streamingapp.config.ProductionData;
 import com.bervan.streamingapp.config.ProductionDetails;
 import com.bervan.streamingapp.config.structure.BaseRootProductionStructure;
@@ -7,25 +15,47 @@ import com.bervan.streamingapp.config.structure.EpisodeStructure;
 import com.bervan.streamingapp.config.structure.MovieBaseRootProductionStructure;
 import com.bervan.streamingapp.config.structure.TvSeriesBaseRootProductionStructure;
 import com.bervan.streamingapp.config.structure.SeasonStructure;
+import com.bervan.streamingapp.media.VideoProbeService;
+import com.bervan.streamingapp.signing.SignedUrlService;
+import com.bervan.streamingapp.watch.WatchProgressService;
 import com.bervan.filestorage.model.Metadata;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/streaming/productions")
 public class ProductionsApiController {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final Map<String, Function<ProductionSummaryDto, Object>> SUMMARY_FIELDS = summaryFieldAccessors();
 
     private final Map<String, ProductionData> streamingProductionData;
     private final VideoManager videoManager;
-
-    public ProductionsApiController(Map<String, ProductionData> streamingProductionData, VideoManager videoManager) {
+    private final CatalogService catalogService;
+    private final WatchProgressService watchProgressService;
+    private final VideoProbeService videoProbeService;
+    private final SignedUrlService signedUrlService;
+
+    public ProductionsApiController(Map<String, ProductionData> streamingProductionData, VideoManager videoManager,
+                                    CatalogService catalogService, WatchProgressService watchProgressService,
+                                    VideoProbeService videoProbeService, SignedUrlService signedUrlService) {
         this.streamingProductionData = streamingProductionData;
         this.videoManager = videoManager;
+        this.catalogService = catalogService;
+        this.watchProgressService = watchProgressService;
+        this.videoProbeService = videoProbeService;
+        this.signedUrlService = signedUrlService;
     }
 
     // ---- DTOs ----
@@ -50,6 +80,18 @@ public class ProductionsApiController {
             String videoFormat
     ) {}
 
+    /**
+     * @param items {@link ProductionSummaryDto}s, or maps with the requested fields only when {@code fields} was given
+     */
+    public record ProductionPageDto(List<?> items, String nextCursor, int total) {}
+
+    /**
+     * @param facets facet key ({@code categories}, {@code country}, {@code audioLang}, {@code year}) to value counts
+     */
+    public record FacetedPageDto(ProductionPageDto page, Map<String, Map<String, Integer>> facets) {}
+
+    public record SearchHitDto(ProductionSummaryDto production, double score) {}
+
     public record ProductionDetailsDto(
             ProductionSummaryDto summary,
             List<SeasonDto> seasons,
@@ -66,20 +108,77 @@ public class ProductionsApiController {
             Map<String, String> subtitleUrls,
             double watchProgress,
             String nextEpisodeId,
-            String prevEpisodeId
+            String prevEpisodeId,
+            Double durationSeconds
     ) {}
 
     // ---- Endpoints ----
 
+    /**
+     * Full catalog listing served from bytes serialized once per catalog version.
+     * Clients revalidate with If-None-Match and get 304 without any serialization work.
+     *
+     * When any of {@code limit}, {@code cursor}, {@code fields} or {@code sort} is given, a
+     * {@link ProductionPageDto} is returned instead, sliced from precomputed sort orders.
+     * {@code sort} is one of {@code title}, {@code rating}, {@code year}, prefixed with {@code -} for descending.
+     */
     @GetMapping
-    public ResponseEntity<List<ProductionSummaryDto>> listProductions() {
-        List<ProductionSummaryDto> result = streamingProductionData.values().stream()
-                .map(this::toSummaryDto)
-                .sorted(Comparator.comparing(
-                        p -> p.title() != null ? p.title().toLowerCase() : "",
-                        Comparator.nullsLast(Comparator.naturalOrder())
-                ))
-                .collect(Collectors.toList());
+    public ResponseEntity<?> listProductions(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String sort,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        CatalogSnapshot snapshot = catalogService.current();
+        if (limit != null || cursor != null || fields != null || sort != null) {
+            String etag = pageEtag(snapshot, limit, cursor, fields, sort);
+            if (etagMatches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            try {
+                return ResponseEntity.ok()
+                        .eTag(etag)
+                        .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                        .body(buildPage(snapshot, limit, cursor, fields, sort, null));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+        }
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        String etag = gzip ? snapshot.getListingGzipEtag() : snapshot.getListingEtag();
+        if (etagMatches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getListingJsonGzip());
+        }
+        return response.body(snapshot.getListingJson());
+    }
+
+    /**
+     * Ranked search over titles, tags, categories, country and descriptions.
+     * Supports prefixes ("brea" finds "Breaking Bad") and small typos ("brekaing").
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<SearchHitDto>> search(@RequestParam String q,
+                                                     @RequestParam(required = false) Integer limit) {
+        int maxHits = limit == null ? DEFAULT_SEARCH_LIMIT : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        CatalogSnapshot snapshot = catalogService.current();
+        List<SearchHitDto> result = new ArrayList<>();
+        for (CatalogSearchIndex.Hit hit : snapshot.getSearchIndex().search(q, maxHits)) {
+            result.add(new SearchHitDto(snapshot.getByOrdinal(hit.ordinal()), hit.score()));
+        }
         return ResponseEntity.ok(result);
     }
 
@@ -122,7 +221,92 @@ public class ProductionsApiController {
     }
 
     @GetMapping("/{name}/video/{videoFolderId}")
-    public ResponseEntity<VideoInfoDto> getVideoInfo(@PathVariable String name, @PathVariable String videoFolderId) {
+    public ResponseEntity<VideoInfoDto> getVideoInfo(@PathVariable String name, @PathVariable String videoFolderId,
+                                                     @AuthenticationPrincipal User user) {
+        double watchProgress = user != null
+                ? watchProgressService.getProgress(user.getId(), List.of(videoFolderId)).getOrDefault(videoFolderId, 0.0)
+                : 0.0;
+        CatalogVideoIndex.VideoEntry entry = catalogService.current().getVideoIndex().get(videoFolderId);
+        if (entry != null && entry.productionName().equals(name)) {
+            return ResponseEntity.ok(toVideoInfoDto(entry, watchProgress));
+        }
+        // not indexed yet (e.g. uploaded after the last reload), resolve it the slow way
+        return loadVideoInfo(name, videoFolderId, watchProgress);
+    }
+
+    /**
+     * Watch positions (seconds) of the current user for all videos of the production, in one query.
+     */
+    @GetMapping("/{name}/progress")
+    public ResponseEntity<Map<String, Double>> getWatchProgress(@PathVariable String name,
+                                                                @AuthenticationPrincipal User user) {
+        if (user == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        CatalogSnapshot snapshot = catalogService.current();
+        if (snapshot.getSummary(name) == null) return ResponseEntity.notFound().build();
+
+        List<String> videoIds = snapshot.getVideoIndex().getProductionVideos(name).stream()
+                .map(CatalogVideoIndex.VideoEntry::videoFolderId)
+                .toList();
+        return ResponseEntity.ok(watchProgressService.getProgress(user.getId(), videoIds));
+    }
+
+    /**
+     * Video info for a whole season or a list of ids in one request, served from the catalog snapshot.
+     * Without parameters all videos of the production are returned. Unknown ids are skipped.
+     */
+    @GetMapping("/{name}/videos")
+    public ResponseEntity<List<VideoInfoDto>> getVideosInfo(@PathVariable String name,
+                                                            @RequestParam(required = false) String season,
+                                                            @RequestParam(required = false) List<String> ids,
+                                                            @AuthenticationPrincipal User user) {
+        CatalogSnapshot snapshot = catalogService.current();
+        if (snapshot.getSummary(name) == null) return ResponseEntity.notFound().build();
+
+        CatalogVideoIndex videoIndex = snapshot.getVideoIndex();
+        List<CatalogVideoIndex.VideoEntry> entries;
+        if (ids != null && !ids.isEmpty()) {
+            entries = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                CatalogVideoIndex.VideoEntry entry = videoIndex.get(id);
+                if (entry != null && entry.productionName().equals(name)) {
+                    entries.add(entry);
+                }
+            }
+        } else {
+            entries = videoIndex.getProductionVideos(name);
+        }
+
+        if (season != null) {
+            entries = entries.stream().filter(entry -> season.equals(entry.seasonName())).toList();
+        }
+        Map<String, Double> progress = user != null
+                ? watchProgressService.getProgress(user.getId(), entries.stream().map(CatalogVideoIndex.VideoEntry::videoFolderId).toList())
+                : Map.of();
+
+        List<VideoInfoDto> result = new ArrayList<>(entries.size());
+        for (CatalogVideoIndex.VideoEntry entry : entries) {
+            result.add(toVideoInfoDto(entry, progress.getOrDefault(entry.videoFolderId(), 0.0)));
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private VideoInfoDto toVideoInfoDto(CatalogVideoIndex.VideoEntry entry, double watchProgress) {
+        return new VideoInfoDto(
+                entry.productionName(),
+                entry.videoFolderId(),
+                entry.videoName(),
+                entry.videoFormat(),
+                signedUrlService.sign(entry.videoUrl()),
+                entry.availableSubtitles(),
+                signedUrlService.sign(entry.subtitleUrls()),
+                watchProgress,
+                entry.nextEpisodeId(),
+                entry.prevEpisodeId(),
+                videoProbeService.getDurationSeconds(entry.videoFolderId())
+        );
+    }
+
+    private ResponseEntity<VideoInfoDto> loadVideoInfo(String name, String videoFolderId, double watchProgress) {
         ProductionData pd = streamingProductionData.get(name);
         if (pd == null) return ResponseEntity.notFound().build();
 
@@ -179,47 +363,139 @@ public class ProductionsApiController {
                 videoFolderId,
                 videoName != null ? videoName : videoFolderId,
                 videoFormat,
-                videoUrl,
+                signedUrlService.sign(videoUrl),
                 availableSubtitles,
-                subtitleUrls,
-                0.0,
+                signedUrlService.sign(subtitleUrls),
+                watchProgress,
                 nextVideo.map(m -> m.getId().toString()).orElse(null),
-                prevVideo.map(m -> m.getId().toString()).orElse(null)
+                prevVideo.map(m -> m.getId().toString()).orElse(null),
+                videoProbeService.getDurationSeconds(videoFolderId)
         ));
     }
 
+    /**
+     * Faceted filtering: values within one facet are OR-ed, facets are AND-ed. The matching page
+     * comes with counts per facet value so clients can render filter chips without the full catalog.
+     * Paging, projection and sorting work as in {@link #listProductions}.
+     */
+    @GetMapping("/filter")
+    public ResponseEntity<?> filterProductions(
+            @RequestParam(required = false) List<String> category,
+            @RequestParam(required = false) List<String> country,
+            @RequestParam(required = false) List<String> audioLang,
+            @RequestParam(required = false) Integer yearFrom,
+            @RequestParam(required = false) Integer yearTo,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String sort) {
+        CatalogSnapshot snapshot = catalogService.current();
+        Map<CatalogFacetIndex.Facet, Collection<String>> selected = new EnumMap<>(CatalogFacetIndex.Facet.class);
+        selected.put(CatalogFacetIndex.Facet.CATEGORY, category);
+        selected.put(CatalogFacetIndex.Facet.COUNTRY, country);
+        selected.put(CatalogFacetIndex.Facet.AUDIO_LANG, audioLang);
+        CatalogFacetIndex.Result result = snapshot.getFacetIndex()
+                .query(new CatalogFacetIndex.Query(selected, yearFrom, yearTo));
+
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        result.counts().forEach((facet, counts) -> facets.put(facet.getKey(), counts));
+        try {
+            ProductionPageDto page = buildPage(snapshot, limit, cursor, fields, sort, result.matches());
+            return ResponseEntity.ok(new FacetedPageDto(page, facets));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private static String pageEtag(CatalogSnapshot snapshot, Integer limit, String cursor, String fields, String sort) {
+        // weak tag: same catalog version and same query give the same page
+        return "W/\"" + DigestUtils.md5DigestAsHex((snapshot.getListingEtag() + "|" + limit + "|" + cursor
+                + "|" + fields + "|" + sort).getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private static ProductionPageDto buildPage(CatalogSnapshot snapshot, Integer limit, String cursor,
+                                               String fields, String sort, BitSet filter) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        CatalogSort catalogSort = sort != null && !sort.isBlank() ? CatalogSort.parse(sort) : CatalogSort.TITLE;
+        boolean descending = sort != null && CatalogSort.isDescending(sort);
+        List<String> projectedNames = parseFields(fields);
+        CatalogPage page = CatalogPage.slice(snapshot, catalogSort, descending, cursor, pageSize, filter);
+
+        if (projectedNames.isEmpty()) {
+            return new ProductionPageDto(page.items(), page.nextCursor(), page.total());
+        }
+        List<Map<String, Object>> projected = new ArrayList<>(page.items().size());
+        for (ProductionSummaryDto summary : page.items()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            for (String name : projectedNames) {
+                item.put(name, SUMMARY_FIELDS.get(name).apply(summary));
+            }
+            projected.add(item);
+        }
+        return new ProductionPageDto(projected, page.nextCursor(), page.total());
+    }
+
     // ---- Mapping helpers ----
 
-    private ProductionSummaryDto toSummaryDto(ProductionData pd) {
-        ProductionDetails d = pd.getProductionDetails();
-        if (d == null) {
-            return new ProductionSummaryDto(
-                    pd.getProductionName(), pd.getProductionName(),
-                    null, null, null, null, null,
-                    List.of(), List.of(), List.of(), null,
-                    "/api/streaming/productions/" + pd.getProductionName() + "/poster",
-                    "MP4"
-            );
-        }
-        return new ProductionSummaryDto(
-                pd.getProductionName(),
-                d.getName(),
-                d.getType() != null ? d.getType().name() : null,
-                d.getDescription(),
-                d.getRating(),
-                d.getReleaseYearStart(),
-                d.getReleaseYearEnd(),
-                d.getCategories() != null ? d.getCategories() : List.of(),
-                d.getTags() != null ? d.getTags() : List.of(),
-                d.getAudioLang() != null ? d.getAudioLang() : List.of(),
-                d.getCountry(),
-                "/api/streaming/productions/" + pd.getProductionName() + "/poster",
-                d.getVideoFormat() != null ? d.getVideoFormat().name() : "MP4"
-        );
+    private static List<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!SUMMARY_FIELDS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown field: " + name);
+            }
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static Map<String, Function<ProductionSummaryDto, Object>> summaryFieldAccessors() {
+        Map<String, Function<ProductionSummaryDto, Object>> accessors = new LinkedHashMap<>();
+        accessors.put("productionName", ProductionSummaryDto::productionName);
+        accessors.put("title", ProductionSummaryDto::title);
+        accessors.put("type", ProductionSummaryDto::type);
+        accessors.put("description", ProductionSummaryDto::description);
+        accessors.put("rating", ProductionSummaryDto::rating);
+        accessors.put("releaseYearStart", ProductionSummaryDto::releaseYearStart);
+        accessors.put("releaseYearEnd", ProductionSummaryDto::releaseYearEnd);
+        accessors.put("categories", ProductionSummaryDto::categories);
+        accessors.put("tags", ProductionSummaryDto::tags);
+        accessors.put("audioLang", ProductionSummaryDto::audioLang);
+        accessors.put("country", ProductionSummaryDto::country);
+        accessors.put("posterUrl", ProductionSummaryDto::posterUrl);
+        accessors.put("videoFormat", ProductionSummaryDto::videoFormat);
+        return Collections.unmodifiableMap(accessors);
+    }
+
+    // If-None-Match uses the weak comparison: W/ is ignored on both sides
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = stripWeak(candidate.trim());
+            if (tag.equals("*") || tag.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
     }
 
     private ProductionDetailsDto toDetailsDto(ProductionData pd) {
-        ProductionSummaryDto summary = toSummaryDto(pd);
+        ProductionSummaryDto summary = CatalogService.toSummaryDto(pd);
         BaseRootProductionStructure structure = pd.getProductionStructure();
         if (structure == null) {
             return new ProductionDetailsDto(summary, null, null);
@@ -1,6 +1,9 @@
 package com.bervan.streamingapp;
 
 import com.bervan.common.user.User;
+import com.bervan.streamingapp.remote.PlaybackSync;
+import com.bervan.streamingapp.store.ExpiringStore;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
@@ -14,9 +17,11 @@ import java.util.UUID;
 public class RemoteControlController {
 
     private final WsKeyService wsKeyService;
+    private final RemoteControlWebSocketHandler remoteControlHandler;
 
-    public RemoteControlController(WsKeyService wsKeyService) {
+    public RemoteControlController(WsKeyService wsKeyService, RemoteControlWebSocketHandler remoteControlHandler) {
         this.wsKeyService = wsKeyService;
+        this.remoteControlHandler = remoteControlHandler;
     }
 
     @PostMapping("/remote-control/key")
@@ -32,8 +37,27 @@ public class RemoteControlController {
 
         UUID userId = user.getId();
 
-        String key = wsKeyService.createKey(userId, roomId);
-        return ResponseEntity.ok(Collections.singletonMap("key", key));
+        try {
+            String key = wsKeyService.createKey(userId, roomId);
+            return ResponseEntity.ok(Collections.singletonMap("key", key));
+        } catch (ExpiringStore.CapacityExceededException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Sync mode state of a room on this node: room clock plus clock offset, last sync error and playback rate
+     * of every TV, for checking how well a sync room holds together.
+     */
+    @GetMapping("/remote-control/rooms/{roomId}/sync")
+    public ResponseEntity<PlaybackSync.RoomSyncStatus> syncStatus(@PathVariable String roomId,
+                                                                  @AuthenticationPrincipal User user) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return remoteControlHandler.syncStatus(roomId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 }
 
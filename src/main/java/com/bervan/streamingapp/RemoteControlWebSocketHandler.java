@@ -2,18 +2,136 @@ package com.bervan.streamingapp;
 
 
 import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.remote.PlaybackSync;
+import com.bervan.streamingapp.remote.RemoteConnection;
+import com.bervan.streamingapp.remote.RemoteFrame;
+import com.bervan.streamingapp.remote.RemoteMessages;
+import com.bervan.streamingapp.remote.RemoteProtocol;
+import com.bervan.streamingapp.remote.RemoteRole;
+import com.bervan.streamingapp.remote.RemoteRoom;
+import com.bervan.streamingapp.remote.RoomRouter;
+import com.bervan.streamingapp.remote.StatusCoalescer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Relays remote control messages between the devices of a room.
+ *
+ * Every connection is indexed by its session id together with its role and room, so routing a message
+ * is two map lookups. Messages from a remote go to every TV of the room, messages from a TV (status
+ * updates) go to every remote. Connections with an unknown device type are kept out of all rooms.
+ *
+ * Outbound messages go through the bounded per-connection queue of {@link RemoteConnection}, so a TV on a
+ * bad network holds up at most one sending thread and cannot make memory grow; see there for the overflow policy.
+ * Status updates from TVs are coalesced per room and action by {@link StatusCoalescer}, commands are never
+ * delayed.
+ *
+ * Clients choose JSON text or the compact {@link com.bervan.streamingapp.remote.RemoteBinaryCodec} frames
+ * with the WebSocket subprotocol ({@link RemoteProtocol}); a message is converted once per format that its
+ * recipients use.
+ *
+ * Peers connected to this node get messages directly; {@link RoomRouter} forwards them to peers of the same
+ * room on other nodes and hands back what other nodes forward here.
+ *
+ * Every {@code heartbeat-interval-ms} each connection gets a ping; one that left a written ping unanswered
+ * for {@code heartbeat-max-missed} intervals is removed from its room at once and then closed. Timed work
+ * (heartbeats, coalesced status updates, time sync) is triggered by one scheduler thread that only keeps time
+ * and updates the room maps; the sends, close frames and broker announcements it causes run on a separate IO
+ * thread. A device that is slow to take a write can hold up that thread, delaying the sends queued behind it,
+ * but not the timers, and pings it delays are not counted as missed. Such a device is closed by the send
+ * time limit. Remotes are told with
+ * {@link RemoteMessages#TV_OFFLINE} when a room has no TV left, so their commands do not vanish silently.
+ *
+ * Rooms in sync mode turn playback commands into scheduled starts on a shared clock, see {@link PlaybackSync}.
+ */
 @Component
-public class RemoteControlWebSocketHandler implements WebSocketHandler {
+public class RemoteControlWebSocketHandler implements WebSocketHandler, SubProtocolCapable {
     private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
 
-    private final Map<String, WebSocketSession> tvSessions = new ConcurrentHashMap<>();
-    private final Map<String, WebSocketSession> remoteSessions = new ConcurrentHashMap<>();
+    private static final int TIME_SYNC_BURST = 4;
+    private static final long TIME_SYNC_BURST_SPACING_MS = 250;
+
+    private final Map<String, RemoteConnection> sessions = new ConcurrentHashMap<>();
+    private final Map<String, RemoteRoom> rooms = new ConcurrentHashMap<>();
+    // makes reading a room's membership and announcing it one step, see announceMembership
+    private final Object membershipLock = new Object();
+    private final long sendTimeLimitMs;
+    private final int sendBufferSize;
+    private final Counter droppedStatus;
+    private final Counter closedSlow;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService io;
+    private final StatusCoalescer statusCoalescer;
+    private final RoomRouter roomRouter;
+    private final PlaybackSync playbackSync;
+    private final int heartbeatMaxMissed;
+    private final Timer roundTrip;
+    private final Counter reaped;
+
+    public RemoteControlWebSocketHandler(MeterRegistry meterRegistry, RoomRouter roomRouter, PlaybackSync playbackSync,
+                                         @Value("${streaming-platform.remote-control.send-time-limit-ms:5000}") long sendTimeLimitMs,
+                                         @Value("${streaming-platform.remote-control.send-buffer-size:65536}") int sendBufferSize,
+                                         @Value("${streaming-platform.remote-control.status-max-rate:4}") double statusMaxRate,
+                                         @Value("${streaming-platform.remote-control.heartbeat-interval-ms:15000}") long heartbeatIntervalMs,
+                                         @Value("${streaming-platform.remote-control.heartbeat-max-missed:2}") int heartbeatMaxMissed) {
+        this.roomRouter = roomRouter;
+        this.playbackSync = playbackSync;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendBufferSize = sendBufferSize;
+        this.droppedStatus = meterRegistry.counter("streaming.remote_control.send_queue.dropped");
+        this.closedSlow = meterRegistry.counter("streaming.remote_control.slow_consumers_closed");
+        this.heartbeatMaxMissed = heartbeatMaxMissed;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "remote-control");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.io = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "remote-control-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.statusCoalescer = new StatusCoalescer(statusMaxRate, scheduler, io, this::sendStatus,
+                meterRegistry.counter("streaming.remote_control.status.received"),
+                meterRegistry.counter("streaming.remote_control.status.coalesced"));
+        this.roundTrip = Timer.builder("streaming.remote_control.rtt")
+                .description("WebSocket ping/pong round trip time per remote control connection")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.reaped = meterRegistry.counter("streaming.remote_control.sessions_reaped");
+        meterRegistry.gauge("streaming.remote_control.sessions", sessions, Map::size);
+        meterRegistry.gauge("streaming.remote_control.rooms", rooms, Map::size);
+        meterRegistry.gauge("streaming.remote_control.send_queue.messages", sessions,
+                s -> s.values().stream().mapToInt(RemoteConnection::queuedMessages).sum());
+        meterRegistry.gauge("streaming.remote_control.send_queue.max_messages", sessions,
+                s -> s.values().stream().mapToInt(RemoteConnection::queuedMessages).max().orElse(0));
+        meterRegistry.gauge("streaming.remote_control.send_queue.bytes", sessions,
+                s -> s.values().stream().mapToInt(RemoteConnection::queuedBytes).sum());
+        roomRouter.setLocalDelivery(this::deliverLocal);
+        if (heartbeatIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMs, heartbeatIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (playbackSync.getTimeSyncIntervalMs() > 0) {
+            scheduler.scheduleWithFixedDelay(() -> io.execute(this::timeSync), playbackSync.getTimeSyncIntervalMs(),
+                    playbackSync.getTimeSyncIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
@@ -21,35 +139,104 @@ public class RemoteControlWebSocketHandler implements WebSocketHandler {
         String roomId = (String) session.getAttributes().get("roomId");
         String sessionKey = roomId != null ? roomId : "default";
 
-        if ("TV".equals(deviceType)) {
-            tvSessions.put(sessionKey, session);
-            log.info("TV connected for room: " + sessionKey);
-        } else if ("REMOTE".equals(deviceType)) {
-            remoteSessions.put(sessionKey, session);
-            log.info("Remote control connected for room: " + sessionKey);
+        RemoteRole role = RemoteRole.of(deviceType);
+        if (role == null) {
+            log.warn("Ignoring WebSocket connection with unknown device type: " + deviceType);
+            return;
+        }
+        RemoteConnection connection = new RemoteConnection(session, role, sessionKey, sendTimeLimitMs,
+                sendBufferSize, droppedStatus, closedSlow);
+        sessions.put(session.getId(), connection);
+        boolean[] first = {false};
+        RemoteRoom joinedRoom = rooms.compute(sessionKey, (id, room) -> {
+            RemoteRoom joined = room != null ? room : new RemoteRoom(id);
+            first[0] = joined.members(role).isEmpty();
+            joined.add(connection);
+            return joined;
+        });
+        if (first[0]) {
+            announceMembership(sessionKey, role);
+        }
+        boolean firstTv = first[0] && role == RemoteRole.TV;
+        log.info((role == RemoteRole.TV ? "TV" : "Remote control") + " connected for room: " + sessionKey);
+
+        if (role == RemoteRole.TV && joinedRoom.getClock().isEnabled()) {
+            startTimeSync(connection);
+            scheduleIo(() -> {
+                if (joinedRoom.getClock().isAnchored()) {
+                    connection.send(playbackSync.personalize(connection, playbackSync.current(joinedRoom)), false);
+                }
+            }, TIME_SYNC_BURST * TIME_SYNC_BURST_SPACING_MS);
+        }
+        if (firstTv && !roomRouter.hasRemoteMembers(sessionKey, RemoteRole.TV)) {
+            route(joinedRoom, RemoteRole.REMOTE, RemoteMessages.notice(RemoteMessages.TV_ONLINE, sessionKey), false);
+        } else if (role == RemoteRole.REMOTE && !hasTv(joinedRoom)) {
+            connection.send(RemoteMessages.notice(RemoteMessages.TV_OFFLINE, sessionKey), false);
         }
     }
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
-        String payload = message.getPayload().toString();
+        RemoteConnection sender = sessions.get(session.getId());
+        if (sender == null) {
+            return;
+        }
+        if (message instanceof PongMessage pong) {
+            long rtt = sender.pong(pong);
+            if (rtt >= 0) {
+                roundTrip.record(rtt, TimeUnit.NANOSECONDS);
+            }
+            return;
+        }
+        RemoteRoom room = rooms.get(sender.getRoomId());
+        if (room == null) {
+            return;
+        }
 
-        String roomId = (String) session.getAttributes().get("roomId");
-        String sessionKey = roomId != null ? roomId : "default";
+        RemoteFrame forwarded;
+        try {
+            forwarded = RemoteFrame.of(message);
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping remote control message from session " + session.getId() + ": " + e.getMessage());
+            return;
+        }
 
-        // Forward message from remote to TV
-        if (remoteSessions.containsValue(session)) {
-            WebSocketSession tvSession = tvSessions.get(sessionKey);
-            if (tvSession != null && tvSession.isOpen()) {
-                tvSession.sendMessage(new TextMessage(payload));
+        // remote -> all TVs, TV -> all remotes (status updates)
+        String action = forwarded.action();
+        if (sender.getRole() == RemoteRole.REMOTE) {
+            if (PlaybackSync.SYNC_ON.equals(action) || PlaybackSync.SYNC_OFF.equals(action)) {
+                setSyncMode(room, PlaybackSync.SYNC_ON.equals(action));
+                route(room, RemoteRole.TV, forwarded, false);
+                route(room, RemoteRole.REMOTE, forwarded, false);
+                return;
+            }
+            if (!hasTv(room)) {
+                sender.send(RemoteMessages.notice(RemoteMessages.TV_OFFLINE, room.getId()), false);
+                return;
             }
+            RemoteFrame schedule = room.getClock().isEnabled() ? playbackSync.schedule(room, action, forwarded) : null;
+            route(room, RemoteRole.TV, schedule != null ? schedule : forwarded, false);
+            return;
         }
-        // Forward message from TV to remote (for status updates)
-        else if (tvSessions.containsValue(session)) {
-            WebSocketSession remoteSession = remoteSessions.get(sessionKey);
-            if (remoteSession != null && remoteSession.isOpen()) {
-                remoteSession.sendMessage(new TextMessage(payload));
+        if (PlaybackSync.TIME_SYNC.equals(action)) {
+            playbackSync.onTimeSync(sender, forwarded);
+            return;
+        }
+        if (PlaybackSync.SYNC_REPORT.equals(action)) {
+            if (playbackSync.anchor(room, sender, forwarded)) {
+                route(room, RemoteRole.TV, playbackSync.current(room), false);
+                return;
+            }
+            RemoteFrame correction = playbackSync.onReport(room, sender, forwarded);
+            if (correction != null) {
+                sender.send(correction, false);
             }
+            return;
+        }
+        if (action != null && !RemoteMessages.isControl(action)) {
+            statusCoalescer.offer(room, action, forwarded);
+        } else {
+            route(room, RemoteRole.REMOTE, forwarded, false);
         }
     }
 
@@ -60,19 +247,196 @@ public class RemoteControlWebSocketHandler implements WebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
-        String deviceType = (String) session.getAttributes().get("deviceType");
-        String roomId = (String) session.getAttributes().get("roomId");
-        String sessionKey = roomId != null ? roomId : "default";
-
-        if ("TV".equals(deviceType)) {
-            tvSessions.remove(sessionKey);
-        } else if ("REMOTE".equals(deviceType)) {
-            remoteSessions.remove(sessionKey);
+        RemoteConnection closed = sessions.get(session.getId());
+        if (closed != null) {
+            unregister(closed);
         }
     }
 
+    @Override
+    public List<String> getSubProtocols() {
+        return RemoteProtocol.SUBPROTOCOLS;
+    }
+
     @Override
     public boolean supportsPartialMessages() {
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return sync state of the room on this node, with clock offset, sync error and rate of its TVs
+     */
+    public Optional<PlaybackSync.RoomSyncStatus> syncStatus(String roomId) {
+        return Optional.ofNullable(rooms.get(roomId)).map(playbackSync::status);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        io.shutdownNow();
+    }
+
+    // on the scheduler: decides and updates the maps, the IO thread sends
+    private void heartbeat() {
+        List<RemoteConnection> alive = new ArrayList<>();
+        for (RemoteConnection connection : sessions.values()) {
+            try {
+                if (connection.expectPong(heartbeatMaxMissed)) {
+                    alive.add(connection);
+                    continue;
+                }
+                log.warn("Reaping remote control session " + connection.getId() + " in room "
+                        + connection.getRoomId() + ": no pong for " + heartbeatMaxMissed + " pings");
+                reaped.increment();
+                Runnable afterRemoval = remove(connection);
+                io.execute(() -> {
+                    try {
+                        if (afterRemoval != null) {
+                            afterRemoval.run();
+                        }
+                    } finally {
+                        connection.close(CloseStatus.SESSION_NOT_RELIABLE);
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.warn("Heartbeat of remote control session " + connection.getId() + " failed: " + e.getMessage());
+            }
+        }
+        io.execute(() -> {
+            for (RemoteConnection connection : alive) {
+                // reaped while this task waited behind a slow send
+                if (sessions.get(connection.getId()) != connection) {
+                    continue;
+                }
+                try {
+                    connection.ping();
+                } catch (RuntimeException e) {
+                    log.warn("Heartbeat of remote control session " + connection.getId() + " failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void scheduleIo(Runnable task, long delayMs) {
+        scheduler.schedule(() -> io.execute(task), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void timeSync() {
+        try {
+            for (RemoteRoom room : rooms.values()) {
+                if (room.getClock().isEnabled()) {
+                    for (RemoteConnection tv : room.members(RemoteRole.TV)) {
+                        tv.send(playbackSync.timeSyncRequest(), false);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Remote control time sync failed: " + e.getMessage());
+        }
+    }
+
+    private void setSyncMode(RemoteRoom room, boolean enabled) {
+        room.getClock().setEnabled(enabled);
+        if (enabled) {
+            room.members(RemoteRole.TV).forEach(this::startTimeSync);
+        }
+    }
+
+    // a few exchanges in quick succession so the estimate can pick a sample without queuing delay
+    private void startTimeSync(RemoteConnection tv) {
+        for (int i = 0; i < TIME_SYNC_BURST; i++) {
+            scheduleIo(() -> tv.send(playbackSync.timeSyncRequest(), false), i * TIME_SYNC_BURST_SPACING_MS);
+        }
+    }
+
+    /**
+     * Removes the connection from the session index and its room and announces the change; runs once per
+     * connection even when reaping and the close callback race.
+     */
+    private void unregister(RemoteConnection connection) {
+        Runnable afterRemoval = remove(connection);
+        if (afterRemoval != null) {
+            afterRemoval.run();
+        }
+    }
+
+    /**
+     * Removes the connection from the maps without any IO.
+     *
+     * @return the membership announcement and notices that follow the removal, {@code null} when the
+     * connection was removed already
+     */
+    private Runnable remove(RemoteConnection connection) {
+        if (!sessions.remove(connection.getId(), connection)) {
+            return null;
+        }
+        boolean[] last = {false};
+        RemoteRoom left = rooms.computeIfPresent(connection.getRoomId(), (id, room) -> {
+            room.remove(connection);
+            last[0] = room.members(connection.getRole()).isEmpty();
+            return room.isEmpty() ? null : room;
+        });
+        if (!last[0]) {
+            return () -> {
+            };
+        }
+        return () -> {
+            announceMembership(connection.getRoomId(), connection.getRole());
+            if (connection.getRole() == RemoteRole.TV && !roomRouter.hasRemoteMembers(connection.getRoomId(), RemoteRole.TV)) {
+                RemoteFrame notice = RemoteMessages.notice(RemoteMessages.TV_OFFLINE, connection.getRoomId());
+                if (left != null) {
+                    send(left, RemoteRole.REMOTE, notice, false);
+                }
+                roomRouter.forward(connection.getRoomId(), RemoteRole.REMOTE, notice, false);
+            }
+        };
+    }
+
+    /**
+     * Tells the router whether this node still hosts the role in the room. Runs after the room update, never
+     * inside {@code rooms.compute}; the state is read again under the lock, so when a join and a leave race
+     * the call that runs last announces the final state whatever order the two arrive in.
+     */
+    private void announceMembership(String roomId, RemoteRole role) {
+        synchronized (membershipLock) {
+            RemoteRoom room = rooms.get(roomId);
+            roomRouter.membershipChanged(roomId, role, room != null && !room.members(role).isEmpty());
+        }
+    }
+
+    private boolean hasTv(RemoteRoom room) {
+        return !room.members(RemoteRole.TV).isEmpty() || roomRouter.hasRemoteMembers(room.getId(), RemoteRole.TV);
+    }
+
+    private void sendStatus(RemoteRoom room, RemoteFrame status) {
+        route(room, RemoteRole.REMOTE, status, true);
+    }
+
+    private void route(RemoteRoom room, RemoteRole role, RemoteFrame message, boolean status) {
+        send(room, role, message, status);
+        roomRouter.forward(room.getId(), role, message, status);
+    }
+
+    private void deliverLocal(String roomId, RemoteRole role, RemoteFrame message, boolean status) {
+        RemoteRoom room = rooms.get(roomId);
+        if (room == null) {
+            return;
+        }
+        String action = message.action();
+        if (PlaybackSync.SYNC_ON.equals(action) || PlaybackSync.SYNC_OFF.equals(action)) {
+            if (role == RemoteRole.TV || room.members(RemoteRole.TV).isEmpty()) {
+                setSyncMode(room, PlaybackSync.SYNC_ON.equals(action));
+            }
+        } else if (role == RemoteRole.TV && PlaybackSync.isScheduled(action)) {
+            playbackSync.apply(room, message);
+        }
+        send(room, role, message, status);
+    }
+
+    private void send(RemoteRoom room, RemoteRole role, RemoteFrame message, boolean status) {
+        boolean scheduled = role == RemoteRole.TV && PlaybackSync.isScheduled(message.action());
+        for (RemoteConnection peer : room.members(role)) {
+            peer.send(scheduled ? playbackSync.personalize(peer, message) : message, status);
+        }
+    }
+}
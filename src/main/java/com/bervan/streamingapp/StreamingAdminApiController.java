@@ -1,25 +1,87 @@
 package com.bervan.streamingapp;
 
 import com.bervan.common.service.AuthService;
+import com.bervan.logging.JsonLogger;
 import com.bervan.streamingapp.config.ProductionData;
+import com.bervan.streamingapp.media.HlsIngestService;
+import com.bervan.streamingapp.media.HlsRenditionService;
+import com.bervan.streamingapp.media.MediaJob;
+import com.bervan.streamingapp.media.MediaJobService;
+import com.bervan.streamingapp.media.Mp4FaststartService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/streaming/admin")
 public class StreamingAdminApiController {
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
 
     private final StreamingAdminService adminService;
     private final Map<String, ProductionData> streamingProductionData;
+    private final MediaJobService mediaJobService;
+    private final Mp4FaststartService mp4FaststartService;
+    private final HlsIngestService hlsIngestService;
+    private final HlsRenditionService hlsRenditionService;
 
     public StreamingAdminApiController(StreamingAdminService adminService,
-                                        Map<String, ProductionData> streamingProductionData) {
+                                        Map<String, ProductionData> streamingProductionData,
+                                        MediaJobService mediaJobService,
+                                        Mp4FaststartService mp4FaststartService,
+                                        HlsIngestService hlsIngestService,
+                                        HlsRenditionService hlsRenditionService) {
         this.adminService = adminService;
         this.streamingProductionData = streamingProductionData;
+        this.mediaJobService = mediaJobService;
+        this.mp4FaststartService = mp4FaststartService;
+        this.hlsIngestService = hlsIngestService;
+        this.hlsRenditionService = hlsRenditionService;
+    }
+
+    public record MediaJobDto(
+            String id,
+            String type,
+            String target,
+            String state,
+            double progress,
+            String message,
+            Instant createdAt,
+            Instant startedAt,
+            Instant finishedAt
+    ) {
+        static MediaJobDto of(MediaJob job) {
+            return new MediaJobDto(job.getId(), job.getType(), job.getTarget(), job.getState().name(),
+                    job.getProgress(), job.getMessage(), job.getCreatedAt(), job.getStartedAt(), job.getFinishedAt());
+        }
+    }
+
+    /**
+     * @param renditions heights of the generated renditions, highest first
+     * @param job        latest rendition job of the video, {@code null} when none ran since startup
+     */
+    public record RenditionStatusDto(String videoFolderId, String videoName, List<Integer> renditions, MediaJobDto job) {}
+
+    /**
+     * The upload is stored at this point, so a post-processing step that cannot be queued is only logged;
+     * it can be started again through its own endpoint.
+     */
+    private void afterMp4Upload(String name, String storedIn, boolean convertToHls) {
+        try {
+            if (convertToHls) {
+                hlsIngestService.submitProduction(name);
+            } else {
+                mp4FaststartService.onUploaded(name, storedIn);
+            }
+        } catch (Exception e) {
+            log.warn("Stored MP4 upload for {}, but could not queue its {}: {}", name,
+                    convertToHls ? "HLS ingest" : "faststart", e.getMessage());
+        }
     }
 
     private boolean isAdmin() {
@@ -85,13 +147,15 @@ public class StreamingAdminApiController {
             @PathVariable String name,
             @RequestParam int seasonNumber,
             @RequestParam int episodeNumber,
-            @RequestParam MultipartFile file
+            @RequestParam MultipartFile file,
+            @RequestParam(defaultValue = "false") boolean convertToHls
     ) {
         if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         try {
-            adminService.addEpisodeMP4(name, seasonNumber, episodeNumber,
+            String storedIn = adminService.addEpisodeMP4(name, seasonNumber, episodeNumber,
                     file.getInputStream(), file.getOriginalFilename());
             adminService.reloadConfig(streamingProductionData);
+            afterMp4Upload(name, storedIn, convertToHls);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -118,12 +182,14 @@ public class StreamingAdminApiController {
     @PostMapping(value = "/productions/{name}/movie/mp4", consumes = "multipart/form-data")
     public ResponseEntity<Void> uploadMovieMP4(
             @PathVariable String name,
-            @RequestParam MultipartFile file
+            @RequestParam MultipartFile file,
+            @RequestParam(defaultValue = "false") boolean convertToHls
     ) {
         if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         try {
-            adminService.addMovieVideoMP4(name, file.getInputStream(), file.getOriginalFilename());
+            String storedIn = adminService.addMovieVideoMP4(name, file.getInputStream(), file.getOriginalFilename());
             adminService.reloadConfig(streamingProductionData);
+            afterMp4Upload(name, storedIn, convertToHls);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -144,4 +210,92 @@ public class StreamingAdminApiController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<List<MediaJobDto>> getJobs() {
+        if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(mediaJobService.list().stream().map(MediaJobDto::of).toList());
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<MediaJobDto> getJob(@PathVariable String id) {
+        if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return mediaJobService.get(id)
+                .map(job -> ResponseEntity.ok(MediaJobDto.of(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Queues faststart relocation for all MP4 videos of the production whose moov is at the end.
+     */
+    @PostMapping("/productions/{name}/faststart")
+    public ResponseEntity<List<MediaJobDto>> faststartProduction(@PathVariable String name) {
+        if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        if (!streamingProductionData.containsKey(name)) return ResponseEntity.notFound().build();
+        try {
+            return ResponseEntity.ok(mp4FaststartService.submitProduction(name).stream().map(MediaJobDto::of).toList());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Queues HLS conversion of all MP4 videos of the production; the production switches to HLS when all are done.
+     */
+    @PostMapping("/productions/{name}/hls-ingest")
+    public ResponseEntity<List<MediaJobDto>> hlsIngestProduction(@PathVariable String name) {
+        if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        if (!streamingProductionData.containsKey(name)) return ResponseEntity.notFound().build();
+        try {
+            return ResponseEntity.ok(hlsIngestService.submitProduction(name).stream().map(MediaJobDto::of).toList());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/productions/{name}/renditions")
+    public ResponseEntity<List<RenditionStatusDto>> getRenditions(@PathVariable String name) {
+        if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        if (!streamingProductionData.containsKey(name)) return ResponseEntity.notFound().build();
+        try {
+            return ResponseEntity.ok(hlsRenditionService.status(name).stream()
+                    .map(status -> new RenditionStatusDto(status.videoFolderId(), status.videoName(), status.renditions(),
+                            status.job() != null ? MediaJobDto.of(status.job()) : null))
+                    .toList());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Queues generation of the lower-bitrate rendition ladder for all HLS videos of the production.
+     */
+    @PostMapping("/productions/{name}/renditions")
+    public ResponseEntity<List<MediaJobDto>> generateRenditions(@PathVariable String name) {
+        if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        if (!streamingProductionData.containsKey(name)) return ResponseEntity.notFound().build();
+        try {
+            return ResponseEntity.ok(hlsRenditionService.submitProduction(name).stream().map(MediaJobDto::of).toList());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @DeleteMapping("/productions/{name}/renditions")
+    public ResponseEntity<Void> removeRenditions(@PathVariable String name) {
+        if (!isAdmin()) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        if (!streamingProductionData.containsKey(name)) return ResponseEntity.notFound().build();
+        try {
+            hlsRenditionService.removeProduction(name);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
 }
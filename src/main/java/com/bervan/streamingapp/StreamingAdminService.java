@@ -3,6 +3,7 @@ package com.bervan.streamingapp;
 import com.bervan.filestorage.model.BervanMockMultiPartFile;
 import com.bervan.filestorage.service.FileServiceManager;
 import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.catalog.CatalogService;
 import com.bervan.streamingapp.config.ProductionData;
 import com.bervan.streamingapp.config.StreamingConfigLoader;
 import org.springframework.stereotype.Service;
@@ -12,6 +13,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -23,12 +25,14 @@ public class StreamingAdminService {
     private final FileServiceManager fileServiceManager;
     private final VideoManager videoManager;
     private final StreamingConfigLoader streamingConfigLoader;
+    private final CatalogService catalogService;
 
     public StreamingAdminService(FileServiceManager fileServiceManager, VideoManager videoManager,
-                                  StreamingConfigLoader streamingConfigLoader) {
+                                  StreamingConfigLoader streamingConfigLoader, CatalogService catalogService) {
         this.fileServiceManager = fileServiceManager;
         this.videoManager = videoManager;
         this.streamingConfigLoader = streamingConfigLoader;
+        this.catalogService = catalogService;
     }
 
     public void createProduction(String name, String type, String videoFormat, String description,
@@ -62,8 +66,11 @@ public class StreamingAdminService {
         log.info("Created Season {} for production: {}", seasonNumber, productionName);
     }
 
-    public void addEpisodeMP4(String productionName, int seasonNumber, int episodeNumber,
-                               InputStream videoStream, String videoFilename) throws Exception {
+    /**
+     * @return folder of the file store the video was saved in, as its metadata names it
+     */
+    public String addEpisodeMP4(String productionName, int seasonNumber, int episodeNumber,
+                              InputStream videoStream, String videoFilename) throws Exception {
         String seasonPath = videoManager.appFolder + File.separator + productionName + File.separator
                 + "Season " + seasonNumber + File.separator;
         String episodeFolderName = String.format("S%02dE%02d", seasonNumber, episodeNumber);
@@ -75,6 +82,7 @@ public class StreamingAdminService {
         BervanMockMultiPartFile videoFile = new BervanMockMultiPartFile(videoFilename, videoFilename, "video/mp4", videoStream);
         fileServiceManager.save(videoFile, "", episodePath);
         log.info("Saved episode video {} in {}", videoFilename, episodePath);
+        return episodePath;
     }
 
     public void addEpisodeHLS(String productionName, int seasonNumber,
@@ -86,11 +94,15 @@ public class StreamingAdminService {
         log.info("Extracted HLS ZIP {} to season {}", zipFilename, seasonNumber);
     }
 
-    public void addMovieVideoMP4(String productionName, InputStream videoStream, String videoFilename) throws Exception {
+    /**
+     * @return folder of the file store the video was saved in, as its metadata names it
+     */
+    public String addMovieVideoMP4(String productionName, InputStream videoStream, String videoFilename) throws Exception {
         String productionPath = videoManager.appFolder + File.separator + productionName + File.separator;
         BervanMockMultiPartFile videoFile = new BervanMockMultiPartFile(videoFilename, videoFilename, "video/mp4", videoStream);
         fileServiceManager.save(videoFile, "", productionPath);
         log.info("Saved movie video {} for production: {}", videoFilename, productionName);
+        return productionPath;
     }
 
     public void addSubtitlesFromZip(String productionName, InputStream zipStream) throws Exception {
@@ -139,9 +151,33 @@ public class StreamingAdminService {
         Map<String, ProductionData> newData = streamingConfigLoader.getStringProductionDataMap();
         streamingProductionData.clear();
         streamingProductionData.putAll(newData);
+        catalogService.refresh();
         log.info("Config reloaded, productions count: {}", streamingProductionData.size());
     }
 
+    /**
+     * Reloads only the given production, so a change to one production does not rescan the whole library.
+     *
+     * @return false when the production is unknown or could no longer be loaded (it is then removed)
+     */
+    public boolean reloadProduction(String productionName, Map<String, ProductionData> streamingProductionData) {
+        ProductionData current = streamingProductionData.get(productionName);
+        if (current == null) {
+            return false;
+        }
+        Optional<ProductionData> reloaded = streamingConfigLoader.loadProduction(current.getMainFolder());
+        // replaced in place so concurrent readers never see the production missing
+        reloaded.ifPresentOrElse(pd -> {
+            streamingProductionData.put(pd.getProductionName(), pd);
+            if (!pd.getProductionName().equals(productionName)) {
+                streamingProductionData.remove(productionName, current);
+            }
+        }, () -> streamingProductionData.remove(productionName, current));
+        catalogService.refresh();
+        log.info("Production {} reloaded", productionName);
+        return reloaded.isPresent();
+    }
+
     private String resolveImageFilename(String posterFilename) {
         if (posterFilename != null && (posterFilename.toLowerCase().endsWith(".jpg")
                 || posterFilename.toLowerCase().endsWith(".jpeg"))) {
@@ -6,6 +6,12 @@ import com.bervan.logging.JsonLogger;
 import com.bervan.streamingapp.config.MetadataByPathAndType;
 import com.bervan.streamingapp.config.ProductionData;
 import com.bervan.streamingapp.config.structure.ProductionFileType;
+import com.bervan.streamingapp.media.Mp4Fragmenter;
+import com.bervan.streamingapp.media.Mp4HlsService;
+import com.bervan.streamingapp.media.Mp4SeekIndex;
+import com.bervan.streamingapp.media.Mp4SeekIndexService;
+import com.bervan.streamingapp.media.StreamInfo;
+import com.bervan.streamingapp.media.VideoProbeService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
@@ -35,12 +41,32 @@ public class VideoController {
     private final VideoManager videoManager;
     private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
     private final Map<String, ProductionData> streamingProductionData;
+    private final VideoProbeService videoProbeService;
+    private final Mp4SeekIndexService mp4SeekIndexService;
+    private final Mp4HlsService mp4HlsService;
 
-    public VideoController(VideoManager videoManager, Map<String, ProductionData> streamingProductionData) {
+    public VideoController(VideoManager videoManager, Map<String, ProductionData> streamingProductionData,
+                           VideoProbeService videoProbeService, Mp4SeekIndexService mp4SeekIndexService,
+                           Mp4HlsService mp4HlsService) {
         this.videoManager = videoManager;
         this.streamingProductionData = streamingProductionData;
+        this.videoProbeService = videoProbeService;
+        this.mp4SeekIndexService = mp4SeekIndexService;
+        this.mp4HlsService = mp4HlsService;
     }
 
+    /**
+     * @param faststart moov precedes mdat; otherwise a player must fetch {@code moovOffset..moovOffset+moovSize} first
+     */
+    public record SeekIndexDto(boolean faststart, long fileSize, long moovOffset, long moovSize, double durationSeconds,
+                               double[] keyframeTimes, long[] keyframeOffsets) {}
+
+    /**
+     * @param offset byte offset of the keyframe at or before {@code requestedTime}, usable as range start
+     */
+    public record SeekPointDto(double requestedTime, double keyframeTime, long offset, boolean faststart,
+                               long moovOffset, long moovSize) {}
+
     @GetMapping("/download-and-convert/{videoFolderId}")
     public ResponseEntity<StreamingResponseBody> downloadAndConvert(@PathVariable String videoFolderId) {
         BaseProcessContext context = BaseProcessContext.builder()
@@ -488,6 +514,109 @@ public class VideoController {
         }
     }
 
+    /**
+     * Duration, codecs, resolution and bitrate from the background probe; 404 until the video was probed.
+     */
+    @GetMapping("/video-folder/{videoFolderId}/stream-info")
+    public ResponseEntity<StreamInfo> getStreamInfo(@PathVariable String videoFolderId) {
+        return videoProbeService.get(videoFolderId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Keyframe time to byte offset table of an MP4 video. With {@code t} only the keyframe at or before
+     * that time is returned, so a client can seek with a single range request.
+     */
+    @GetMapping("/video-folder/{videoFolderId}/seek-index")
+    public ResponseEntity<?> getSeekIndex(@PathVariable String videoFolderId,
+                                          @RequestParam(required = false) Double t) {
+        try {
+            Optional<Mp4SeekIndex> found = mp4SeekIndexService.getIndex(videoFolderId);
+            if (found.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            Mp4SeekIndex index = found.get();
+            if (t == null) {
+                return ResponseEntity.ok()
+                        .header("Cache-Control", "max-age=3600")
+                        .body(new SeekIndexDto(index.isFaststart(), index.fileSize(), index.moovOffset(), index.moovSize(),
+                                index.durationSeconds(), index.keyframeTimes(), index.keyframeOffsets()));
+            }
+            int keyframe = index.keyframeAtOrBefore(t);
+            if (keyframe < 0) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(new SeekPointDto(t, index.keyframeTime(keyframe), index.keyframeOffset(keyframe),
+                    index.isFaststart(), index.moovOffset(), index.moovSize()));
+        } catch (IOException e) {
+            log.error("Could not build seek index for {}", videoFolderId, e);
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+    }
+
+    /**
+     * MP4 video served as fragmented-MP4 HLS: {@code master.m3u8}, {@code index.m3u8}, {@code init.mp4}
+     * and {@code seg/{n}.m4s}. Segments are remuxed from the original file on request.
+     */
+    @GetMapping("/mp4-hls/{videoFolderId}/{playlist:master\\.m3u8|index\\.m3u8}")
+    public ResponseEntity<String> getMp4HlsPlaylist(@PathVariable String videoFolderId, @PathVariable String playlist) {
+        try {
+            Optional<Mp4HlsService.Mp4Hls> hls = mp4HlsService.get(videoFolderId);
+            if (hls.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                    .header("Cache-Control", "no-cache")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .contentType(MediaType.parseMediaType("application/vnd.apple.mpegurl"))
+                    .body(playlist.equals(Mp4HlsService.MEDIA_PLAYLIST) ? hls.get().mediaPlaylist() : hls.get().masterPlaylist());
+        } catch (IOException e) {
+            log.error("Could not build HLS view of {}", videoFolderId, e);
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+    }
+
+    @GetMapping("/mp4-hls/{videoFolderId}/" + Mp4HlsService.INIT_SEGMENT)
+    public ResponseEntity<byte[]> getMp4HlsInitSegment(@PathVariable String videoFolderId) {
+        try {
+            Optional<Mp4HlsService.Mp4Hls> hls = mp4HlsService.get(videoFolderId);
+            return hls.map(value -> ResponseEntity.ok()
+                            .header("Cache-Control", "max-age=3600")
+                            .header("Access-Control-Allow-Origin", "*")
+                            .contentType(MediaType.parseMediaType("video/mp4"))
+                            .body(value.fragmenter().initSegment()))
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IOException e) {
+            log.error("Could not build HLS view of {}", videoFolderId, e);
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+    }
+
+    @GetMapping("/mp4-hls/{videoFolderId}/seg/{segment}.m4s")
+    public ResponseEntity<StreamingResponseBody> getMp4HlsSegment(@PathVariable String videoFolderId,
+                                                                  @PathVariable int segment) {
+        try {
+            Optional<Mp4HlsService.Mp4Hls> hls = mp4HlsService.get(videoFolderId);
+            if (hls.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            Mp4Fragmenter fragmenter = hls.get().fragmenter();
+            if (segment < 0 || segment >= fragmenter.segmentCount()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                    .header("Cache-Control", "max-age=3600")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .contentType(MediaType.parseMediaType("video/iso.segment"))
+                    .contentLength(fragmenter.segmentSize(segment))
+                    .body(out -> fragmenter.writeSegment(segment, out));
+        } catch (IOException e) {
+            log.error("Could not build HLS view of {}", videoFolderId, e);
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+    }
+
     private Path findMainM3u8File(Path hlsBaseDir) {
         try {
             List<Path> m3u8Files = Files.walk(hlsBaseDir)
@@ -15,8 +15,11 @@ import com.bervan.streamingapp.config.structure.mp4.MP4EpisodeStructure;
 import com.bervan.streamingapp.config.structure.mp4.MP4MovieRootProductionStructure;
 import com.bervan.streamingapp.config.structure.mp4.MP4SeasonStructure;
 import com.bervan.streamingapp.config.structure.mp4.MP4TvSeriesRootProductionStructure;
+import com.bervan.streamingapp.watch.WatchDetailsCache;
+import com.bervan.streamingapp.watch.WatchProgressBuffer;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
@@ -52,16 +55,21 @@ public class VideoManager {
     private final List<String> supportedExtensions = Arrays.asList("mp4");
     private final SearchService searchService;
     private final FileServiceManager fileServiceManager;
+    private final WatchProgressBuffer watchProgressBuffer;
+    private final WatchDetailsCache watchDetailsCache;
     @Value("${file.service.storage.folder.main}")
     public String pathToFileStorage;
     @Value("${streaming-platform.file-storage-relative-path}")
     public String appFolder;
 
 
-    public VideoManager(WatchDetailsRepository watchDetailsRepository, SearchService searchService, FileServiceManager fileServiceManager) {
+    public VideoManager(WatchDetailsRepository watchDetailsRepository, SearchService searchService, FileServiceManager fileServiceManager,
+                        WatchProgressBuffer watchProgressBuffer, WatchDetailsCache watchDetailsCache) {
         this.watchDetailsRepository = watchDetailsRepository;
         this.searchService = searchService;
         this.fileServiceManager = fileServiceManager;
+        this.watchProgressBuffer = watchProgressBuffer;
+        this.watchDetailsCache = watchDetailsCache;
     }
 
     private static void putIf(ProductionFileType key, Map<ProductionFileType, List<Metadata>> result, Metadata file) {
@@ -322,38 +330,59 @@ public class VideoManager {
     }
 
     public WatchDetails getOrCreateWatchDetails(String userId, String videoId) {
+        UUID userUuid = UUID.fromString(userId);
+        UUID videoUuid = UUID.fromString(videoId);
+        WatchDetails watchDetails = watchDetailsCache.getOrLoad(userUuid, videoUuid,
+                () -> findOrInsertWatchDetails(userUuid, videoUuid));
+        return watchProgressBuffer.applyPending(watchDetails);
+    }
+
+    private WatchDetails findOrInsertWatchDetails(UUID userId, UUID videoId) {
+        Optional<WatchDetails> existing = findWatchDetails(userId, videoId);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        WatchDetails watchDetails = new WatchDetails();
+        watchDetails.setVideoId(videoId);
+        watchDetails.setUserId(userId);
+        watchDetails.setCurrentVideoTime(0);
+        try {
+            return watchDetailsRepository.saveAndFlush(watchDetails);
+        } catch (DataIntegrityViolationException e) {
+            // another node inserted the row first and the unique (userId, videoId) index rejected ours,
+            // see WatchDetailsUniqueIndex
+            log.debug("WatchDetails for user {} and video {} created concurrently, reloading", userId, videoId);
+            return findWatchDetails(userId, videoId).orElseThrow(() -> e);
+        }
+    }
+
+    private Optional<WatchDetails> findWatchDetails(UUID userId, UUID videoId) {
         SearchRequest searchRequest = new SearchRequest();
         searchRequest.addCriterion("G1", WatchDetails.class, "userId",
-                SearchOperation.EQUALS_OPERATION, userId);
+                SearchOperation.EQUALS_OPERATION, userId.toString());
         searchRequest.addCriterion("G1", WatchDetails.class, "videoId",
-                SearchOperation.EQUALS_OPERATION, videoId);
+                SearchOperation.EQUALS_OPERATION, videoId.toString());
 
         SearchQueryOption options = new SearchQueryOption(WatchDetails.class);
 
         SearchResponse<WatchDetails> res = searchService.search(searchRequest, options);
-        WatchDetails watchDetails;
-        if (res.getResultList().size() != 0) {
-            watchDetails = res.getResultList().get(0);
-        } else {
-            watchDetails = new WatchDetails();
-            watchDetails.setVideoId(UUID.fromString(videoId));
-            watchDetails.setUserId(UUID.fromString(userId));
-            watchDetails.setCurrentVideoTime(0);
-            return watchDetailsRepository.save(watchDetails);
-        }
-        return watchDetails;
+        return res.getResultList().stream().findFirst();
     }
 
+    /**
+     * Buffers the position; it is written to the database in batches by {@link WatchProgressBuffer}.
+     */
     public void saveWatchProgress(WatchDetails watchDetails, double lastWatchedTime) {
-        watchDetails.setCurrentVideoTime(lastWatchedTime);
-        watchDetailsRepository.save(watchDetails);
+        watchProgressBuffer.record(watchDetails, lastWatchedTime);
     }
 
     public void saveSubtitleDelays(WatchDetails watchDetails, double enDelay, double plDelay, double esDelay) {
+        watchProgressBuffer.takePending(watchDetails);
         watchDetails.setSubtitleDelayEN(enDelay);
         watchDetails.setSubtitleDelayPL(plDelay);
         watchDetails.setSubtitleDelayES(esDelay);
-        watchDetailsRepository.save(watchDetails);
+        watchDetailsCache.put(watchDetailsRepository.save(watchDetails));
     }
 
     public Optional<Metadata> findSubtitle(Metadata videoFolder, String language) {
@@ -653,7 +682,10 @@ public class VideoManager {
         return getPrevVideoWithCrossSeasonSupport(currentVideoFolderId, productionData).isPresent();
     }
 
-    private List<EpisodeStructure> getSortedEpisodes(SeasonStructure season) {
+    /**
+     * Episodes of the season in episode-number order; episodes without a recognizable number go last.
+     */
+    public List<EpisodeStructure> getSortedEpisodes(SeasonStructure season) {
         List<EpisodeStructure> sortedEpisodes = new ArrayList<>();
         List<? extends EpisodeStructure> episodes = season.getEpisodes();
         int maxEpisodes = episodes.size();
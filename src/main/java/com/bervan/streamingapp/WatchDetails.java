@@ -4,11 +4,14 @@ package com.bervan.streamingapp;
 import com.bervan.common.model.BervanOwnedBaseEntity;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_watch_details_user_video", columnNames = {"userId", "videoId"}))
 public class WatchDetails extends BervanOwnedBaseEntity<UUID> {
     @Id
     private UUID id;
@@ -1,10 +1,17 @@
 package com.bervan.streamingapp;
 
 import com.bervan.history.model.BaseRepository;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface WatchDetailsRepository extends BaseRepository<WatchDetails, UUID> {
+
+    List<WatchDetails> findByUserIdAndDeletedFalseAndVideoIdIn(UUID userId, Collection<UUID> videoIds);
+
+    List<WatchDetails> findByUserIdAndDeletedFalseAndModificationDateNotNullOrderByModificationDateDesc(UUID userId, Pageable pageable);
 }
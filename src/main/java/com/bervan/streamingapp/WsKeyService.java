@@ -1,13 +1,13 @@
 package com.bervan.streamingapp;
 
+import com.bervan.streamingapp.store.ExpiringStore;
+import com.bervan.streamingapp.store.ExpiringStores;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple in-memory one-time key store with TTL.
@@ -16,25 +16,23 @@ import java.util.concurrent.ConcurrentHashMap;
 @Component
 public class WsKeyService {
 
-    private static class KeyInfo {
-        final UUID userId;
-        final String roomId;
-        final long expiresAtMs;
-
-        KeyInfo(UUID userId, String roomId, long expiresAtMs) {
-            this.userId = userId;
-            this.roomId = roomId;
-            this.expiresAtMs = expiresAtMs;
-        }
+    private record KeyInfo(UUID userId, String roomId) {
     }
 
-    private final Map<String, KeyInfo> store = new ConcurrentHashMap<>();
+    private final ExpiringStore<String, KeyInfo> store;
     private final long ttlMs = Long.parseLong(System.getProperty("ws.key.ttl.ms", "30000")); // default 30s
 
+    public WsKeyService(ExpiringStores expiringStores,
+                        @Value("${streaming-platform.ws-keys.max-entries:10000}") int maxEntries) {
+        this.store = expiringStores.create("ws-keys", 1000, maxEntries);
+    }
+
+    /**
+     * @throws ExpiringStore.CapacityExceededException when too many keys are outstanding
+     */
     public String createKey(UUID userId, String roomId) {
         String key = UUID.randomUUID().toString();
-        long expires = Instant.now().toEpochMilli() + ttlMs;
-        store.put(key, new KeyInfo(userId, roomId, expires));
+        store.put(key, new KeyInfo(userId, roomId), ttlMs);
         return key;
     }
 
@@ -44,11 +42,8 @@ public class WsKeyService {
      */
     public Optional<UUID> validateAndConsume(String key, String roomId) {
         if (key == null || key.isBlank()) return Optional.empty();
-        KeyInfo info = store.remove(key);
-        if (info == null) return Optional.empty();
-        if (!Objects.equals(info.roomId, roomId)) return Optional.empty();
-        if (Instant.now().toEpochMilli() > info.expiresAtMs) return Optional.empty();
-        return Optional.of(info.userId);
+        return store.remove(key)
+                .filter(info -> Objects.equals(info.roomId(), roomId))
+                .map(KeyInfo::userId);
     }
 }
-
@@ -0,0 +1,178 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+
+import java.util.*;
+
+/**
+ * Facet bitsets over production ordinals, built with each catalog snapshot.
+ *
+ * Each facet value maps to a {@link BitSet} of the productions carrying it. Selected values of one
+ * facet are OR-ed, different facets are AND-ed. Counts of a facet are computed against the filters
+ * of all other facets, so clients can show how many results picking another value would give.
+ */
+public class CatalogFacetIndex {
+
+    public enum Facet {
+        CATEGORY("categories"),
+        COUNTRY("country"),
+        AUDIO_LANG("audioLang"),
+        YEAR("year");
+
+        private final String key;
+
+        Facet(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * @param values  selected values per facet, compared case-insensitively; years go through {@code yearFrom}/{@code yearTo}
+     * @param yearFrom inclusive, may be {@code null}
+     * @param yearTo   inclusive, may be {@code null}
+     */
+    public record Query(Map<Facet, Collection<String>> values, Integer yearFrom, Integer yearTo) {}
+
+    /**
+     * @param matches ordinals matching the whole query
+     * @param counts  per facet, display value to number of matches when that value is selected
+     */
+    public record Result(BitSet matches, Map<Facet, Map<String, Integer>> counts) {}
+
+    private final int size;
+    private final Map<Facet, Map<String, BitSet>> bitsByFacet;
+    private final Map<Facet, Map<String, String>> displayValues;
+    private final TreeMap<Integer, BitSet> bitsByYear;
+
+    private CatalogFacetIndex(int size, Map<Facet, Map<String, BitSet>> bitsByFacet,
+                              Map<Facet, Map<String, String>> displayValues, TreeMap<Integer, BitSet> bitsByYear) {
+        this.size = size;
+        this.bitsByFacet = bitsByFacet;
+        this.displayValues = displayValues;
+        this.bitsByYear = bitsByYear;
+    }
+
+    public static CatalogFacetIndex build(List<ProductionSummaryDto> summaries) {
+        Map<Facet, Map<String, BitSet>> bitsByFacet = new EnumMap<>(Facet.class);
+        Map<Facet, Map<String, String>> displayValues = new EnumMap<>(Facet.class);
+        for (Facet facet : List.of(Facet.CATEGORY, Facet.COUNTRY, Facet.AUDIO_LANG)) {
+            bitsByFacet.put(facet, new HashMap<>());
+            displayValues.put(facet, new TreeMap<>());
+        }
+        TreeMap<Integer, BitSet> bitsByYear = new TreeMap<>();
+
+        for (int ordinal = 0; ordinal < summaries.size(); ordinal++) {
+            ProductionSummaryDto summary = summaries.get(ordinal);
+            addValues(bitsByFacet, displayValues, Facet.CATEGORY, summary.categories(), ordinal);
+            addValues(bitsByFacet, displayValues, Facet.AUDIO_LANG, summary.audioLang(), ordinal);
+            if (summary.country() != null) {
+                addValues(bitsByFacet, displayValues, Facet.COUNTRY, List.of(summary.country()), ordinal);
+            }
+            Integer start = summary.releaseYearStart();
+            if (start != null) {
+                // a series is listed under every year it was released in
+                int end = summary.releaseYearEnd() != null ? Math.max(start, summary.releaseYearEnd()) : start;
+                for (int year = start; year <= end; year++) {
+                    bitsByYear.computeIfAbsent(year, k -> new BitSet(summaries.size())).set(ordinal);
+                }
+            }
+        }
+        return new CatalogFacetIndex(summaries.size(), bitsByFacet, displayValues, bitsByYear);
+    }
+
+    public Result query(Query query) {
+        Map<Facet, BitSet> filters = new EnumMap<>(Facet.class);
+        for (Map.Entry<Facet, Collection<String>> selected : query.values().entrySet()) {
+            if (selected.getKey() == Facet.YEAR || selected.getValue() == null || selected.getValue().isEmpty()) {
+                continue;
+            }
+            BitSet union = new BitSet(size);
+            Map<String, BitSet> valueBits = bitsByFacet.get(selected.getKey());
+            for (String value : selected.getValue()) {
+                BitSet bits = valueBits.get(normalize(value));
+                if (bits != null) {
+                    union.or(bits);
+                }
+            }
+            filters.put(selected.getKey(), union);
+        }
+        if (query.yearFrom() != null || query.yearTo() != null) {
+            int from = query.yearFrom() != null ? query.yearFrom() : Integer.MIN_VALUE;
+            int to = query.yearTo() != null ? query.yearTo() : Integer.MAX_VALUE;
+            BitSet union = new BitSet(size);
+            if (from <= to) {
+                bitsByYear.subMap(from, true, to, true).values().forEach(union::or);
+            }
+            filters.put(Facet.YEAR, union);
+        }
+
+        BitSet matches = new BitSet(size);
+        matches.set(0, size);
+        filters.values().forEach(matches::and);
+
+        Map<Facet, Map<String, Integer>> counts = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) {
+            BitSet base = new BitSet(size);
+            base.set(0, size);
+            for (Map.Entry<Facet, BitSet> filter : filters.entrySet()) {
+                if (filter.getKey() != facet) {
+                    base.and(filter.getValue());
+                }
+            }
+            counts.put(facet, facet == Facet.YEAR ? yearCounts(base) : valueCounts(facet, base));
+        }
+        return new Result(matches, counts);
+    }
+
+    private Map<String, Integer> valueCounts(Facet facet, BitSet base) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        Map<String, BitSet> valueBits = bitsByFacet.get(facet);
+        for (Map.Entry<String, String> value : displayValues.get(facet).entrySet()) {
+            int count = intersectionSize(base, valueBits.get(value.getKey()));
+            if (count > 0) {
+                counts.put(value.getValue(), count);
+            }
+        }
+        return counts;
+    }
+
+    private Map<String, Integer> yearCounts(BitSet base) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<Integer, BitSet> year : bitsByYear.descendingMap().entrySet()) {
+            int count = intersectionSize(base, year.getValue());
+            if (count > 0) {
+                counts.put(String.valueOf(year.getKey()), count);
+            }
+        }
+        return counts;
+    }
+
+    private static int intersectionSize(BitSet a, BitSet b) {
+        BitSet intersection = (BitSet) b.clone();
+        intersection.and(a);
+        return intersection.cardinality();
+    }
+
+    private static void addValues(Map<Facet, Map<String, BitSet>> bitsByFacet, Map<Facet, Map<String, String>> displayValues,
+                                  Facet facet, List<String> values, int ordinal) {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            if (value == null || value.isBlank()) {
+                continue;
+            }
+            String key = normalize(value);
+            bitsByFacet.get(facet).computeIfAbsent(key, k -> new BitSet()).set(ordinal);
+            displayValues.get(facet).putIfAbsent(key, value.trim());
+        }
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
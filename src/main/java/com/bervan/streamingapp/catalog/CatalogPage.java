@@ -0,0 +1,94 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * One page of the catalog sliced from a precomputed sort order.
+ *
+ * The cursor is opaque for clients. It carries the sort, the position and the name of the last
+ * returned production, so paging continues after that production even if a catalog reload
+ * shifted positions in the meantime.
+ */
+public record CatalogPage(List<ProductionSummaryDto> items, String nextCursor, int total) {
+
+    /**
+     * @param filter ordinals allowed on the page, or {@code null} for the whole catalog
+     */
+    public static CatalogPage slice(CatalogSnapshot snapshot, CatalogSort sort, boolean descending,
+                                    String cursor, int limit, BitSet filter) {
+        int[] order = snapshot.order(sort, descending);
+        int from = cursor != null && !cursor.isBlank() ? resumePosition(snapshot, sort, descending, cursor) : 0;
+
+        List<ProductionSummaryDto> items = new ArrayList<>(Math.min(limit, order.length));
+        int position = from;
+        int lastPosition = -1;
+        for (; position < order.length && items.size() < limit; position++) {
+            int ordinal = order[position];
+            if (filter == null || filter.get(ordinal)) {
+                items.add(snapshot.getByOrdinal(ordinal));
+                lastPosition = position;
+            }
+        }
+
+        String nextCursor = null;
+        if (lastPosition >= 0 && hasMore(order, position, filter)) {
+            nextCursor = encode(sort, descending, lastPosition, snapshot.getByOrdinal(order[lastPosition]).productionName());
+        }
+        int total = filter == null ? order.length : filter.cardinality();
+        return new CatalogPage(items, nextCursor, total);
+    }
+
+    private static boolean hasMore(int[] order, int position, BitSet filter) {
+        if (filter == null) {
+            return position < order.length;
+        }
+        for (int i = position; i < order.length; i++) {
+            if (filter.get(order[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int resumePosition(CatalogSnapshot snapshot, CatalogSort sort, boolean descending, String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        String[] parts = decoded.split("\\|", 3);
+        if (parts.length != 3 || !parts[0].equals(sortToken(sort, descending))) {
+            throw new IllegalArgumentException("Cursor does not match requested sort");
+        }
+        int ordinal = snapshot.ordinalOf(parts[2]);
+        if (ordinal >= 0) {
+            return snapshot.position(sort, descending, ordinal) + 1;
+        }
+        int position;
+        try {
+            position = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return (int) Math.min(position + 1L, snapshot.size());
+    }
+
+    private static String encode(CatalogSort sort, boolean descending, int position, String productionName) {
+        String raw = sortToken(sort, descending) + "|" + position + "|" + productionName;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sortToken(CatalogSort sort, boolean descending) {
+        return (descending ? "-" : "") + sort.getKey();
+    }
+}
@@ -0,0 +1,6 @@
+package com.bervan.streamingapp.catalog;
+
+/**
+ * Published after a new {@link CatalogSnapshot} was installed.
+ */
+public record CatalogRefreshedEvent(CatalogSnapshot snapshot) {}
@@ -0,0 +1,339 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the catalog snapshot.
+ *
+ * Terms come from title, tags, categories, country and description, each field with its own weight.
+ * A query token matches a term exactly, as a prefix of a longer term (binary search over the sorted
+ * term dictionary) or, when it is long enough, through trigram overlap which tolerates typos.
+ * Matches are scored per production and ranked by the summed score.
+ *
+ * Tokenized documents are kept per production, so a rebuild after a catalog reload only
+ * re-tokenizes productions whose summary actually changed.
+ */
+public class CatalogSearchIndex {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final float TITLE_WEIGHT = 5f;
+    private static final float TAG_WEIGHT = 3f;
+    private static final float CATEGORY_WEIGHT = 3f;
+    private static final float COUNTRY_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    private static final float PREFIX_FACTOR = 0.7f;
+    private static final float FUZZY_FACTOR = 0.5f;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final int MIN_FUZZY_TOKEN_LENGTH = 4;
+    private static final float MIN_FUZZY_SIMILARITY = 0.45f;
+
+    private final Map<String, IndexedDocument> documents;
+    private final String[] terms;
+    private final int[][] postings;
+    private final float[][] postingWeights;
+    private final Map<String, int[]> termsByTrigram;
+    private final int[] trigramCounts;
+    private final int documentCount;
+    // owned by this index, so the buffers go away with the snapshot; holds at most one per concurrent query
+    private final Queue<SearchScratch> scratchPool = new ConcurrentLinkedQueue<>();
+
+    private CatalogSearchIndex(Map<String, IndexedDocument> documents, String[] terms, int[][] postings,
+                               float[][] postingWeights, Map<String, int[]> termsByTrigram,
+                               int[] trigramCounts, int documentCount) {
+        this.documents = documents;
+        this.terms = terms;
+        this.postings = postings;
+        this.postingWeights = postingWeights;
+        this.termsByTrigram = termsByTrigram;
+        this.trigramCounts = trigramCounts;
+        this.documentCount = documentCount;
+    }
+
+    public record Hit(int ordinal, double score) {}
+
+    /**
+     * Builds the index for summaries in ordinal order, reusing tokenized documents of {@code previous}
+     * for productions whose summary did not change.
+     */
+    public static CatalogSearchIndex build(List<ProductionSummaryDto> summaries, CatalogSearchIndex previous) {
+        Map<String, IndexedDocument> documents = new HashMap<>(summaries.size() * 2);
+        Map<String, PostingBuilder> builders = new HashMap<>();
+
+        for (int ordinal = 0; ordinal < summaries.size(); ordinal++) {
+            ProductionSummaryDto summary = summaries.get(ordinal);
+            IndexedDocument document = previous != null ? previous.documents.get(summary.productionName()) : null;
+            if (document == null || !document.source().equals(summary)) {
+                document = tokenize(summary);
+            }
+            documents.put(summary.productionName(), document);
+            String[] docTerms = document.terms();
+            float[] docWeights = document.weights();
+            for (int i = 0; i < docTerms.length; i++) {
+                // ordinals are visited in ascending order, so every posting list stays sorted
+                builders.computeIfAbsent(docTerms[i], k -> new PostingBuilder()).add(ordinal, docWeights[i]);
+            }
+        }
+
+        String[] terms = builders.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        float[][] postingWeights = new float[terms.length][];
+        Map<String, IntListBuilder> trigramBuilders = new HashMap<>();
+        int[] trigramCounts = new int[terms.length];
+        for (int termId = 0; termId < terms.length; termId++) {
+            PostingBuilder builder = builders.get(terms[termId]);
+            postings[termId] = builder.ordinals.toArray();
+            postingWeights[termId] = Arrays.copyOf(builder.weights, builder.ordinals.size);
+
+            Set<String> grams = trigrams(terms[termId]);
+            trigramCounts[termId] = grams.size();
+            for (String gram : grams) {
+                trigramBuilders.computeIfAbsent(gram, k -> new IntListBuilder()).add(termId);
+            }
+        }
+        Map<String, int[]> termsByTrigram = new HashMap<>(trigramBuilders.size() * 2);
+        trigramBuilders.forEach((gram, builder) -> termsByTrigram.put(gram, builder.toArray()));
+        return new CatalogSearchIndex(documents, terms, postings, postingWeights, termsByTrigram,
+                trigramCounts, summaries.size());
+    }
+
+    /**
+     * @return hits ordered by descending score, at most {@code limit}
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> tokens = tokens(query);
+        if (tokens.isEmpty() || documentCount == 0) {
+            return List.of();
+        }
+
+        Set<String> distinctTokens = new LinkedHashSet<>(tokens);
+        SearchScratch scratch = scratchPool.poll();
+        if (scratch == null) {
+            scratch = new SearchScratch(documentCount, terms.length);
+        }
+        List<Hit> hits = search(distinctTokens, limit, scratch);
+        // only returned after a clean run: a failed query may leave the buffers dirty
+        scratchPool.offer(scratch);
+        return hits;
+    }
+
+    private List<Hit> search(Set<String> distinctTokens, int limit, SearchScratch scratch) {
+        TokenMatches matches = scratch.matches;
+
+        for (String token : distinctTokens) {
+            int exact = Arrays.binarySearch(terms, token);
+            if (exact >= 0) {
+                accumulate(exact, 1f, matches);
+            }
+            int prefixStart = exact >= 0 ? exact + 1 : -exact - 1;
+            for (int termId = prefixStart, expanded = 0;
+                 termId < terms.length && expanded < MAX_PREFIX_EXPANSIONS && terms[termId].startsWith(token);
+                 termId++, expanded++) {
+                accumulate(termId, PREFIX_FACTOR * token.length() / terms[termId].length(), matches);
+            }
+            if (token.length() >= MIN_FUZZY_TOKEN_LENGTH) {
+                accumulateFuzzy(token, matches, scratch);
+            }
+
+            for (int i = 0; i < matches.count; i++) {
+                int ordinal = matches.ordinals[i];
+                if (scratch.matchedTokens[ordinal] == 0) {
+                    scratch.touched[scratch.touchedCount++] = ordinal;
+                }
+                scratch.scores[ordinal] += matches.scores[ordinal];
+                scratch.matchedTokens[ordinal]++;
+                matches.scores[ordinal] = 0f;
+            }
+            matches.count = 0;
+        }
+
+        List<Hit> hits = new ArrayList<>(scratch.touchedCount);
+        for (int i = 0; i < scratch.touchedCount; i++) {
+            int ordinal = scratch.touched[i];
+            // productions matching only part of the query rank below those matching all of it
+            double coverage = (double) scratch.matchedTokens[ordinal] / distinctTokens.size();
+            hits.add(new Hit(ordinal, scratch.scores[ordinal] * coverage * coverage));
+            scratch.scores[ordinal] = 0f;
+            scratch.matchedTokens[ordinal] = 0;
+        }
+        scratch.touchedCount = 0;
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparingInt(Hit::ordinal));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    public int termCount() {
+        return terms.length;
+    }
+
+    private void accumulate(int termId, float factor, TokenMatches matches) {
+        int[] ordinals = postings[termId];
+        float[] weights = postingWeights[termId];
+        for (int i = 0; i < ordinals.length; i++) {
+            matches.offer(ordinals[i], weights[i] * factor);
+        }
+    }
+
+    private void accumulateFuzzy(String token, TokenMatches matches, SearchScratch scratch) {
+        Set<String> grams = trigrams(token);
+        int[] shared = scratch.sharedTrigrams;
+        int[] candidates = scratch.candidateTerms;
+        int candidateCount = 0;
+        for (String gram : grams) {
+            int[] termIds = termsByTrigram.get(gram);
+            if (termIds == null) {
+                continue;
+            }
+            for (int termId : termIds) {
+                if (shared[termId]++ == 0) {
+                    candidates[candidateCount++] = termId;
+                }
+            }
+        }
+        for (int i = 0; i < candidateCount; i++) {
+            int termId = candidates[i];
+            // Dice coefficient over trigram sets
+            float similarity = 2f * shared[termId] / (grams.size() + trigramCounts[termId]);
+            shared[termId] = 0;
+            if (similarity >= MIN_FUZZY_SIMILARITY && !terms[termId].equals(token)) {
+                accumulate(termId, FUZZY_FACTOR * similarity, matches);
+            }
+        }
+    }
+
+    private static IndexedDocument tokenize(ProductionSummaryDto summary) {
+        Map<String, Float> weights = new HashMap<>();
+        addField(weights, summary.title(), TITLE_WEIGHT);
+        addField(weights, summary.productionName(), TITLE_WEIGHT);
+        if (summary.tags() != null) {
+            summary.tags().forEach(tag -> addField(weights, tag, TAG_WEIGHT));
+        }
+        if (summary.categories() != null) {
+            summary.categories().forEach(category -> addField(weights, category, CATEGORY_WEIGHT));
+        }
+        addField(weights, summary.country(), COUNTRY_WEIGHT);
+        addField(weights, summary.description(), DESCRIPTION_WEIGHT);
+
+        String[] terms = new String[weights.size()];
+        float[] termWeights = new float[weights.size()];
+        int i = 0;
+        for (Map.Entry<String, Float> entry : weights.entrySet()) {
+            terms[i] = entry.getKey();
+            termWeights[i++] = entry.getValue();
+        }
+        return new IndexedDocument(summary, terms, termWeights);
+    }
+
+    private static void addField(Map<String, Float> weights, String text, float weight) {
+        for (String token : tokens(text)) {
+            // a term keeps the weight of the strongest field it appears in
+            weights.merge(token, weight, Math::max);
+        }
+    }
+
+    static List<String> tokens(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_ALPHANUMERIC.split(normalized.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static Set<String> trigrams(String term) {
+        String padded = "^" + term + "$";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Best score per production for a single query token; only touched ordinals are visited and reset.
+     */
+    private static class TokenMatches {
+        final float[] scores;
+        final int[] ordinals;
+        int count;
+
+        TokenMatches(int documentCount) {
+            scores = new float[documentCount];
+            ordinals = new int[documentCount];
+        }
+
+        void offer(int ordinal, float score) {
+            if (scores[ordinal] == 0f) {
+                ordinals[count++] = ordinal;
+                scores[ordinal] = score;
+            } else if (score > scores[ordinal]) {
+                scores[ordinal] = score;
+            }
+        }
+    }
+
+    /**
+     * Reusable buffers sized to this index, so a query allocates nothing proportional to the catalog.
+     * A query takes one from the pool of the index and returns it when done. Every buffer is reset to zero for the entries a query touched.
+     */
+    private static class SearchScratch {
+        final TokenMatches matches;
+        final float[] scores;
+        final int[] matchedTokens;
+        final int[] touched;
+        int touchedCount;
+        final int[] sharedTrigrams;
+        final int[] candidateTerms;
+
+        SearchScratch(int documentCount, int termCount) {
+            matches = new TokenMatches(documentCount);
+            scores = new float[documentCount];
+            matchedTokens = new int[documentCount];
+            touched = new int[documentCount];
+            sharedTrigrams = new int[termCount];
+            candidateTerms = new int[termCount];
+        }
+    }
+
+    private static class IntListBuilder {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class PostingBuilder {
+        final IntListBuilder ordinals = new IntListBuilder();
+        float[] weights = new float[4];
+
+        void add(int ordinal, float weight) {
+            if (ordinals.size == weights.length) {
+                weights = Arrays.copyOf(weights, weights.length * 2);
+            }
+            weights[ordinals.size] = weight;
+            ordinals.add(ordinal);
+        }
+    }
+
+    private record IndexedDocument(ProductionSummaryDto source, String[] terms, float[] weights) {}
+}
@@ -0,0 +1,181 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.VideoManager;
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+import com.bervan.streamingapp.config.ProductionData;
+import com.bervan.streamingapp.config.ProductionDetails;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Holds the current {@link CatalogSnapshot} and rebuilds it when the production map changes.
+ *
+ * The snapshot is built lazily on first access and eagerly on {@link #refresh()}, which
+ * {@code StreamingAdminService.reloadConfig} calls after replacing the production map.
+ */
+@Service
+public class CatalogService {
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+
+    private final Map<String, ProductionData> streamingProductionData;
+    private final ObjectMapper objectMapper;
+    private final VideoManager videoManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AtomicLong version = new AtomicLong();
+    private volatile CatalogSnapshot snapshot;
+
+    public CatalogService(Map<String, ProductionData> streamingProductionData, ObjectMapper objectMapper,
+                          VideoManager videoManager, ApplicationEventPublisher eventPublisher) {
+        this.streamingProductionData = streamingProductionData;
+        this.objectMapper = objectMapper;
+        this.videoManager = videoManager;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public CatalogSnapshot current() {
+        CatalogSnapshot current = snapshot;
+        if (current == null) {
+            current = install(build(version.get()));
+        }
+        return current;
+    }
+
+    /**
+     * Rebuilds the snapshot from the production map. Call after the map was modified.
+     */
+    public CatalogSnapshot refresh() {
+        return install(build(version.incrementAndGet()));
+    }
+
+    public static ProductionSummaryDto toSummaryDto(ProductionData pd) {
+        ProductionDetails d = pd.getProductionDetails();
+        if (d == null) {
+            return new ProductionSummaryDto(
+                    pd.getProductionName(), pd.getProductionName(),
+                    null, null, null, null, null,
+                    List.of(), List.of(), List.of(), null,
+                    "/api/streaming/productions/" + pd.getProductionName() + "/poster",
+                    "MP4"
+            );
+        }
+        return new ProductionSummaryDto(
+                pd.getProductionName(),
+                d.getName(),
+                d.getType() != null ? d.getType().name() : null,
+                d.getDescription(),
+                d.getRating(),
+                d.getReleaseYearStart(),
+                d.getReleaseYearEnd(),
+                d.getCategories() != null ? d.getCategories() : List.of(),
+                d.getTags() != null ? d.getTags() : List.of(),
+                d.getAudioLang() != null ? d.getAudioLang() : List.of(),
+                d.getCountry(),
+                "/api/streaming/productions/" + pd.getProductionName() + "/poster",
+                d.getVideoFormat() != null ? d.getVideoFormat().name() : "MP4"
+        );
+    }
+
+    private CatalogSnapshot install(CatalogSnapshot built) {
+        synchronized (this) {
+            // a slow lazy build must not overwrite a newer snapshot installed by refresh()
+            if (snapshot != null && snapshot.getVersion() > built.getVersion()) {
+                return snapshot;
+            }
+            snapshot = built;
+        }
+        eventPublisher.publishEvent(new CatalogRefreshedEvent(built));
+        return built;
+    }
+
+    private CatalogSnapshot build(long buildVersion) {
+        long start = System.currentTimeMillis();
+        List<ProductionData> productions = new ArrayList<>(streamingProductionData.values());
+
+        List<ProductionSummaryDto> summaries = new ArrayList<>(productions.size());
+        Map<String, ProductionSummaryDto> summaryByName = new HashMap<>();
+        for (ProductionData pd : productions) {
+            ProductionSummaryDto summary = toSummaryDto(pd);
+            summaries.add(summary);
+            summaryByName.put(summary.productionName(), summary);
+        }
+        summaries.sort(CatalogSort.TITLE.comparator(false));
+
+        Map<String, Integer> ordinalByName = new HashMap<>();
+        for (int i = 0; i < summaries.size(); i++) {
+            ordinalByName.put(summaries.get(i).productionName(), i);
+        }
+        int[][] orders = new int[CatalogSort.values().length * 2][];
+        int[][] positions = new int[orders.length][];
+        for (CatalogSort sort : CatalogSort.values()) {
+            for (boolean descending : new boolean[]{false, true}) {
+                int idx = CatalogSnapshot.orderIndex(sort, descending);
+                orders[idx] = sortedOrdinals(summaries, sort.comparator(descending));
+                positions[idx] = invert(orders[idx]);
+            }
+        }
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(summaries);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not serialize catalog listing", e);
+        }
+        String etag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+
+        CatalogSnapshot previous = snapshot;
+        CatalogSearchIndex searchIndex = CatalogSearchIndex.build(summaries,
+                previous != null ? previous.getSearchIndex() : null);
+
+        CatalogSnapshot built = new CatalogSnapshot(buildVersion,
+                Collections.unmodifiableList(summaries),
+                Collections.unmodifiableMap(summaryByName),
+                json, gzip(json), etag,
+                Collections.unmodifiableMap(ordinalByName), orders, positions, searchIndex,
+                CatalogFacetIndex.build(summaries),
+                CatalogVideoIndex.build(productions, videoManager));
+        log.info("Catalog snapshot v{} built in {} ms ({} productions, {} bytes)",
+                buildVersion, System.currentTimeMillis() - start, summaries.size(), json.length);
+        return built;
+    }
+
+    private static int[] sortedOrdinals(List<ProductionSummaryDto> summaries, Comparator<ProductionSummaryDto> comparator) {
+        Integer[] boxed = new Integer[summaries.size()];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (a, b) -> comparator.compare(summaries.get(a), summaries.get(b)));
+        int[] order = new int[boxed.length];
+        for (int i = 0; i < boxed.length; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+
+    private static int[] invert(int[] order) {
+        int[] positions = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            positions[order[i]] = i;
+        }
+        return positions;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not gzip catalog listing", e);
+        }
+        return out.toByteArray();
+    }
+}
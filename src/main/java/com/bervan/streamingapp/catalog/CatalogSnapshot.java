@@ -0,0 +1,135 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of the catalog computed once per catalog version.
+ *
+ * Everything here is derived from the production map at build time, so requests can be answered
+ * without mapping, sorting or serializing the catalog again.
+ */
+public class CatalogSnapshot {
+    private final long version;
+    private final List<ProductionSummaryDto> summaries;
+    private final Map<String, ProductionSummaryDto> summaryByName;
+    private final byte[] listingJson;
+    private final byte[] listingJsonGzip;
+    private final String listingEtag;
+    private final Map<String, Integer> ordinalByName;
+    // indexed by orderIndex(sort, descending); orders hold ordinals, positions are their inverse
+    private final int[][] orders;
+    private final int[][] positions;
+    private final CatalogSearchIndex searchIndex;
+    private final CatalogFacetIndex facetIndex;
+    private final CatalogVideoIndex videoIndex;
+
+    CatalogSnapshot(long version,
+                    List<ProductionSummaryDto> summaries,
+                    Map<String, ProductionSummaryDto> summaryByName,
+                    byte[] listingJson,
+                    byte[] listingJsonGzip,
+                    String listingEtag,
+                    Map<String, Integer> ordinalByName,
+                    int[][] orders,
+                    int[][] positions,
+                    CatalogSearchIndex searchIndex,
+                    CatalogFacetIndex facetIndex,
+                    CatalogVideoIndex videoIndex) {
+        this.version = version;
+        this.summaries = summaries;
+        this.summaryByName = summaryByName;
+        this.listingJson = listingJson;
+        this.listingJsonGzip = listingJsonGzip;
+        this.listingEtag = listingEtag;
+        this.ordinalByName = ordinalByName;
+        this.orders = orders;
+        this.positions = positions;
+        this.searchIndex = searchIndex;
+        this.facetIndex = facetIndex;
+        this.videoIndex = videoIndex;
+    }
+
+    static int orderIndex(CatalogSort sort, boolean descending) {
+        return sort.ordinal() * 2 + (descending ? 1 : 0);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Summaries sorted by lowercase title, the default listing order. The index of a production
+     * in this list is its ordinal, which all other precomputed structures refer to.
+     */
+    public List<ProductionSummaryDto> getSummaries() {
+        return summaries;
+    }
+
+    public ProductionSummaryDto getSummary(String productionName) {
+        return summaryByName.get(productionName);
+    }
+
+    public ProductionSummaryDto getByOrdinal(int ordinal) {
+        return summaries.get(ordinal);
+    }
+
+    /**
+     * @return ordinal of the production or -1 when it is not part of this snapshot
+     */
+    public int ordinalOf(String productionName) {
+        Integer ordinal = ordinalByName.get(productionName);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public int size() {
+        return summaries.size();
+    }
+
+    /**
+     * Ordinals in the given sort order. The returned array is shared and must not be modified.
+     */
+    int[] order(CatalogSort sort, boolean descending) {
+        return orders[orderIndex(sort, descending)];
+    }
+
+    int position(CatalogSort sort, boolean descending, int ordinal) {
+        return positions[orderIndex(sort, descending)][ordinal];
+    }
+
+    public CatalogSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public CatalogFacetIndex getFacetIndex() {
+        return facetIndex;
+    }
+
+    public CatalogVideoIndex getVideoIndex() {
+        return videoIndex;
+    }
+
+    public byte[] getListingJson() {
+        return listingJson;
+    }
+
+    public byte[] getListingJsonGzip() {
+        return listingJsonGzip;
+    }
+
+    /**
+     * Quoted strong ETag derived from the listing JSON, stable across restarts and nodes.
+     */
+    public String getListingEtag() {
+        return listingEtag;
+    }
+
+    /**
+     * Strong ETag of {@link #getListingJsonGzip()}; a different representation needs a different tag.
+     */
+    public String getListingGzipEtag() {
+        return listingEtag.substring(0, listingEtag.length() - 1) + "-gz\"";
+    }
+}
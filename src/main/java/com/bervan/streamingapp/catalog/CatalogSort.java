@@ -0,0 +1,77 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Server-side sort orders of the productions API. Each order is precomputed per catalog snapshot
+ * in both directions, so a page is sliced without sorting at request time.
+ */
+public enum CatalogSort {
+    TITLE("title", Comparator.comparing(CatalogSort::titleKey)),
+    RATING("rating", Comparator.comparing(ProductionSummaryDto::rating, Comparator.nullsLast(Comparator.naturalOrder()))),
+    YEAR("year", Comparator.comparing(ProductionSummaryDto::releaseYearStart, Comparator.nullsLast(Comparator.naturalOrder())));
+
+    private final String key;
+    private final Comparator<ProductionSummaryDto> ascending;
+
+    CatalogSort(String key, Comparator<ProductionSummaryDto> ascending) {
+        this.key = key;
+        this.ascending = ascending;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Comparator for the given direction. Productions without a value stay at the end in both
+     * directions and ties are broken by title.
+     */
+    Comparator<ProductionSummaryDto> comparator(boolean descending) {
+        Comparator<ProductionSummaryDto> primary = ascending;
+        if (descending && this != TITLE) {
+            primary = (a, b) -> {
+                boolean aMissing = valueMissing(a), bMissing = valueMissing(b);
+                if (aMissing || bMissing) {
+                    return Boolean.compare(aMissing, bMissing);
+                }
+                return ascending.compare(b, a);
+            };
+        } else if (descending) {
+            primary = ascending.reversed();
+        }
+        return primary.thenComparing(CatalogSort::titleKey);
+    }
+
+    private boolean valueMissing(ProductionSummaryDto p) {
+        return switch (this) {
+            case RATING -> p.rating() == null;
+            case YEAR -> p.releaseYearStart() == null;
+            case TITLE -> false;
+        };
+    }
+
+    /**
+     * Parses {@code title}, {@code rating}, {@code year}, optionally prefixed with {@code -} for descending.
+     */
+    public static CatalogSort parse(String value) {
+        String key = value.startsWith("-") ? value.substring(1) : value;
+        for (CatalogSort sort : values()) {
+            if (sort.key.equals(key.toLowerCase(Locale.ROOT))) {
+                return sort;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported sort: " + value);
+    }
+
+    public static boolean isDescending(String value) {
+        return value.startsWith("-");
+    }
+
+    static String titleKey(ProductionSummaryDto p) {
+        return p.title() != null ? p.title().toLowerCase() : "";
+    }
+}
@@ -0,0 +1,140 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.filestorage.model.Metadata;
+import com.bervan.streamingapp.VideoManager;
+import com.bervan.streamingapp.config.ProductionData;
+import com.bervan.streamingapp.config.structure.*;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Per-video data of the catalog snapshot: name, season, playback URLs, subtitles and the
+ * next/previous episode (across seasons). Everything is resolved once from the loaded production
+ * structures, so video info requests need no database queries.
+ */
+public class CatalogVideoIndex {
+
+    /**
+     * @param seasonName  {@code null} for movies
+     * @param videoFolder metadata of the folder holding the video file (MP4) or the playlists (HLS)
+     */
+    public record VideoEntry(
+            String productionName,
+            String videoFolderId,
+            String videoName,
+            String seasonName,
+            String videoFormat,
+            String videoUrl,
+            List<String> availableSubtitles,
+            Map<String, String> subtitleUrls,
+            String nextEpisodeId,
+            String prevEpisodeId,
+            Metadata videoFolder
+    ) {}
+
+    private final Map<String, VideoEntry> byVideoFolderId;
+    private final Map<String, List<VideoEntry>> byProduction;
+
+    private CatalogVideoIndex(Map<String, VideoEntry> byVideoFolderId, Map<String, List<VideoEntry>> byProduction) {
+        this.byVideoFolderId = byVideoFolderId;
+        this.byProduction = byProduction;
+    }
+
+    public VideoEntry get(String videoFolderId) {
+        return byVideoFolderId.get(videoFolderId);
+    }
+
+    /**
+     * All videos of the production in playback order, empty when the production is unknown.
+     */
+    public List<VideoEntry> getProductionVideos(String productionName) {
+        return byProduction.getOrDefault(productionName, List.of());
+    }
+
+    public static CatalogVideoIndex build(Collection<ProductionData> productions, VideoManager videoManager) {
+        Map<String, VideoEntry> byVideoFolderId = new HashMap<>();
+        Map<String, List<VideoEntry>> byProduction = new HashMap<>();
+
+        for (ProductionData pd : productions) {
+            BaseRootProductionStructure structure = pd.getProductionStructure();
+            if (structure == null || pd.getProductionDetails() == null) {
+                continue;
+            }
+            String videoFormat = pd.getProductionDetails().getVideoFormat() != null
+                    ? pd.getProductionDetails().getVideoFormat().name() : "MP4";
+
+            // folders in playback order, with the season they belong to
+            List<Metadata> folders = new ArrayList<>();
+            List<String> seasonNames = new ArrayList<>();
+            if (structure instanceof TvSeriesBaseRootProductionStructure tvSeries && tvSeries.getSeasons() != null) {
+                for (SeasonStructure season : tvSeries.getSeasons()) {
+                    if (season.getEpisodes() == null) {
+                        continue;
+                    }
+                    for (EpisodeStructure episode : videoManager.getSortedEpisodes(season)) {
+                        folders.add(episode.getEpisodeFolder());
+                        seasonNames.add(season.getMetadataName());
+                    }
+                }
+            } else if (structure instanceof MovieBaseRootProductionStructure movie && movie.getVideosFolders() != null) {
+                for (Metadata folder : movie.getVideosFolders()) {
+                    folders.add(folder);
+                    seasonNames.add(null);
+                }
+            }
+
+            boolean series = structure instanceof TvSeriesBaseRootProductionStructure;
+            List<VideoEntry> entries = new ArrayList<>(folders.size());
+            for (int i = 0; i < folders.size(); i++) {
+                Metadata folder = folders.get(i);
+                String id = folder.getId().toString();
+                String videoUrl = "HLS".equals(videoFormat)
+                        ? "/storage/videos/hls/" + id + "/master.m3u8"
+                        : "/storage/videos/video-folder/" + id;
+
+                List<String> availableSubtitles = new ArrayList<>();
+                Map<String, String> subtitleUrls = new LinkedHashMap<>();
+                for (String lang : subtitleLanguages(pd, folder, videoManager)) {
+                    availableSubtitles.add(lang);
+                    subtitleUrls.put(lang, "/storage/videos/subtitles/" + id + "/" + lang);
+                }
+
+                VideoEntry entry = new VideoEntry(
+                        pd.getProductionName(),
+                        id,
+                        folder.getFilename(),
+                        seasonNames.get(i),
+                        videoFormat,
+                        videoUrl,
+                        Collections.unmodifiableList(availableSubtitles),
+                        Collections.unmodifiableMap(subtitleUrls),
+                        series && i + 1 < folders.size() ? folders.get(i + 1).getId().toString() : null,
+                        series && i > 0 ? folders.get(i - 1).getId().toString() : null,
+                        folder
+                );
+                entries.add(entry);
+                byVideoFolderId.put(id, entry);
+            }
+            byProduction.put(pd.getProductionName(), Collections.unmodifiableList(entries));
+        }
+        return new CatalogVideoIndex(byVideoFolderId, byProduction);
+    }
+
+    private static Set<String> subtitleLanguages(ProductionData pd, Metadata folder, VideoManager videoManager) {
+        if (pd.getProductionFoldersByPathAndType() == null) {
+            return Set.of();
+        }
+        Map<ProductionFileType, List<Metadata>> folderContent = pd.getProductionFoldersByPathAndType()
+                .get(folder.getPath() + folder.getFilename() + File.separator);
+        if (folderContent == null || folderContent.get(ProductionFileType.SUBTITLE) == null) {
+            return Set.of();
+        }
+        // detectSubtitleLanguage instead of getSubtitle per language: same aliases, no error log per missing language
+        Set<String> languages = new TreeSet<>();
+        for (Metadata subtitle : folderContent.get(ProductionFileType.SUBTITLE)) {
+            videoManager.detectSubtitleLanguage(subtitle.getFilename()).ifPresent(languages::add);
+        }
+        return languages;
+    }
+}
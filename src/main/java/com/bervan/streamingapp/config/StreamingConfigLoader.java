@@ -42,46 +42,10 @@ public class StreamingConfigLoader {
         Map<Metadata, MetadataByPathAndType> allProductions = loadAllProductionsMetadata();
 
         for (Map.Entry<Metadata, MetadataByPathAndType> productionEntry : allProductions.entrySet()) {
-            ProductionData productionData = new ProductionData();
-            Metadata mainFolder = productionEntry.getKey();
-            productionData.setMainFolder(mainFolder);
-            String mainFolderPath = (mainFolder.getPath() + mainFolder.getFilename() + File.separator).trim();
-            log.info("Building production's data :{}", mainFolderPath);
-            productionData.setMainFolderPath(mainFolderPath);
-            productionData.setProductionId(productionEntry.getKey().getId().toString());
-            productionData.setProductionFoldersByPathAndType(productionEntry.getValue());
-
-            MetadataByPathAndType productionFolders = productionEntry.getValue();
-
-            if (productionFolders.get(mainFolderPath) == null) {
-                log.error("Production Folders Empty: Details file is missing for production " + mainFolderPath);
-                continue;
-            }
-
-            List<Metadata> details = productionFolders.get(mainFolderPath).get(ProductionFileType.DETAILS);
-            ProductionDetails productionDetails;
-            if (details != null && !details.isEmpty()) {
-                Metadata metadata = details.get(0);
-                try {
-                    byte[] file = fileServiceManager.readFile(metadata);
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    String jsonString = new String(file, StandardCharsets.UTF_8);
-                    productionDetails = objectMapper.readValue(jsonString, ProductionDetails.class);
-                    productionData.setProductionName(productionDetails.getName());
-                    productionData.setProductionDetails(productionDetails);
-                } catch (Exception e) {
-                    log.error("Error parsing JSON to ProductionDetails", e);
-                    continue;
-                }
-            } else {
-                log.error("Details file does not exist or cannot be loaded: Details file is missing for production " + mainFolderPath);
-                continue;
+            ProductionData productionData = buildProductionData(productionEntry.getKey(), productionEntry.getValue());
+            if (productionData != null) {
+                result.put(productionData.getProductionName(), productionData);
             }
-
-            loadMainPosterSrc(productionFolders, mainFolderPath, productionData);
-            loadProductionStructure(productionData, productionFolders);
-
-            result.put(productionData.getProductionName(), productionData);
         }
 
         long end = System.currentTimeMillis();
@@ -90,6 +54,57 @@ public class StreamingConfigLoader {
         return result;
     }
 
+    /**
+     * Loads a single production from its main folder, e.g. after its files changed.
+     *
+     * @return empty when the folder holds no valid production
+     */
+    public Optional<ProductionData> loadProduction(Metadata mainFolder) {
+        long start = System.currentTimeMillis();
+        ProductionData productionData = buildProductionData(mainFolder, videoManager.loadVideoDirectoryContent(mainFolder));
+        log.info("Loading production {} finished in {} ms", mainFolder.getFilename(), System.currentTimeMillis() - start);
+        return Optional.ofNullable(productionData);
+    }
+
+    private ProductionData buildProductionData(Metadata mainFolder, MetadataByPathAndType productionFolders) {
+        ProductionData productionData = new ProductionData();
+        productionData.setMainFolder(mainFolder);
+        String mainFolderPath = (mainFolder.getPath() + mainFolder.getFilename() + File.separator).trim();
+        log.info("Building production's data :{}", mainFolderPath);
+        productionData.setMainFolderPath(mainFolderPath);
+        productionData.setProductionId(mainFolder.getId().toString());
+        productionData.setProductionFoldersByPathAndType(productionFolders);
+
+        if (productionFolders.get(mainFolderPath) == null) {
+            log.error("Production Folders Empty: Details file is missing for production " + mainFolderPath);
+            return null;
+        }
+
+        List<Metadata> details = productionFolders.get(mainFolderPath).get(ProductionFileType.DETAILS);
+        ProductionDetails productionDetails;
+        if (details != null && !details.isEmpty()) {
+            Metadata metadata = details.get(0);
+            try {
+                byte[] file = fileServiceManager.readFile(metadata);
+                ObjectMapper objectMapper = new ObjectMapper();
+                String jsonString = new String(file, StandardCharsets.UTF_8);
+                productionDetails = objectMapper.readValue(jsonString, ProductionDetails.class);
+                productionData.setProductionName(productionDetails.getName());
+                productionData.setProductionDetails(productionDetails);
+            } catch (Exception e) {
+                log.error("Error parsing JSON to ProductionDetails", e);
+                return null;
+            }
+        } else {
+            log.error("Details file does not exist or cannot be loaded: Details file is missing for production " + mainFolderPath);
+            return null;
+        }
+
+        loadMainPosterSrc(productionFolders, mainFolderPath, productionData);
+        loadProductionStructure(productionData, productionFolders);
+        return productionData;
+    }
+
     private void loadProductionStructure(ProductionData productionData, MetadataByPathAndType productionFolders) {
         String productionName = productionData.getProductionName();
         try {
@@ -0,0 +1,12 @@
+package com.bervan.streamingapp.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@code @Scheduled} background work of the module (watch progress flushing and similar).
+ */
+@Configuration
+@EnableScheduling
+public class StreamingSchedulingConfig {
+}
@@ -0,0 +1,86 @@
+package com.bervan.streamingapp.media;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Runs one ffmpeg command for a media job.
+ *
+ * The command must contain {@code -progress pipe:1}; its {@code out_time_us} reports are turned into a
+ * progress fraction. stderr goes to a log file whose tail becomes the error message when ffmpeg fails.
+ * Interrupting the calling thread kills the process.
+ */
+final class FfmpegProcess {
+    private static final int ERROR_TAIL_LINES = 5;
+
+    private FfmpegProcess() {
+    }
+
+    static List<String> baseCommand(String ffmpeg, Path input) {
+        return baseCommand(ffmpeg, List.of(), input);
+    }
+
+    static List<String> baseCommand(String ffmpeg, List<String> inputOptions, Path input) {
+        List<String> command = new ArrayList<>(List.of(ffmpeg, "-nostdin", "-y", "-hide_banner", "-nostats",
+                "-progress", "pipe:1"));
+        command.addAll(inputOptions);
+        command.addAll(List.of("-i", input.toString()));
+        return command;
+    }
+
+    static void run(List<String> command, Path logFile, double durationSeconds, DoubleConsumer progress)
+            throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .redirectError(logFile.toFile())
+                .start();
+        Thread reader = new Thread(() -> readProgress(process, durationSeconds, progress), "ffmpeg-progress");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            int exitCode = process.waitFor();
+            reader.join(1000);
+            if (exitCode != 0) {
+                throw new IOException("ffmpeg exited with code " + exitCode + ": " + tail(logFile));
+            }
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static void readProgress(Process process, double durationSeconds, DoubleConsumer progress) {
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                // out_time_ms is in microseconds as well, older ffmpeg versions only print that one
+                if (durationSeconds > 0 && (line.startsWith("out_time_us=") || line.startsWith("out_time_ms="))) {
+                    try {
+                        long micros = Long.parseLong(line.substring(line.indexOf('=') + 1).trim());
+                        progress.accept(micros / 1_000_000.0 / durationSeconds);
+                    } catch (NumberFormatException ignored) {
+                        // "N/A" before the first frame
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // process ended
+        }
+    }
+
+    private static String tail(Path logFile) {
+        try {
+            List<String> lines = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+            return String.join(" | ", lines.subList(Math.max(0, lines.size() - ERROR_TAIL_LINES), lines.size()));
+        } catch (IOException e) {
+            return "no log";
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.filestorage.model.Metadata;
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.StreamingAdminService;
+import com.bervan.streamingapp.VideoManager;
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.catalog.CatalogVideoIndex;
+import com.bervan.streamingapp.config.ProductionData;
+import com.bervan.streamingapp.config.ProductionDetails;
+import com.bervan.streamingapp.config.structure.ProductionFileType;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Converts uploaded MP4 videos to HLS with a local ffmpeg, one {@link MediaJob} per video.
+ *
+ * Streams are copied when the codecs can go into MPEG-TS as they are (H.264 video, AAC audio) and
+ * re-encoded otherwise. Output is written to a work folder next to the video and moved into place as
+ * {@value #RENDITION_DIR}/ plus {@value #MASTER_PLAYLIST} when ffmpeg succeeded, so a failed or
+ * interrupted run never leaves a half-written playlist behind.
+ *
+ * The videos queued for a production are recorded in {@value #STATE_FILE} in its main folder and
+ * queued again on startup, so a restart repeats at most the videos that were in progress. A video whose
+ * conversion failed is recorded with the error and not resumed; the next {@link #submitProduction} call
+ * retries it. Once every
+ * video of the production has HLS output, {@code details.json} is switched to {@code hls} and only
+ * that production is reloaded. The MP4 sources are kept.
+ */
+@Service
+public class HlsIngestService {
+    public static final String JOB_TYPE = "hls-ingest";
+    public static final String MASTER_PLAYLIST = "master.m3u8";
+    static final String RENDITION_DIR = "v0";
+    static final String MEDIA_PLAYLIST = "index.m3u8";
+    static final String STATE_FILE = "hls-ingest.json";
+    private static final String WORK_DIR = ".hls-ingest";
+
+    /**
+     * @param source    MP4 file
+     * @param outputDir video folder the playlists are written to
+     * @param error     why the last conversion failed, {@code null} unless it did
+     */
+    public record Item(String source, String outputDir, boolean done, String error) {
+        boolean pending() {
+            return !done && error == null;
+        }
+    }
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final MediaJobService mediaJobService;
+    private final CatalogService catalogService;
+    private final VideoSourceResolver videoSourceResolver;
+    private final VideoManager videoManager;
+    private final StreamingAdminService adminService;
+    private final Map<String, ProductionData> streamingProductionData;
+    private final ObjectMapper objectMapper;
+    private final Object stateLock = new Object();
+
+    @Value("${streaming-platform.ffmpeg.path:ffmpeg}")
+    private String ffmpeg;
+    @Value("${streaming-platform.hls-ingest.segment-seconds:6}")
+    private int segmentSeconds;
+
+    public HlsIngestService(MediaJobService mediaJobService, CatalogService catalogService,
+                            VideoSourceResolver videoSourceResolver, VideoManager videoManager,
+                            StreamingAdminService adminService, Map<String, ProductionData> streamingProductionData,
+                            ObjectMapper objectMapper) {
+        this.mediaJobService = mediaJobService;
+        this.catalogService = catalogService;
+        this.videoSourceResolver = videoSourceResolver;
+        this.videoManager = videoManager;
+        this.adminService = adminService;
+        this.streamingProductionData = streamingProductionData;
+        this.objectMapper = objectMapper;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        for (String productionName : new ArrayList<>(streamingProductionData.keySet())) {
+            ProductionData pd = streamingProductionData.get(productionName);
+            if (pd == null || pd.getMainFolder() == null) {
+                continue;
+            }
+            Map<String, Item> items = readState(pd);
+            if (items.values().stream().anyMatch(Item::pending)) {
+                log.info("Resuming HLS ingest of {}", productionName);
+                submitPending(productionName, items);
+            }
+        }
+    }
+
+    /**
+     * Queues conversion of every MP4 video of the production that has no HLS output yet, including videos
+     * whose earlier conversion failed.
+     *
+     * @return the queued (or already running) jobs; videos that did not fit into the queue stay recorded
+     * and are queued on the next call or restart
+     */
+    public List<MediaJob> submitProduction(String productionName) throws IOException {
+        ProductionData pd = streamingProductionData.get(productionName);
+        if (pd == null) {
+            throw new IllegalArgumentException("Unknown production " + productionName);
+        }
+        Map<String, Item> items;
+        synchronized (stateLock) {
+            items = new TreeMap<>(readState(pd));
+            for (CatalogVideoIndex.VideoEntry entry : catalogService.current().getVideoIndex().getProductionVideos(productionName)) {
+                Optional<Path> mp4 = videoSourceResolver.resolveMp4File(entry);
+                if (mp4.isEmpty() || !Files.isRegularFile(mp4.get())) {
+                    continue;
+                }
+                Path outputDir = Path.of(videoManager.getSrc(entry.videoFolder()));
+                if (!Files.exists(outputDir.resolve(MASTER_PLAYLIST))) {
+                    items.put(entry.videoFolderId(), new Item(mp4.get().toString(), outputDir.toString(), false, null));
+                }
+            }
+            writeState(pd, items);
+        }
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        if (items.values().stream().allMatch(Item::done)) {
+            // converted earlier, but the format switch did not happen
+            completeProduction(productionName);
+            return List.of();
+        }
+        return submitPending(productionName, items);
+    }
+
+    private List<MediaJob> submitPending(String productionName, Map<String, Item> items) {
+        List<MediaJob> submitted = new ArrayList<>();
+        for (Map.Entry<String, Item> entry : items.entrySet()) {
+            Item item = entry.getValue();
+            if (!item.pending()) {
+                continue;
+            }
+            try {
+                submitted.add(mediaJobService.submit(JOB_TYPE, item.source(), job -> {
+                    try {
+                        convert(item, job);
+                    } catch (IOException | RuntimeException e) {
+                        // an interrupted run is not recorded, it is resumed after the restart
+                        markFailed(productionName, entry.getKey(), e);
+                        throw e;
+                    }
+                    markDone(productionName, entry.getKey());
+                }));
+            } catch (RejectedExecutionException e) {
+                log.warn("Media job queue is full, HLS ingest of {} stays pending", item.source());
+            }
+        }
+        return submitted;
+    }
+
+    private void convert(Item item, MediaJob job) throws IOException, InterruptedException {
+        Path source = Path.of(item.source());
+        Path outputDir = Path.of(item.outputDir());
+        Path work = outputDir.resolve(WORK_DIR);
+        deleteRecursively(work);
+        Files.createDirectories(work.resolve(RENDITION_DIR));
+
+        try {
+            StreamInfo info = VideoProbeService.probeMp4(source);
+            boolean copyVideo = info.videoCodec() != null && info.videoCodec().startsWith("avc1");
+            boolean copyAudio = info.audioCodec() == null || info.audioCodec().startsWith("mp4a");
+
+            List<String> command = FfmpegProcess.baseCommand(ffmpeg, source);
+            command.addAll(List.of("-map", "0:v:0", "-map", "0:a:0?"));
+            if (copyVideo) {
+                command.addAll(List.of("-c:v", "copy"));
+            } else {
+                command.addAll(List.of("-c:v", "libx264", "-preset", "veryfast", "-crf", "21", "-pix_fmt", "yuv420p",
+                        "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")"));
+            }
+            command.addAll(copyAudio ? List.of("-c:a", "copy") : List.of("-c:a", "aac", "-b:a", "160k", "-ac", "2"));
+            command.addAll(List.of("-f", "hls", "-hls_time", String.valueOf(segmentSeconds),
+                    "-hls_playlist_type", "vod", "-hls_flags", "independent_segments",
+                    "-hls_segment_filename", work.resolve(RENDITION_DIR).resolve("seg_%05d.ts").toString(),
+                    work.resolve(RENDITION_DIR).resolve(MEDIA_PLAYLIST).toString()));
+            job.setMessage((copyVideo ? "copy" : "h264") + "/" + (copyAudio ? "copy" : "aac"));
+
+            FfmpegProcess.run(command, work.resolve("ffmpeg.log"), info.durationSeconds(),
+                    fraction -> job.setProgress(fraction * 0.99));
+
+            HlsMasterPlaylist.Bitrate bitrate = HlsMasterPlaylist.measure(work.resolve(RENDITION_DIR).resolve(MEDIA_PLAYLIST));
+            String codecs = copyVideo && copyAudio
+                    ? info.audioCodec() != null ? info.videoCodec() + "," + info.audioCodec() : info.videoCodec()
+                    : null;
+            String master = HlsMasterPlaylist.build(List.of(new HlsMasterPlaylist.Variant(
+                    RENDITION_DIR + "/" + MEDIA_PLAYLIST, bitrate.peak(), bitrate.average(),
+                    info.width(), info.height(), codecs)));
+            Files.writeString(work.resolve(MASTER_PLAYLIST), master, StandardCharsets.UTF_8);
+
+            // the master playlist goes last: its presence marks the video as converted
+            deleteRecursively(outputDir.resolve(RENDITION_DIR));
+            Files.move(work.resolve(RENDITION_DIR), outputDir.resolve(RENDITION_DIR), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(work.resolve(MASTER_PLAYLIST), outputDir.resolve(MASTER_PLAYLIST),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.setMessage(job.getMessage() + ", " + bitrate.average() / 1000 + " kbit/s");
+        } finally {
+            deleteRecursively(work);
+        }
+    }
+
+    private void markDone(String productionName, String videoFolderId) throws IOException {
+        ProductionData pd = streamingProductionData.get(productionName);
+        if (pd == null) {
+            return;
+        }
+        boolean complete;
+        synchronized (stateLock) {
+            Map<String, Item> items = new TreeMap<>(readState(pd));
+            Item item = items.get(videoFolderId);
+            if (item != null) {
+                items.put(videoFolderId, new Item(item.source(), item.outputDir(), true, null));
+                writeState(pd, items);
+            }
+            complete = items.values().stream().allMatch(Item::done);
+        }
+        if (complete) {
+            completeProduction(productionName);
+        }
+    }
+
+    private void markFailed(String productionName, String videoFolderId, Exception failure) throws IOException {
+        ProductionData pd = streamingProductionData.get(productionName);
+        if (pd == null) {
+            return;
+        }
+        String error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+        synchronized (stateLock) {
+            Map<String, Item> items = new TreeMap<>(readState(pd));
+            Item item = items.get(videoFolderId);
+            if (item != null) {
+                items.put(videoFolderId, new Item(item.source(), item.outputDir(), false, error));
+                writeState(pd, items);
+            }
+        }
+        log.warn("HLS ingest of {} in {} failed, not resumed until the production is submitted again: {}",
+                videoFolderId, productionName, error);
+    }
+
+    private void completeProduction(String productionName) throws IOException {
+        ProductionData pd = streamingProductionData.get(productionName);
+        if (pd == null) {
+            return;
+        }
+        if (pd.getProductionDetails().getVideoFormat() != ProductionDetails.VideoFormat.HLS) {
+            switchToHls(pd);
+        }
+        synchronized (stateLock) {
+            Files.deleteIfExists(stateFile(pd));
+        }
+        adminService.reloadProduction(productionName, streamingProductionData);
+        log.info("HLS ingest of {} completed", productionName);
+    }
+
+    private void switchToHls(ProductionData pd) throws IOException {
+        List<Metadata> details = pd.getProductionFoldersByPathAndType().get(pd.getMainFolderPath()).get(ProductionFileType.DETAILS);
+        Path detailsFile = Path.of(videoManager.getSrc(details.get(0)));
+        ObjectNode json = (ObjectNode) objectMapper.readTree(detailsFile.toFile());
+        json.put("videoFormat", ProductionDetails.VideoFormat.HLS.name().toLowerCase(Locale.ROOT));
+        Path temp = Files.createTempFile(detailsFile.getParent(), "details.json", ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), json);
+            Files.move(temp, detailsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info("Switched {} to HLS", pd.getProductionName());
+    }
+
+    private Path stateFile(ProductionData pd) {
+        return Path.of(videoManager.getSrc(pd.getMainFolder())).resolve(STATE_FILE);
+    }
+
+    private Map<String, Item> readState(ProductionData pd) {
+        Path file = stateFile(pd);
+        if (!Files.isRegularFile(file)) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), new TypeReference<TreeMap<String, Item>>() {
+            });
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable HLS ingest state {}: {}", file, e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void writeState(ProductionData pd, Map<String, Item> items) throws IOException {
+        Path file = stateFile(pd);
+        if (items.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Path temp = Files.createTempFile(file.getParent(), STATE_FILE, ".tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), items);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.bervan.streamingapp.media;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Builds HLS master playlists for renditions whose media playlists were already written.
+ *
+ * {@code BANDWIDTH} is the peak segment bitrate and {@code AVERAGE-BANDWIDTH} the mean bitrate of a
+ * rendition, both measured from its segment files, so players can choose between renditions reliably.
+ */
+public final class HlsMasterPlaylist {
+
+    /**
+     * @param uri    media playlist, relative to the master playlist
+     * @param codecs RFC 6381 codecs or {@code null} when unknown
+     */
+    public record Variant(String uri, long bandwidth, long averageBandwidth, Integer width, Integer height,
+                          String codecs) {}
+
+    public record Bitrate(long peak, long average) {}
+
+    private HlsMasterPlaylist() {
+    }
+
+    public static String build(List<Variant> variants) {
+        return extend("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-INDEPENDENT-SEGMENTS\n", variants);
+    }
+
+    /**
+     * Appends variants to an existing master playlist, keeping its header, media groups and variants as they are.
+     */
+    public static String extend(String master, List<Variant> variants) {
+        StringBuilder playlist = new StringBuilder(master);
+        if (playlist.length() > 0 && playlist.charAt(playlist.length() - 1) != '\n') {
+            playlist.append('\n');
+        }
+        for (Variant variant : variants) {
+            playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(variant.bandwidth());
+            if (variant.averageBandwidth() > 0) {
+                playlist.append(",AVERAGE-BANDWIDTH=").append(variant.averageBandwidth());
+            }
+            if (variant.width() != null && variant.height() != null) {
+                playlist.append(",RESOLUTION=").append(variant.width()).append('x').append(variant.height());
+            }
+            if (variant.codecs() != null) {
+                playlist.append(",CODECS=\"").append(variant.codecs()).append('"');
+            }
+            playlist.append('\n').append(variant.uri()).append('\n');
+        }
+        return playlist.toString();
+    }
+
+    /**
+     * Measures a media playlist from its {@code #EXTINF} durations and the sizes of the referenced segment
+     * files (or their {@code #EXT-X-BYTERANGE} lengths).
+     */
+    public static Bitrate measure(Path mediaPlaylist) throws IOException {
+        Path directory = mediaPlaylist.getParent();
+        double segmentDuration = -1;
+        long byteRange = -1;
+        double totalDuration = 0;
+        long totalBytes = 0;
+        long peak = 0;
+        for (String line : Files.readAllLines(mediaPlaylist)) {
+            line = line.trim();
+            if (line.startsWith("#EXTINF:")) {
+                int comma = line.indexOf(',');
+                segmentDuration = Double.parseDouble(line.substring(8, comma > 0 ? comma : line.length()));
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                String range = line.substring(17);
+                int at = range.indexOf('@');
+                byteRange = Long.parseLong(at > 0 ? range.substring(0, at) : range);
+            } else if (!line.isEmpty() && !line.startsWith("#") && segmentDuration >= 0) {
+                long bytes = byteRange >= 0 ? byteRange : Files.size(directory.resolve(line));
+                totalDuration += segmentDuration;
+                totalBytes += bytes;
+                if (segmentDuration > 0) {
+                    peak = Math.max(peak, Math.round(bytes * 8 / segmentDuration));
+                }
+                segmentDuration = -1;
+                byteRange = -1;
+            }
+        }
+        if (totalDuration <= 0) {
+            throw new IOException("No segments in " + mediaPlaylist);
+        }
+        return new Bitrate(peak, Math.round(totalBytes * 8 / totalDuration));
+    }
+}
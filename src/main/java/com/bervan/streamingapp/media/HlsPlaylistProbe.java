@@ -0,0 +1,162 @@
+package com.bervan.streamingapp.media;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Reads duration, codecs and size of an HLS video from its playlists.
+ *
+ * The highest-bandwidth variant of the master playlist is probed; without a master playlist the
+ * media playlist with the most segments is used.
+ */
+public final class HlsPlaylistProbe {
+    private static final Pattern BANDWIDTH = Pattern.compile("(?<![A-Z-])BANDWIDTH=(\\d+)");
+    private static final Pattern RESOLUTION = Pattern.compile("RESOLUTION=(\\d+)x(\\d+)");
+    private static final Pattern CODECS = Pattern.compile("CODECS=\"([^\"]*)\"");
+
+    private HlsPlaylistProbe() {
+    }
+
+    /**
+     * Media playlist used for probing, the file whose mtime decides whether a probe is stale.
+     */
+    public static Path findMediaPlaylist(Path hlsDir) throws IOException {
+        Variant variant = bestVariant(hlsDir);
+        return variant != null ? variant.playlist : largestPlaylist(hlsDir);
+    }
+
+    private static Path largestPlaylist(Path hlsDir) throws IOException {
+        Path best = null;
+        long maxSegments = -1;
+        for (Path playlist : listPlaylists(hlsDir)) {
+            long segments;
+            try (Stream<String> lines = Files.lines(playlist)) {
+                segments = lines.filter(line -> line.startsWith("#EXTINF")).count();
+            }
+            if (segments > maxSegments) {
+                maxSegments = segments;
+                best = playlist;
+            }
+        }
+        return best;
+    }
+
+    public static StreamInfo probe(Path hlsDir) throws IOException {
+        Variant variant = bestVariant(hlsDir);
+        Path mediaPlaylist = variant != null ? variant.playlist : largestPlaylist(hlsDir);
+        if (mediaPlaylist == null) {
+            throw new IOException("No playlist in " + hlsDir);
+        }
+
+        double duration = 0;
+        long segmentBytes = 0;
+        Path segmentDir = mediaPlaylist.getParent();
+        for (String line : Files.readAllLines(mediaPlaylist)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("#EXTINF:")) {
+                int comma = trimmed.indexOf(',');
+                String value = trimmed.substring(8, comma >= 0 ? comma : trimmed.length());
+                try {
+                    duration += Double.parseDouble(value);
+                } catch (NumberFormatException ignored) {
+                    // malformed entry, the segment is still counted for the size
+                }
+            } else if (!trimmed.isEmpty() && !trimmed.startsWith("#") && !trimmed.contains("://")) {
+                Path segment = segmentDir.resolve(trimmed).normalize();
+                if (segment.startsWith(hlsDir) && Files.isRegularFile(segment)) {
+                    segmentBytes += Files.size(segment);
+                }
+            }
+        }
+
+        String videoCodec = null;
+        String audioCodec = null;
+        Integer width = null;
+        Integer height = null;
+        Long bitrate = duration > 0 ? Math.round(segmentBytes * 8 / duration) : null;
+        if (variant != null) {
+            for (String codec : variant.codecs) {
+                String c = codec.trim();
+                if (c.startsWith("mp4a") || c.startsWith("ac-3") || c.startsWith("ec-3") || c.startsWith("opus")) {
+                    audioCodec = audioCodec == null ? c : audioCodec;
+                } else if (!c.isEmpty()) {
+                    videoCodec = videoCodec == null ? c : videoCodec;
+                }
+            }
+            width = variant.width;
+            height = variant.height;
+            if (variant.bandwidth != null) {
+                bitrate = variant.bandwidth;
+            }
+        }
+
+        return new StreamInfo("hls", duration, videoCodec, audioCodec, width, height, bitrate, segmentBytes, true,
+                Files.getLastModifiedTime(mediaPlaylist).toMillis(), Files.size(mediaPlaylist));
+    }
+
+    private record Variant(Path playlist, Long bandwidth, Integer width, Integer height, List<String> codecs) {}
+
+    private static Variant bestVariant(Path hlsDir) throws IOException {
+        Variant best = null;
+        for (Path playlist : listPlaylists(hlsDir)) {
+            List<String> lines = Files.readAllLines(playlist);
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (!line.startsWith("#EXT-X-STREAM-INF")) {
+                    continue;
+                }
+                String uri = null;
+                for (int j = i + 1; j < lines.size(); j++) {
+                    String candidate = lines.get(j).trim();
+                    if (!candidate.isEmpty() && !candidate.startsWith("#")) {
+                        uri = candidate;
+                        break;
+                    }
+                }
+                if (uri == null) {
+                    continue;
+                }
+                Path mediaPlaylist = playlist.getParent().resolve(uri).normalize();
+                if (!mediaPlaylist.startsWith(hlsDir) || !Files.isRegularFile(mediaPlaylist)) {
+                    continue;
+                }
+                Matcher bandwidth = BANDWIDTH.matcher(line);
+                Matcher resolution = RESOLUTION.matcher(line);
+                Matcher codecs = CODECS.matcher(line);
+                Variant variant = new Variant(mediaPlaylist,
+                        bandwidth.find() ? Long.parseLong(bandwidth.group(1)) : null,
+                        resolution.find() ? Integer.parseInt(resolution.group(1)) : null,
+                        resolution.find(0) ? Integer.parseInt(resolution.group(2)) : null,
+                        codecs.find() ? List.of(codecs.group(1).split(",")) : List.of());
+                if (best == null || (variant.bandwidth != null && (best.bandwidth == null || variant.bandwidth > best.bandwidth))) {
+                    best = variant;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static List<Path> listPlaylists(Path hlsDir) throws IOException {
+        try (Stream<Path> files = Files.walk(hlsDir, 3)) {
+            return files.filter(path -> path.getFileName().toString().toLowerCase().endsWith(".m3u8"))
+                    .filter(path -> !isHidden(hlsDir.relativize(path)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    // dot folders are work folders of running media jobs
+    private static boolean isHidden(Path relative) {
+        for (Path part : relative) {
+            if (part.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
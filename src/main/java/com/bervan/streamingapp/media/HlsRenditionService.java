@@ -0,0 +1,257 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.catalog.CatalogVideoIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Adds lower-bitrate renditions to HLS videos, so players on slow links can switch down.
+ *
+ * Each rung of {@code streaming-platform.hls-renditions.ladder} ({@code height:videoKbps}, comma separated)
+ * below the source height is encoded from the best source variant into {@code r<height>/}, with keyframes
+ * forced at segment boundaries so the renditions switch cleanly among each other. The original
+ * {@code master.m3u8} is kept as {@value #SOURCE_MASTER} and the served master becomes the source master
+ * plus one variant per rendition, with {@code BANDWIDTH}/{@code AVERAGE-BANDWIDTH} measured from the
+ * written segments. Sources whose height is not declared in the master playlist are skipped rather than
+ * risk an upscale. Removing the renditions restores the source master.
+ */
+@Service
+public class HlsRenditionService {
+    public static final String JOB_TYPE = "hls-renditions";
+    static final String SOURCE_MASTER = "master.source.m3u8";
+    private static final String WORK_DIR = ".hls-renditions";
+    private static final Pattern RENDITION_DIR = Pattern.compile("r\\d+");
+    private static final int AUDIO_KBPS = 128;
+    // H.264 Main profile, level 3.1, as forced below
+    private static final String VIDEO_CODEC = "avc1.4d401f";
+    private static final String AUDIO_CODEC = "mp4a.40.2";
+
+    record Rung(int height, int videoKbps) {}
+
+    /**
+     * @param renditions heights of the generated renditions present on disk
+     * @param job        latest job for the video, {@code null} when there was none since startup
+     */
+    public record RenditionStatus(String videoFolderId, String videoName, List<Integer> renditions, MediaJob job) {}
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final MediaJobService mediaJobService;
+    private final CatalogService catalogService;
+    private final VideoSourceResolver videoSourceResolver;
+    private final List<Rung> ladder;
+
+    @Value("${streaming-platform.ffmpeg.path:ffmpeg}")
+    private String ffmpeg;
+    @Value("${streaming-platform.hls-ingest.segment-seconds:6}")
+    private int segmentSeconds;
+
+    public HlsRenditionService(MediaJobService mediaJobService, CatalogService catalogService,
+                               VideoSourceResolver videoSourceResolver,
+                               @Value("${streaming-platform.hls-renditions.ladder:720:2800,480:1400,360:800}") String ladder) {
+        this.mediaJobService = mediaJobService;
+        this.catalogService = catalogService;
+        this.videoSourceResolver = videoSourceResolver;
+        this.ladder = parseLadder(ladder);
+    }
+
+    /**
+     * Queues rendition jobs for every HLS video of the production.
+     *
+     * @throws RejectedExecutionException when the job queue is full
+     */
+    public List<MediaJob> submitProduction(String productionName) {
+        List<MediaJob> submitted = new ArrayList<>();
+        for (Path hlsDir : hlsDirectories(productionName).values()) {
+            submitted.add(mediaJobService.submit(JOB_TYPE, hlsDir.toString(), job -> encode(hlsDir, job)));
+        }
+        return submitted;
+    }
+
+    /**
+     * Deletes the generated renditions of the production's videos and restores their source master playlists.
+     *
+     * @return number of videos that had renditions
+     */
+    public int removeProduction(String productionName) throws IOException {
+        int removed = 0;
+        for (Path hlsDir : hlsDirectories(productionName).values()) {
+            if (mediaJobService.list().stream().anyMatch(job -> !job.isFinished() && job.getType().equals(JOB_TYPE)
+                    && job.getTarget().equals(hlsDir.toString()))) {
+                throw new IllegalStateException("Renditions of " + hlsDir + " are being generated");
+            }
+            Path sourceMaster = hlsDir.resolve(SOURCE_MASTER);
+            if (Files.isRegularFile(sourceMaster)) {
+                Files.move(sourceMaster, hlsDir.resolve(HlsIngestService.MASTER_PLAYLIST),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                removed++;
+            }
+            for (Path rendition : renditionDirectories(hlsDir)) {
+                HlsIngestService.deleteRecursively(rendition);
+            }
+        }
+        log.info("Removed renditions of {} videos of {}", removed, productionName);
+        return removed;
+    }
+
+    public List<RenditionStatus> status(String productionName) throws IOException {
+        Map<String, MediaJob> latestJobs = new HashMap<>();
+        // list() is newest first
+        for (MediaJob job : mediaJobService.list()) {
+            if (job.getType().equals(JOB_TYPE)) {
+                latestJobs.putIfAbsent(job.getTarget(), job);
+            }
+        }
+        List<RenditionStatus> result = new ArrayList<>();
+        for (Map.Entry<CatalogVideoIndex.VideoEntry, Path> video : hlsDirectories(productionName).entrySet()) {
+            List<Integer> heights = new ArrayList<>();
+            for (Path rendition : renditionDirectories(video.getValue())) {
+                heights.add(Integer.parseInt(rendition.getFileName().toString().substring(1)));
+            }
+            heights.sort(Comparator.reverseOrder());
+            result.add(new RenditionStatus(video.getKey().videoFolderId(), video.getKey().videoName(), heights,
+                    latestJobs.get(video.getValue().toString())));
+        }
+        return result;
+    }
+
+    private void encode(Path hlsDir, MediaJob job) throws IOException, InterruptedException {
+        Path sourcePlaylist = HlsPlaylistProbe.findMediaPlaylist(hlsDir);
+        if (sourcePlaylist == null) {
+            throw new IOException("No playlist in " + hlsDir);
+        }
+        StreamInfo source = HlsPlaylistProbe.probe(hlsDir);
+        if (source.height() == null) {
+            // without a RESOLUTION in the source master every rung could be an upscale
+            job.setMessage("source height unknown, no RESOLUTION in the master playlist");
+            return;
+        }
+        List<Rung> rungs = ladder.stream()
+                .filter(rung -> rung.height() < source.height())
+                .toList();
+        if (rungs.isEmpty()) {
+            job.setMessage("source is not larger than the lowest rendition");
+            return;
+        }
+
+        Path work = hlsDir.resolve(WORK_DIR);
+        HlsIngestService.deleteRecursively(work);
+        try {
+            List<HlsMasterPlaylist.Variant> variants = new ArrayList<>();
+            for (int i = 0; i < rungs.size(); i++) {
+                Rung rung = rungs.get(i);
+                String name = "r" + rung.height();
+                Path output = Files.createDirectories(work.resolve(name));
+                int done = i;
+                FfmpegProcess.run(command(sourcePlaylist, rung, output), work.resolve(name + ".log"),
+                        source.durationSeconds(), fraction -> job.setProgress((done + fraction) / rungs.size() * 0.99));
+
+                HlsMasterPlaylist.Bitrate bitrate = HlsMasterPlaylist.measure(output.resolve(HlsIngestService.MEDIA_PLAYLIST));
+                Integer width = source.width() != null
+                        ? evenWidth(source.width(), source.height(), rung.height()) : null;
+                String codecs = source.videoCodec() == null ? null
+                        : source.audioCodec() != null ? VIDEO_CODEC + "," + AUDIO_CODEC : VIDEO_CODEC;
+                variants.add(new HlsMasterPlaylist.Variant(name + "/" + HlsIngestService.MEDIA_PLAYLIST,
+                        bitrate.peak(), bitrate.average(), width, width != null ? rung.height() : null, codecs));
+            }
+            install(hlsDir, work, sourcePlaylist, source, variants);
+            job.setMessage("renditions " + rungs.stream().map(rung -> rung.height() + "p").toList());
+        } finally {
+            HlsIngestService.deleteRecursively(work);
+        }
+    }
+
+    private List<String> command(Path sourcePlaylist, Rung rung, Path output) {
+        List<String> command = FfmpegProcess.baseCommand(ffmpeg,
+                List.of("-allowed_extensions", "ALL", "-protocol_whitelist", "file,crypto"), sourcePlaylist);
+        command.addAll(List.of(
+                "-map", "0:v:0", "-map", "0:a:0?",
+                "-vf", "scale=-2:" + rung.height(),
+                "-c:v", "libx264", "-preset", "veryfast", "-profile:v", "main", "-level", "3.1", "-pix_fmt", "yuv420p",
+                "-b:v", rung.videoKbps() + "k",
+                "-maxrate", Math.round(rung.videoKbps() * 1.07) + "k",
+                "-bufsize", Math.round(rung.videoKbps() * 1.5) + "k",
+                "-sc_threshold", "0",
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")",
+                "-c:a", "aac", "-b:a", AUDIO_KBPS + "k", "-ac", "2",
+                "-f", "hls", "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_playlist_type", "vod", "-hls_flags", "independent_segments",
+                "-hls_segment_filename", output.resolve("seg_%05d.ts").toString(),
+                output.resolve(HlsIngestService.MEDIA_PLAYLIST).toString()));
+        return command;
+    }
+
+    private void install(Path hlsDir, Path work, Path sourcePlaylist, StreamInfo source,
+                         List<HlsMasterPlaylist.Variant> variants) throws IOException {
+        Path master = hlsDir.resolve(HlsIngestService.MASTER_PLAYLIST);
+        Path sourceMaster = hlsDir.resolve(SOURCE_MASTER);
+        if (!Files.isRegularFile(sourceMaster) && Files.isRegularFile(master)) {
+            Files.copy(master, sourceMaster);
+        }
+        if (!Files.isRegularFile(sourceMaster)) {
+            // a bare media playlist becomes the first variant
+            HlsMasterPlaylist.Bitrate bitrate = HlsMasterPlaylist.measure(sourcePlaylist);
+            Files.writeString(sourceMaster, HlsMasterPlaylist.build(List.of(new HlsMasterPlaylist.Variant(
+                    hlsDir.relativize(sourcePlaylist).toString().replace('\\', '/'), bitrate.peak(), bitrate.average(),
+                    source.width(), source.height(), null))), StandardCharsets.UTF_8);
+        }
+        String sourceText = Files.readString(sourceMaster, StandardCharsets.UTF_8);
+
+        for (Path rendition : renditionDirectories(hlsDir)) {
+            HlsIngestService.deleteRecursively(rendition);
+        }
+        for (HlsMasterPlaylist.Variant variant : variants) {
+            String name = variant.uri().substring(0, variant.uri().indexOf('/'));
+            Files.move(work.resolve(name), hlsDir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        }
+        Path temp = work.resolve(HlsIngestService.MASTER_PLAYLIST);
+        Files.writeString(temp, HlsMasterPlaylist.extend(sourceText, variants), StandardCharsets.UTF_8);
+        Files.move(temp, master, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Map<CatalogVideoIndex.VideoEntry, Path> hlsDirectories(String productionName) {
+        Map<CatalogVideoIndex.VideoEntry, Path> result = new LinkedHashMap<>();
+        for (CatalogVideoIndex.VideoEntry entry : catalogService.current().getVideoIndex().getProductionVideos(productionName)) {
+            videoSourceResolver.resolveHlsDirectory(entry)
+                    .filter(Files::isDirectory)
+                    .ifPresent(dir -> result.put(entry, dir));
+        }
+        return result;
+    }
+
+    private static List<Path> renditionDirectories(Path hlsDir) throws IOException {
+        try (Stream<Path> children = Files.list(hlsDir)) {
+            return children.filter(Files::isDirectory)
+                    .filter(dir -> RENDITION_DIR.matcher(dir.getFileName().toString()).matches())
+                    .toList();
+        }
+    }
+
+    private static int evenWidth(int sourceWidth, int sourceHeight, int height) {
+        return (int) Math.round((double) sourceWidth * height / sourceHeight / 2) * 2;
+    }
+
+    static List<Rung> parseLadder(String ladder) {
+        List<Rung> rungs = new ArrayList<>();
+        for (String rung : ladder.split(",")) {
+            String[] parts = rung.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid rendition '" + rung + "', expected height:videoKbps");
+            }
+            rungs.add(new Rung(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())));
+        }
+        rungs.sort(Comparator.comparingInt(Rung::height).reversed());
+        return List.copyOf(rungs);
+    }
+}
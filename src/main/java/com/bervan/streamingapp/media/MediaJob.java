@@ -0,0 +1,95 @@
+package com.bervan.streamingapp.media;
+
+import java.time.Instant;
+
+/**
+ * A background media job as tracked by {@link MediaJobService}. Fields are updated by the worker
+ * running the job and read by status requests, so they are volatile.
+ */
+public class MediaJob {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final String type;
+    private final String target;
+    private final Instant createdAt;
+    private volatile State state = State.QUEUED;
+    private volatile double progress;
+    private volatile String message;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    MediaJob(String id, String type, String target) {
+        this.id = id;
+        this.type = type;
+        this.target = target;
+        this.createdAt = Instant.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * What the job works on, e.g. a file path; at most one unfinished job exists per type and target.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+
+    public double getProgress() {
+        return progress;
+    }
+
+    public void setProgress(double progress) {
+        this.progress = Math.max(0, Math.min(1, progress));
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    void started() {
+        startedAt = Instant.now();
+        state = State.RUNNING;
+    }
+
+    void finished(State finalState) {
+        finishedAt = Instant.now();
+        if (finalState == State.SUCCEEDED) {
+            progress = 1;
+        }
+        state = finalState;
+    }
+}
@@ -0,0 +1,6 @@
+package com.bervan.streamingapp.media;
+
+/**
+ * Published by {@link MediaJobService} after a job succeeded or failed.
+ */
+public record MediaJobFinishedEvent(MediaJob job) {}
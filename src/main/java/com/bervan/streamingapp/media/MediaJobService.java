@@ -0,0 +1,145 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.logging.JsonLogger;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long media jobs (remuxing, segmenting) on a small fixed worker pool with a bounded queue.
+ *
+ * Submitting a job for a type and target that already has an unfinished job returns that job instead
+ * of queueing a second one. When the queue is full {@link #submit} throws
+ * {@link RejectedExecutionException}, so callers can retry later instead of piling up work. Finished
+ * jobs are kept for status requests until {@code streaming-platform.media-jobs.history} newer ones
+ * finished.
+ */
+@Service
+public class MediaJobService {
+
+    @FunctionalInterface
+    public interface Work {
+        /**
+         * Runs the job; may report progress and a message through the job. Throwing fails the job.
+         */
+        void run(MediaJob job) throws Exception;
+    }
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolExecutor executor;
+    private final int history;
+    // insertion order, so the oldest finished jobs are dropped first
+    private final Map<String, MediaJob> jobs = new LinkedHashMap<>();
+
+    public MediaJobService(ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+                           @Value("${streaming-platform.media-jobs.workers:1}") int workers,
+                           @Value("${streaming-platform.media-jobs.queue-capacity:100}") int queueCapacity,
+                           @Value("${streaming-platform.media-jobs.history:200}") int history) {
+        this.eventPublisher = eventPublisher;
+        this.history = history;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "media-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        meterRegistry.gauge("streaming.media_jobs.queued", executor, e -> e.getQueue().size());
+        meterRegistry.gauge("streaming.media_jobs.running", executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    /**
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public MediaJob submit(String type, String target, Work work) {
+        MediaJob job;
+        synchronized (jobs) {
+            for (MediaJob existing : jobs.values()) {
+                if (!existing.isFinished() && existing.getType().equals(type) && existing.getTarget().equals(target)) {
+                    return existing;
+                }
+            }
+            job = new MediaJob(UUID.randomUUID().toString(), type, target);
+            jobs.put(job.getId(), job);
+        }
+        try {
+            executor.execute(() -> run(job, work));
+        } catch (RejectedExecutionException e) {
+            synchronized (jobs) {
+                jobs.remove(job.getId());
+            }
+            throw e;
+        }
+        log.info("Queued {} job {} for {}", type, job.getId(), target);
+        return job;
+    }
+
+    public Optional<MediaJob> get(String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id));
+        }
+    }
+
+    /**
+     * @return all known jobs, newest first
+     */
+    public List<MediaJob> list() {
+        List<MediaJob> result;
+        synchronized (jobs) {
+            result = new ArrayList<>(jobs.values());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(MediaJob job, Work work) {
+        job.started();
+        long start = System.currentTimeMillis();
+        try {
+            work.run(job);
+            job.finished(MediaJob.State.SUCCEEDED);
+            log.info("{} job {} for {} finished in {} ms", job.getType(), job.getId(), job.getTarget(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            job.setMessage(e.getMessage());
+            job.finished(MediaJob.State.FAILED);
+            log.warn("{} job {} for {} failed: {}", job.getType(), job.getId(), job.getTarget(), e.getMessage());
+        }
+        trimHistory();
+        eventPublisher.publishEvent(new MediaJobFinishedEvent(job));
+    }
+
+    private void trimHistory() {
+        synchronized (jobs) {
+            int finished = 0;
+            for (MediaJob job : jobs.values()) {
+                if (job.isFinished()) {
+                    finished++;
+                }
+            }
+            Iterator<MediaJob> iterator = jobs.values().iterator();
+            while (finished > history && iterator.hasNext()) {
+                if (iterator.next().isFinished()) {
+                    iterator.remove();
+                    finished--;
+                }
+            }
+        }
+    }
+}
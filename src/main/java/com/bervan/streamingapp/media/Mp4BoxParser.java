@@ -0,0 +1,448 @@
+package com.bervan.streamingapp.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal ISO BMFF (MP4) reader.
+ *
+ * Only box headers are read while walking the top level, so the media data is never touched;
+ * the {@code moov} box is then loaded into memory and its {@code mvhd}, {@code mdhd}, {@code hdlr}
+ * and {@code stsd} boxes are decoded. Sample tables ({@code stts}, {@code ctts}, {@code stss},
+ * {@code stsc}, {@code stsz}, {@code stco}/{@code co64}) are only decoded on request.
+ */
+public final class Mp4BoxParser {
+    // moov of a two hour movie is a few MB; anything much larger is not a file we want to load
+    private static final long MAX_MOOV_SIZE = 128L * 1024 * 1024;
+    // stsz with a constant size stores no per-sample entries, so its count is not bounded by the box size
+    private static final int MAX_SAMPLES = 1 << 26;
+
+    private Mp4BoxParser() {
+    }
+
+    public static Mp4Movie parse(Path file) throws IOException {
+        return parse(file, false);
+    }
+
+    public static Mp4Movie parse(Path file, boolean withSampleTables) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            TopLevelBox moovBox = null;
+            TopLevelBox mdatBox = null;
+            for (TopLevelBox box : topLevelBoxes(channel)) {
+                if (box.type().equals("moov") && moovBox == null) {
+                    moovBox = box;
+                } else if (box.type().equals("mdat") && mdatBox == null) {
+                    mdatBox = box;
+                }
+            }
+
+            if (moovBox == null) {
+                throw new IOException("No moov box in " + file);
+            }
+            ByteBuffer moov = readMoov(channel, moovBox);
+            return parseMoov(moov, fileSize, moovBox.offset(), moovBox.size(), mdatBox != null ? mdatBox.offset() : -1,
+                    withSampleTables);
+        }
+    }
+
+    /**
+     * Headers of the top-level boxes in file order. A box with size 0 extends to the end of the file;
+     * a truncated trailing header ends the walk.
+     */
+    public static List<TopLevelBox> topLevelBoxes(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        List<TopLevelBox> boxes = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long offset = 0;
+        while (offset + 8 <= fileSize) {
+            header.clear();
+            header.limit((int) Math.min(16, fileSize - offset));
+            readFully(channel, header, offset);
+            header.flip();
+            long size = Integer.toUnsignedLong(header.getInt());
+            String type = fourcc(header.getInt());
+            int headerSize = 8;
+            if (size == 1) {
+                if (header.remaining() < 8) {
+                    break;
+                }
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = fileSize - offset;
+            }
+            if (size < headerSize) {
+                throw new IOException("Invalid box size " + size + " of '" + type + "' at offset " + offset);
+            }
+            boxes.add(new TopLevelBox(type, offset, size, headerSize));
+            offset += size;
+        }
+        return boxes;
+    }
+
+    static ByteBuffer readMoov(FileChannel channel, TopLevelBox moovBox) throws IOException {
+        if (moovBox.size() > MAX_MOOV_SIZE) {
+            throw new IOException("moov box is too large: " + moovBox.size() + " bytes");
+        }
+        ByteBuffer moov = ByteBuffer.allocate((int) moovBox.size());
+        readFully(channel, moov, moovBox.offset());
+        moov.flip();
+        return moov;
+    }
+
+    private static Mp4Movie parseMoov(ByteBuffer moov, long fileSize, long moovOffset, long moovSize, long mdatOffset,
+                                      boolean withSampleTables) throws IOException {
+        long timescale = 0;
+        long duration = 0;
+        List<Mp4Track> tracks = new ArrayList<>();
+
+        for (Box box : children(moov, headerSize(moov, 0), moov.limit())) {
+            if (box.type.equals("mvhd")) {
+                ByteBuffer mvhd = box.payload(moov);
+                int version = mvhd.get() & 0xFF;
+                skip(mvhd, 3 + (version == 1 ? 16 : 8));
+                timescale = Integer.toUnsignedLong(mvhd.getInt());
+                duration = version == 1 ? mvhd.getLong() : Integer.toUnsignedLong(mvhd.getInt());
+            } else if (box.type.equals("trak")) {
+                tracks.add(parseTrak(moov, box, withSampleTables));
+            }
+        }
+        return new Mp4Movie(fileSize, moovOffset, moovSize, mdatOffset, timescale, duration, List.copyOf(tracks));
+    }
+
+    private static Mp4Track parseTrak(ByteBuffer moov, Box trak, boolean withSampleTables) throws IOException {
+        TrackBuilder track = new TrackBuilder();
+        Box tkhd = child(moov, trak, "tkhd");
+        if (tkhd != null) {
+            ByteBuffer payload = tkhd.payload(moov);
+            int version = payload.get() & 0xFF;
+            skip(payload, 3 + (version == 1 ? 16 : 8));
+            track.trackId = payload.getInt();
+        }
+
+        Box mdia = child(moov, trak, "mdia");
+        if (mdia == null) {
+            return track.build();
+        }
+        Box mdhd = child(moov, mdia, "mdhd");
+        if (mdhd != null) {
+            ByteBuffer payload = mdhd.payload(moov);
+            int version = payload.get() & 0xFF;
+            skip(payload, 3 + (version == 1 ? 16 : 8));
+            track.timescale = Integer.toUnsignedLong(payload.getInt());
+            track.duration = version == 1 ? payload.getLong() : Integer.toUnsignedLong(payload.getInt());
+        }
+        Box hdlr = child(moov, mdia, "hdlr");
+        if (hdlr != null) {
+            ByteBuffer payload = hdlr.payload(moov);
+            skip(payload, 8);
+            track.handlerType = fourcc(payload.getInt());
+        }
+
+        Box minf = child(moov, mdia, "minf");
+        Box stbl = minf != null ? child(moov, minf, "stbl") : null;
+        Box stsd = stbl != null ? child(moov, stbl, "stsd") : null;
+        if (stsd != null) {
+            parseSampleDescription(moov, stsd, track);
+        }
+        if (withSampleTables && stbl != null) {
+            track.samples = parseSampleTable(moov, stbl);
+        }
+        return track.build();
+    }
+
+    private static Mp4SampleTable parseSampleTable(ByteBuffer moov, Box stbl) throws IOException {
+        int sampleCount = 0;
+        int constantSampleSize = 0;
+        int[] sampleSizes = new int[0];
+        long[] chunkOffsets = new long[0];
+        int[] stscFirstChunk = new int[0];
+        int[] stscSamplesPerChunk = new int[0];
+        int[] sttsCounts = new int[0];
+        int[] sttsDeltas = new int[0];
+        int[] syncSamples = null;
+        int[] cttsCounts = null;
+        int[] cttsOffsets = null;
+
+        for (Box box : children(moov, stbl.start() + stbl.headerSize(), stbl.end())) {
+            ByteBuffer payload = box.payload(moov);
+            switch (box.type()) {
+                case "stsz" -> {
+                    skip(payload, 4);
+                    constantSampleSize = payload.getInt();
+                    sampleCount = checkedCount(payload.getInt(), payload, 0);
+                    if (sampleCount > MAX_SAMPLES) {
+                        throw new IOException("Too many samples: " + sampleCount);
+                    }
+                    if (constantSampleSize == 0) {
+                        checkedCount(sampleCount, payload, 4);
+                        sampleSizes = new int[sampleCount];
+                        for (int i = 0; i < sampleCount; i++) {
+                            sampleSizes[i] = payload.getInt();
+                        }
+                    }
+                }
+                case "stco", "co64" -> {
+                    skip(payload, 4);
+                    boolean wide = box.type().equals("co64");
+                    int count = checkedCount(payload.getInt(), payload, wide ? 8 : 4);
+                    chunkOffsets = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        chunkOffsets[i] = wide ? payload.getLong() : Integer.toUnsignedLong(payload.getInt());
+                    }
+                }
+                case "stsc" -> {
+                    skip(payload, 4);
+                    int count = checkedCount(payload.getInt(), payload, 12);
+                    stscFirstChunk = new int[count];
+                    stscSamplesPerChunk = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        stscFirstChunk[i] = payload.getInt();
+                        stscSamplesPerChunk[i] = payload.getInt();
+                        payload.getInt(); // sample_description_index
+                    }
+                }
+                case "stts" -> {
+                    skip(payload, 4);
+                    int count = checkedCount(payload.getInt(), payload, 8);
+                    sttsCounts = new int[count];
+                    sttsDeltas = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        sttsCounts[i] = payload.getInt();
+                        sttsDeltas[i] = payload.getInt();
+                    }
+                }
+                case "ctts" -> {
+                    skip(payload, 4);
+                    int count = checkedCount(payload.getInt(), payload, 8);
+                    cttsCounts = new int[count];
+                    cttsOffsets = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        cttsCounts[i] = payload.getInt();
+                        cttsOffsets[i] = payload.getInt();
+                    }
+                }
+                case "stss" -> {
+                    skip(payload, 4);
+                    int count = checkedCount(payload.getInt(), payload, 4);
+                    syncSamples = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        syncSamples[i] = payload.getInt();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return new Mp4SampleTable(sampleCount, chunkOffsets, stscFirstChunk, stscSamplesPerChunk, constantSampleSize,
+                sampleSizes, sttsCounts, sttsDeltas, syncSamples, cttsCounts, cttsOffsets);
+    }
+
+    /**
+     * Guards against entry counts that do not fit the box, so a corrupt file cannot trigger huge allocations.
+     */
+    private static int checkedCount(int count, ByteBuffer payload, int entrySize) throws IOException {
+        if (count < 0 || (long) count * entrySize > payload.remaining()) {
+            throw new IOException("Sample table entry count " + Integer.toUnsignedLong(count) + " exceeds its box");
+        }
+        return count;
+    }
+
+    private static void parseSampleDescription(ByteBuffer moov, Box stsd, TrackBuilder track) throws IOException {
+        ByteBuffer payload = stsd.payload(moov);
+        skip(payload, 4);
+        if (payload.getInt() == 0 || payload.remaining() < 8) {
+            return;
+        }
+        int entryStart = payload.position();
+        long entrySize = Integer.toUnsignedLong(payload.getInt());
+        String format = fourcc(payload.getInt());
+        track.codec = format;
+        int entryEnd = (int) Math.min(payload.limit(), entryStart + entrySize);
+
+        if ("vide".equals(track.handlerType) && entryEnd - entryStart >= 86) {
+            // SampleEntry (8) + VisualSampleEntry: pre_defined/reserved (16), width, height, ...
+            payload.position(entryStart + 32);
+            track.width = payload.getShort() & 0xFFFF;
+            track.height = payload.getShort() & 0xFFFF;
+            for (Box child : children(payload, entryStart + 86, entryEnd)) {
+                if (child.type.equals("avcC") || child.type.equals("hvcC")) {
+                    track.codec = videoCodecString(format, child.payload(payload), child.type);
+                }
+            }
+        } else if ("soun".equals(track.handlerType) && entryEnd - entryStart >= 36) {
+            // SampleEntry (8) + AudioSampleEntry: reserved (8), channelcount, samplesize, pre_defined, reserved, samplerate 16.16
+            payload.position(entryStart + 24);
+            track.channels = payload.getShort() & 0xFFFF;
+            payload.position(entryStart + 32);
+            track.sampleRate = payload.getShort() & 0xFFFF;
+            // QuickTime sound description versions 1 and 2 append extra fields before the child boxes
+            int soundVersion = payload.getShort(entryStart + 16) & 0xFFFF;
+            int childrenStart = entryStart + 36 + (soundVersion == 1 ? 16 : soundVersion == 2 ? 36 : 0);
+            for (Box child : children(payload, childrenStart, entryEnd)) {
+                if (child.type.equals("esds") && format.equals("mp4a")) {
+                    String codec = mp4aCodecString(child.payload(payload));
+                    if (codec != null) {
+                        track.codec = codec;
+                    }
+                }
+            }
+        }
+    }
+
+    private static String videoCodecString(String format, ByteBuffer config, String configType) {
+        if (configType.equals("avcC") && config.remaining() >= 4) {
+            config.get(); // configurationVersion
+            int profile = config.get() & 0xFF;
+            int compatibility = config.get() & 0xFF;
+            int level = config.get() & 0xFF;
+            return String.format("%s.%02x%02x%02x", format, profile, compatibility, level);
+        }
+        // hvcC strings need the full profile/tier/constraint set, the plain fourcc is enough for players
+        return format;
+    }
+
+    /**
+     * {@code mp4a.<objectTypeIndication>.<audioObjectType>} from the ES descriptor, e.g. {@code mp4a.40.2} for AAC-LC.
+     */
+    private static String mp4aCodecString(ByteBuffer esds) {
+        skip(esds, 4);
+        while (esds.remaining() > 2) {
+            int tag = esds.get() & 0xFF;
+            int length = descriptorLength(esds);
+            if (tag == 0x03) { // ES_Descriptor
+                skip(esds, 2);
+                int flags = esds.get() & 0xFF;
+                if ((flags & 0x80) != 0) skip(esds, 2);
+                if ((flags & 0x40) != 0) skip(esds, esds.get() & 0xFF);
+                if ((flags & 0x20) != 0) skip(esds, 2);
+            } else if (tag == 0x04) { // DecoderConfigDescriptor
+                int objectType = esds.get() & 0xFF;
+                skip(esds, 12);
+                if (esds.remaining() > 2 && (esds.get() & 0xFF) == 0x05) { // DecoderSpecificInfo
+                    descriptorLength(esds);
+                    int audioObjectType = (esds.get() & 0xFF) >> 3;
+                    return String.format("mp4a.%x.%d", objectType, audioObjectType);
+                }
+                return String.format("mp4a.%x", objectType);
+            } else {
+                skip(esds, length);
+            }
+        }
+        return null;
+    }
+
+    private static int descriptorLength(ByteBuffer buffer) {
+        int length = 0;
+        for (int i = 0; i < 4 && buffer.hasRemaining(); i++) {
+            int b = buffer.get() & 0xFF;
+            length = (length << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    // ---- box walking ----
+
+    public record TopLevelBox(String type, long offset, long size, int headerSize) {
+
+        public long end() {
+            return offset + size;
+        }
+    }
+
+    record Box(String type, int start, int headerSize, int end) {
+
+        ByteBuffer payload(ByteBuffer source) {
+            ByteBuffer payload = source.duplicate();
+            payload.limit(end);
+            payload.position(start + headerSize);
+            return payload.slice();
+        }
+    }
+
+    static Box child(ByteBuffer buffer, Box parent, String type) throws IOException {
+        for (Box box : children(buffer, parent.start() + parent.headerSize(), parent.end())) {
+            if (box.type().equals(type)) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    static List<Box> children(ByteBuffer buffer, int from, int to) throws IOException {
+        List<Box> boxes = new ArrayList<>();
+        int offset = from;
+        while (offset + 8 <= to) {
+            long size = Integer.toUnsignedLong(buffer.getInt(offset));
+            String type = fourcc(buffer.getInt(offset + 4));
+            int headerSize = 8;
+            if (size == 1) {
+                if (offset + 16 > to) {
+                    break;
+                }
+                size = buffer.getLong(offset + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = to - offset;
+            }
+            if (size < headerSize || offset + size > to) {
+                throw new IOException("Invalid box '" + type + "' at " + offset + " (size " + size + ")");
+            }
+            boxes.add(new Box(type, offset, headerSize, (int) (offset + size)));
+            offset += (int) size;
+        }
+        return boxes;
+    }
+
+    private static int headerSize(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset) == 1 ? 16 : 8;
+    }
+
+    static String fourcc(int value) {
+        byte[] bytes = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        buffer.position(Math.min(buffer.limit(), buffer.position() + bytes));
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + pos);
+            }
+            pos += read;
+        }
+    }
+
+    private static final class TrackBuilder {
+        int trackId;
+        String handlerType;
+        String codec;
+        int width;
+        int height;
+        int channels;
+        int sampleRate;
+        long timescale;
+        long duration;
+        Mp4SampleTable samples;
+
+        Mp4Track build() {
+            return new Mp4Track(trackId, handlerType, codec, width, height, channels, sampleRate, timescale, duration,
+                    samples);
+        }
+    }
+}
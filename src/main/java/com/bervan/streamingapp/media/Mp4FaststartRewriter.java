@@ -0,0 +1,298 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.streamingapp.media.Mp4BoxParser.Box;
+import com.bervan.streamingapp.media.Mp4BoxParser.TopLevelBox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Moves the {@code moov} box of an MP4 in front of its media data ("faststart"), so players can start
+ * without first fetching the end of the file.
+ *
+ * Only box headers and the {@code moov} box are read; all other boxes are copied unchanged with
+ * {@code transferTo}. Chunk offsets in {@code stco}/{@code co64} are shifted by the distance the box
+ * they point into moved, and a {@code stco} whose shifted offsets no longer fit 32 bits is rewritten as
+ * {@code co64}. The result is written next to the source, verified and swapped in with an atomic move,
+ * so readers see either the old or the new file.
+ */
+public final class Mp4FaststartRewriter {
+    // containers on the way from moov to the chunk offset boxes; everything else is copied verbatim
+    private static final Set<String> REBUILT_CONTAINERS = Set.of("moov", "trak", "mdia", "minf", "stbl");
+    private static final long COPY_SLICE = 64L * 1024 * 1024;
+    private static final int VERIFIED_BYTES = 64;
+    private static final int MAX_LAYOUT_PASSES = 8;
+
+    private Mp4FaststartRewriter() {
+    }
+
+    /**
+     * @return whether the first {@code moov} box comes after an {@code mdat} box; only top-level headers are read
+     */
+    public static boolean needsRelocation(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return moovAfterMdat(Mp4BoxParser.topLevelBoxes(channel));
+        }
+    }
+
+    /**
+     * Rewrites the file in place with {@code moov} in front of the media data.
+     *
+     * @param progress receives the copied fraction of the file, from 0 to 1
+     * @return {@code false} when the file did not need relocation
+     * @throws IOException when the file can not be rewritten safely, e.g. it is fragmented, changed while
+     *                     being copied or there is not enough free space for the copy
+     */
+    public static boolean relocate(Path file, DoubleConsumer progress) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = null;
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = source.size();
+            List<TopLevelBox> boxes = Mp4BoxParser.topLevelBoxes(source);
+            if (!moovAfterMdat(boxes)) {
+                return false;
+            }
+            TopLevelBox moovBox = null;
+            for (TopLevelBox box : boxes) {
+                if (box.type().equals("moof")) {
+                    throw new IOException("Fragmented MP4 can not be relocated: " + file);
+                }
+                if (box.type().equals("moov")) {
+                    if (moovBox != null) {
+                        throw new IOException("More than one moov box in " + file);
+                    }
+                    moovBox = box;
+                }
+            }
+
+            List<TopLevelBox> layout = new ArrayList<>(boxes);
+            layout.remove(moovBox);
+            int moovIndex = 0;
+            while (!layout.get(moovIndex).type().equals("mdat")) {
+                moovIndex++;
+            }
+            byte[] newMoov = rebuildMoov(Mp4BoxParser.readMoov(source, moovBox), layout, moovIndex, moovBox.size());
+
+            long usable = Files.getFileStore(directory).getUsableSpace();
+            if (usable < fileSize + newMoov.length) {
+                throw new IOException("Not enough free space to relocate " + file + ": " + usable + " bytes available");
+            }
+
+            temp = Files.createTempFile(directory, "." + file.getFileName(), ".faststart");
+            try (FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long copied = 0;
+                for (int i = 0; i < layout.size(); i++) {
+                    if (i == moovIndex) {
+                        ByteBuffer moov = ByteBuffer.wrap(newMoov);
+                        while (moov.hasRemaining()) {
+                            target.write(moov);
+                        }
+                    }
+                    TopLevelBox box = layout.get(i);
+                    for (long done = 0; done < box.size(); done += COPY_SLICE) {
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException("Relocation of " + file + " was interrupted");
+                        }
+                        long length = Math.min(COPY_SLICE, box.size() - done);
+                        Mp4Fragmenter.transfer(source, box.offset() + done, length, target);
+                        copied += length;
+                        progress.accept((double) copied / fileSize);
+                    }
+                }
+                target.force(true);
+            }
+
+            verify(file, temp);
+            if (!Files.getLastModifiedTime(file).equals(modified) || Files.size(file) != fileSize) {
+                throw new IOException(file + " changed while it was being relocated");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static boolean moovAfterMdat(List<TopLevelBox> boxes) {
+        boolean mdatSeen = false;
+        for (TopLevelBox box : boxes) {
+            if (box.type().equals("mdat")) {
+                mdatSeen = true;
+            } else if (box.type().equals("moov")) {
+                return mdatSeen;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rebuilds moov until its size is stable: the shift of the chunk offsets depends on the size of the new
+     * moov, which grows whenever a {@code stco} has to be widened to {@code co64}.
+     */
+    private static byte[] rebuildMoov(ByteBuffer moov, List<TopLevelBox> layout, int moovIndex, long moovSize)
+            throws IOException {
+        Box root = Mp4BoxParser.children(moov, 0, moov.limit()).get(0);
+        Set<Integer> widened = new HashSet<>();
+        long size = moovSize;
+        for (int pass = 0; pass < MAX_LAYOUT_PASSES; pass++) {
+            int widenedBefore = widened.size();
+            byte[] rebuilt = rebuild(moov, root, new OffsetMap(layout, moovIndex, size), widened);
+            if (rebuilt.length == size && widened.size() == widenedBefore) {
+                return rebuilt;
+            }
+            size = rebuilt.length;
+        }
+        throw new IOException("moov layout did not converge after " + MAX_LAYOUT_PASSES + " passes");
+    }
+
+    private static byte[] rebuild(ByteBuffer moov, Box box, OffsetMap offsets, Set<Integer> widened) throws IOException {
+        if (REBUILT_CONTAINERS.contains(box.type())) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(box.end() - box.start());
+            for (Box child : Mp4BoxParser.children(moov, box.start() + box.headerSize(), box.end())) {
+                body.writeBytes(rebuild(moov, child, offsets, widened));
+            }
+            return withHeader(box.type(), body.toByteArray());
+        }
+        if (box.type().equals("stco") || box.type().equals("co64")) {
+            return chunkOffsets(moov, box, offsets, widened);
+        }
+        byte[] bytes = new byte[box.end() - box.start()];
+        moov.get(box.start(), bytes);
+        return bytes;
+    }
+
+    private static byte[] chunkOffsets(ByteBuffer moov, Box box, OffsetMap offsets, Set<Integer> widened)
+            throws IOException {
+        ByteBuffer payload = box.payload(moov);
+        int versionAndFlags = payload.getInt();
+        int count = payload.getInt();
+        boolean source64 = box.type().equals("co64");
+        if (count < 0 || (long) count * (source64 ? 8 : 4) > payload.remaining()) {
+            throw new IOException("Invalid " + box.type() + " entry count " + count);
+        }
+        long[] mapped = new long[count];
+        boolean overflow = false;
+        for (int i = 0; i < count; i++) {
+            mapped[i] = offsets.map(source64 ? payload.getLong() : Integer.toUnsignedLong(payload.getInt()));
+            overflow |= mapped[i] > 0xFFFFFFFFL;
+        }
+        if (overflow && !source64) {
+            widened.add(box.start());
+        }
+        boolean wide = source64 || widened.contains(box.start());
+
+        ByteBuffer body = ByteBuffer.allocate(8 + count * (wide ? 8 : 4));
+        body.putInt(versionAndFlags).putInt(count);
+        for (long offset : mapped) {
+            if (wide) {
+                body.putLong(offset);
+            } else {
+                body.putInt((int) offset);
+            }
+        }
+        return withHeader(wide ? "co64" : "stco", body.array());
+    }
+
+    private static byte[] withHeader(String type, byte[] body) {
+        ByteBuffer box = ByteBuffer.allocate(8 + body.length);
+        box.putInt(8 + body.length);
+        box.put(type.getBytes(StandardCharsets.ISO_8859_1));
+        box.put(body);
+        return box.array();
+    }
+
+    /**
+     * Compares both files as parsed movies and spot-checks that sample data is found at the rewritten offsets.
+     */
+    private static void verify(Path original, Path relocated) throws IOException {
+        Mp4Movie before = Mp4BoxParser.parse(original, true);
+        Mp4Movie after = Mp4BoxParser.parse(relocated, true);
+        if (!after.isFaststart() || after.fileSize() != before.fileSize() - before.moovSize() + after.moovSize()
+                || after.tracks().size() != before.tracks().size()) {
+            throw new IOException("Relocated copy of " + original + " does not match the original layout");
+        }
+        try (FileChannel a = FileChannel.open(original, StandardOpenOption.READ);
+             FileChannel b = FileChannel.open(relocated, StandardOpenOption.READ)) {
+            for (int t = 0; t < before.tracks().size(); t++) {
+                Mp4SampleTable samplesBefore = before.tracks().get(t).samples();
+                Mp4SampleTable samplesAfter = after.tracks().get(t).samples();
+                if (samplesBefore == null || samplesAfter == null) {
+                    continue;
+                }
+                if (samplesBefore.sampleCount() != samplesAfter.sampleCount()) {
+                    throw new IOException("Sample count of track " + (t + 1) + " changed while relocating " + original);
+                }
+                int count = samplesBefore.sampleCount();
+                if (count == 0) {
+                    continue;
+                }
+                long[] offsetsBefore = samplesBefore.sampleOffsets();
+                long[] offsetsAfter = samplesAfter.sampleOffsets();
+                for (int sample : new int[]{0, count / 2, count - 1}) {
+                    int length = Math.min(VERIFIED_BYTES, samplesBefore.sampleSize(sample));
+                    if (!Arrays.equals(read(a, offsetsBefore[sample], length), read(b, offsetsAfter[sample], length))) {
+                        throw new IOException("Sample " + sample + " of track " + (t + 1) + " moved incorrectly in " + original);
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        Mp4BoxParser.readFully(channel, buffer, position);
+        return buffer.array();
+    }
+
+    /**
+     * Maps offsets of the original file to the relocated one. Boxes in front of the first mdat keep their
+     * position; the others move by the size of the new moov, minus the old moov for boxes that followed it.
+     */
+    private static final class OffsetMap {
+        private final long[] starts;
+        private final long[] ends;
+        private final long[] shifts;
+
+        OffsetMap(List<TopLevelBox> layout, int moovIndex, long moovSize) {
+            starts = new long[layout.size()];
+            ends = new long[layout.size()];
+            shifts = new long[layout.size()];
+            long position = 0;
+            for (int i = 0; i < layout.size(); i++) {
+                if (i == moovIndex) {
+                    position += moovSize;
+                }
+                TopLevelBox box = layout.get(i);
+                starts[i] = box.offset();
+                ends[i] = box.end();
+                shifts[i] = position - box.offset();
+                position += box.size();
+            }
+        }
+
+        long map(long offset) throws IOException {
+            int index = Arrays.binarySearch(starts, offset);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            if (index < 0 || offset >= ends[index]) {
+                throw new IOException("Chunk offset " + offset + " does not point into a media box");
+            }
+            return offset + shifts[index];
+        }
+    }
+}
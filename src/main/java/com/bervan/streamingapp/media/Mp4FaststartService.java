@@ -0,0 +1,99 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.catalog.CatalogVideoIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Ingest stage that moves the {@code moov} box of MP4 videos to the front, see {@link Mp4FaststartRewriter}.
+ *
+ * MP4 uploads of the admin API are queued right after they are stored, unless
+ * {@code streaming-platform.media-jobs.auto-faststart=false}. The existing library is never rewritten on
+ * its own: a swap moves the bytes under viewers that are mid-playback, so files already in the library
+ * are only relocated on admin request, per production.
+ */
+@Service
+public class Mp4FaststartService {
+    public static final String JOB_TYPE = "faststart";
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final MediaJobService mediaJobService;
+    private final CatalogService catalogService;
+    private final VideoSourceResolver videoSourceResolver;
+    private final boolean automatic;
+
+    public Mp4FaststartService(MediaJobService mediaJobService, CatalogService catalogService,
+                               VideoSourceResolver videoSourceResolver,
+                               @Value("${streaming-platform.media-jobs.auto-faststart:true}") boolean automatic) {
+        this.mediaJobService = mediaJobService;
+        this.catalogService = catalogService;
+        this.videoSourceResolver = videoSourceResolver;
+        this.automatic = automatic;
+    }
+
+    /**
+     * Queues relocation for an MP4 the admin API has just stored, when it is not faststart. Call after the
+     * production was reloaded: the file is looked up through the catalog, because the file store decides
+     * where on disk (and under which name) the upload ends up.
+     *
+     * @param folder folder of the file store the video was saved in
+     */
+    public void onUploaded(String productionName, String folder) {
+        if (!automatic) {
+            return;
+        }
+        Path folderPath = Path.of(folder).normalize();
+        Optional<Path> file = catalogService.current().getVideoIndex().getProductionVideos(productionName).stream()
+                .filter(entry -> Path.of(entry.videoFolder().getPath() + entry.videoFolder().getFilename())
+                        .normalize().equals(folderPath))
+                .findFirst()
+                .flatMap(videoSourceResolver::resolveMp4File);
+        if (file.isEmpty() || !Files.isRegularFile(file.get())) {
+            log.warn("Uploaded MP4 in {} of {} not found after the reload, faststart relocation skipped",
+                    folder, productionName);
+            return;
+        }
+        try {
+            if (Mp4FaststartRewriter.needsRelocation(file.get())) {
+                submit(file.get());
+            }
+        } catch (IOException | RejectedExecutionException e) {
+            // still available through the admin endpoint
+            log.warn("Could not queue faststart relocation of {}: {}", file.get(), e.getMessage());
+        }
+    }
+
+    /**
+     * Queues relocation for every MP4 of the production that is not faststart yet.
+     *
+     * @return the queued (or already running) jobs
+     * @throws RejectedExecutionException when the job queue is full
+     */
+    public List<MediaJob> submitProduction(String productionName) throws IOException {
+        List<MediaJob> submitted = new ArrayList<>();
+        for (CatalogVideoIndex.VideoEntry entry : catalogService.current().getVideoIndex().getProductionVideos(productionName)) {
+            Optional<Path> file = videoSourceResolver.resolveMp4(entry);
+            if (file.isPresent() && Files.isRegularFile(file.get()) && Mp4FaststartRewriter.needsRelocation(file.get())) {
+                submitted.add(submit(file.get()));
+            }
+        }
+        return submitted;
+    }
+
+    private MediaJob submit(Path file) {
+        return mediaJobService.submit(JOB_TYPE, file.toString(), job -> {
+            boolean relocated = Mp4FaststartRewriter.relocate(file, job::setProgress);
+            job.setMessage(relocated ? "moov moved to the front" : "already faststart");
+        });
+    }
+}
@@ -0,0 +1,422 @@
+package com.bervan.streamingapp.media;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Serves a progressive MP4 file as fragmented MP4 HLS without re-encoding or extra storage.
+ *
+ * The init segment is the file's {@code moov} with empty sample tables plus {@code mvex}; every
+ * media segment is a {@code moof}/{@code mdat} pair generated on request, whose sample data is
+ * copied straight from the original file. Segments start at video keyframes.
+ */
+public class Mp4Fragmenter {
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+
+    private final Path file;
+    private final byte[] initSegment;
+    private final List<TrackSamples> tracks;
+    private final double[] segmentStarts;
+    private final double[] segmentDurations;
+    // per segment and track: first and end (exclusive) sample index
+    private final int[][] segmentFirstSample;
+    private final int[][] segmentEndSample;
+    private final String codecs;
+    private final int width;
+    private final int height;
+    private final long bandwidth;
+
+    private static final class TrackSamples {
+        final int trackId;
+        final long timescale;
+        final long[] offsets;
+        final int[] sizes;
+        final long[] decodeTimes;
+        final int[] durations;
+        final int[] compositionOffsets;
+        final BitSet sync;
+
+        TrackSamples(Mp4Track track) {
+            Mp4SampleTable table = track.samples();
+            this.trackId = track.trackId();
+            this.timescale = track.timescale();
+            this.offsets = table.sampleOffsets();
+            this.sizes = new int[table.sampleCount()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = table.sampleSize(i);
+            }
+            this.decodeTimes = table.sampleDecodeTimes();
+            this.durations = table.sampleDurations();
+            this.compositionOffsets = table.compositionOffsets();
+            this.sync = new BitSet(sizes.length);
+            for (int index : table.syncSampleIndexes()) {
+                if (index >= 0 && index < sizes.length) {
+                    sync.set(index);
+                }
+            }
+        }
+
+        double seconds(int sample) {
+            return sample < decodeTimes.length ? (double) decodeTimes[sample] / timescale : endSeconds();
+        }
+
+        double endSeconds() {
+            int last = decodeTimes.length - 1;
+            return last < 0 ? 0 : (double) (decodeTimes[last] + durations[last]) / timescale;
+        }
+
+        /**
+         * First sample whose decode time is at or after the given time.
+         */
+        int sampleAt(double seconds) {
+            long time = (long) Math.ceil(seconds * timescale);
+            int found = Arrays.binarySearch(decodeTimes, time);
+            if (found >= 0) {
+                while (found > 0 && decodeTimes[found - 1] == time) {
+                    found--;
+                }
+                return found;
+            }
+            return -found - 1;
+        }
+    }
+
+    private Mp4Fragmenter(Path file, byte[] initSegment, List<TrackSamples> tracks, double[] segmentStarts,
+                          double[] segmentDurations, int[][] segmentFirstSample, int[][] segmentEndSample,
+                          String codecs, int width, int height, long bandwidth) {
+        this.file = file;
+        this.initSegment = initSegment;
+        this.tracks = tracks;
+        this.segmentStarts = segmentStarts;
+        this.segmentDurations = segmentDurations;
+        this.segmentFirstSample = segmentFirstSample;
+        this.segmentEndSample = segmentEndSample;
+        this.codecs = codecs;
+        this.width = width;
+        this.height = height;
+        this.bandwidth = bandwidth;
+    }
+
+    public static Mp4Fragmenter open(Path file, double targetSegmentSeconds) throws IOException {
+        Mp4Movie movie = Mp4BoxParser.parse(file, true);
+        List<Mp4Track> included = new ArrayList<>();
+        Mp4Track video = null;
+        for (Mp4Track track : movie.tracks()) {
+            if ((track.isVideo() || track.isAudio()) && track.samples() != null && track.samples().sampleCount() > 0
+                    && track.timescale() > 0) {
+                included.add(track);
+                if (video == null && track.isVideo()) {
+                    video = track;
+                }
+            }
+        }
+        if (included.isEmpty()) {
+            throw new IOException("No playable tracks in " + file);
+        }
+
+        List<TrackSamples> tracks = new ArrayList<>();
+        for (Mp4Track track : included) {
+            tracks.add(new TrackSamples(track));
+        }
+        // segments are cut at keyframes of the video track, or anywhere for audio-only files
+        TrackSamples primary = tracks.get(video != null ? included.indexOf(video) : 0);
+
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        double segmentStart = primary.seconds(0);
+        for (int sample = primary.sync.nextSetBit(1); sample >= 0; sample = primary.sync.nextSetBit(sample + 1)) {
+            if (primary.seconds(sample) - segmentStart >= targetSegmentSeconds) {
+                cuts.add(sample);
+                segmentStart = primary.seconds(sample);
+            }
+        }
+        int segments = cuts.size();
+        double[] starts = new double[segments];
+        double[] durations = new double[segments];
+        int[][] first = new int[segments][tracks.size()];
+        int[][] end = new int[segments][tracks.size()];
+        for (int s = 0; s < segments; s++) {
+            int from = cuts.get(s);
+            int to = s + 1 < segments ? cuts.get(s + 1) : primary.sizes.length;
+            starts[s] = primary.seconds(from);
+            durations[s] = (s + 1 < segments ? primary.seconds(to) : primary.endSeconds()) - starts[s];
+            for (int t = 0; t < tracks.size(); t++) {
+                TrackSamples track = tracks.get(t);
+                if (track == primary) {
+                    first[s][t] = from;
+                    end[s][t] = to;
+                } else {
+                    // other tracks are split at the same times; the first segment takes leading samples
+                    first[s][t] = s == 0 ? 0 : track.sampleAt(starts[s]);
+                    end[s][t] = s + 1 < segments ? track.sampleAt(primary.seconds(to)) : track.sizes.length;
+                }
+            }
+        }
+
+        StringBuilder codecs = new StringBuilder();
+        for (Mp4Track track : included) {
+            if (track.codec() != null && codecs.indexOf(track.codec()) < 0) {
+                codecs.append(codecs.length() > 0 ? "," : "").append(track.codec());
+            }
+        }
+        double duration = movie.durationSeconds();
+        long bandwidth = duration > 0 ? Math.round(movie.fileSize() * 8 / duration) : 0;
+        // peak segment bitrate, BANDWIDTH is defined as the peak
+        for (int s = 0; s < segments; s++) {
+            if (durations[s] > 0) {
+                long bytes = 0;
+                for (int t = 0; t < tracks.size(); t++) {
+                    for (int i = first[s][t]; i < end[s][t]; i++) {
+                        bytes += tracks.get(t).sizes[i];
+                    }
+                }
+                bandwidth = Math.max(bandwidth, Math.round(bytes * 8 / durations[s]));
+            }
+        }
+
+        return new Mp4Fragmenter(file, buildInitSegment(file, movie, included), List.copyOf(tracks), starts, durations,
+                first, end, codecs.toString(), video != null ? video.width() : 0, video != null ? video.height() : 0,
+                bandwidth);
+    }
+
+    public int segmentCount() {
+        return segmentStarts.length;
+    }
+
+    public byte[] initSegment() {
+        return initSegment.clone();
+    }
+
+    public String masterPlaylist(String mediaPlaylistUri) {
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:7\n#EXT-X-INDEPENDENT-SEGMENTS\n");
+        playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth);
+        if (!codecs.isEmpty()) {
+            playlist.append(",CODECS=\"").append(codecs).append('"');
+        }
+        if (width > 0 && height > 0) {
+            playlist.append(",RESOLUTION=").append(width).append('x').append(height);
+        }
+        return playlist.append('\n').append(mediaPlaylistUri).append('\n').toString();
+    }
+
+    /**
+     * @param segmentUriPrefix segment {@code n} is referenced as {@code prefix + n + ".m4s"}
+     */
+    public String mediaPlaylist(String initUri, String segmentUriPrefix) {
+        double maxDuration = 0;
+        for (double duration : segmentDurations) {
+            maxDuration = Math.max(maxDuration, duration);
+        }
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:7\n");
+        playlist.append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(maxDuration)).append('\n');
+        playlist.append("#EXT-X-MEDIA-SEQUENCE:0\n#EXT-X-PLAYLIST-TYPE:VOD\n#EXT-X-INDEPENDENT-SEGMENTS\n");
+        playlist.append("#EXT-X-MAP:URI=\"").append(initUri).append("\"\n");
+        for (int s = 0; s < segmentDurations.length; s++) {
+            playlist.append(String.format(Locale.ROOT, "#EXTINF:%.6f,%n", segmentDurations[s]));
+            playlist.append(segmentUriPrefix).append(s).append(".m4s\n");
+        }
+        return playlist.append("#EXT-X-ENDLIST\n").toString();
+    }
+
+    public long segmentSize(int segment) {
+        long size = moofSize(segment) + 8;
+        for (int t = 0; t < tracks.size(); t++) {
+            size += sampleBytes(segment, t);
+        }
+        return size;
+    }
+
+    public void writeSegment(int segment, OutputStream out) throws IOException {
+        int moofSize = moofSize(segment);
+        ByteBuffer moof = ByteBuffer.allocate(moofSize + 8);
+        long mdatPayload = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            mdatPayload += sampleBytes(segment, t);
+        }
+
+        moof.putInt(moofSize).put(ascii("moof"));
+        moof.putInt(16).put(ascii("mfhd")).putInt(0).putInt(segment + 1);
+        long dataOffset = moofSize + 8;
+        for (int t = 0; t < tracks.size(); t++) {
+            TrackSamples track = tracks.get(t);
+            int from = segmentFirstSample[segment][t];
+            int to = segmentEndSample[segment][t];
+            int count = Math.max(0, to - from);
+            boolean withCts = track.compositionOffsets != null;
+            int trunSize = trunSize(count, withCts);
+
+            moof.putInt(8 + 16 + 20 + trunSize).put(ascii("traf"));
+            // tfhd: default-base-is-moof
+            moof.putInt(16).put(ascii("tfhd")).putInt(0x020000).putInt(track.trackId);
+            moof.putInt(20).put(ascii("tfdt")).putInt(0x01000000)
+                    .putLong(count > 0 ? track.decodeTimes[from] : (long) (segmentStarts[segment] * track.timescale));
+            int flags = 0x001 | 0x100 | 0x200 | 0x400 | (withCts ? 0x800 : 0);
+            moof.putInt(trunSize).put(ascii("trun")).putInt((withCts ? 0x01000000 : 0) | flags)
+                    .putInt(count).putInt((int) dataOffset);
+            for (int i = from; i < to; i++) {
+                moof.putInt(track.durations[i]).putInt(track.sizes[i])
+                        .putInt(track.sync.get(i) ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+                if (withCts) {
+                    moof.putInt(track.compositionOffsets[i]);
+                }
+            }
+            dataOffset += sampleBytes(segment, t);
+        }
+        moof.putInt((int) (mdatPayload + 8)).put(ascii("mdat"));
+        out.write(moof.array());
+
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int t = 0; t < tracks.size(); t++) {
+                TrackSamples track = tracks.get(t);
+                int to = segmentEndSample[segment][t];
+                int i = segmentFirstSample[segment][t];
+                while (i < to) {
+                    // copy runs of samples that are contiguous in the file in one go
+                    long start = track.offsets[i];
+                    long length = track.sizes[i];
+                    i++;
+                    while (i < to && track.offsets[i] == start + length) {
+                        length += track.sizes[i];
+                        i++;
+                    }
+                    transfer(channel, start, length, target);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private int moofSize(int segment) {
+        int size = 8 + 16;
+        for (int t = 0; t < tracks.size(); t++) {
+            int count = Math.max(0, segmentEndSample[segment][t] - segmentFirstSample[segment][t]);
+            size += 8 + 16 + 20 + trunSize(count, tracks.get(t).compositionOffsets != null);
+        }
+        return size;
+    }
+
+    private static int trunSize(int sampleCount, boolean withCts) {
+        return 8 + 4 + 4 + 4 + sampleCount * (withCts ? 16 : 12);
+    }
+
+    private long sampleBytes(int segment, int track) {
+        long bytes = 0;
+        int[] sizes = tracks.get(track).sizes;
+        for (int i = segmentFirstSample[segment][track]; i < segmentEndSample[segment][track]; i++) {
+            bytes += sizes[i];
+        }
+        return bytes;
+    }
+
+    static void transfer(FileChannel channel, long position, long length, WritableByteChannel target)
+            throws IOException {
+        long done = 0;
+        while (done < length) {
+            long written = channel.transferTo(position + done, length - done, target);
+            if (written <= 0) {
+                throw new IOException("Unexpected end of file at " + (position + done));
+            }
+            done += written;
+        }
+    }
+
+    // ---- init segment ----
+
+    private static byte[] buildInitSegment(Path file, Mp4Movie movie, List<Mp4Track> included) throws IOException {
+        ByteBuffer moov = ByteBuffer.allocate((int) movie.moovSize());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Mp4BoxParser.readFully(channel, moov, movie.moovOffset());
+        }
+        moov.flip();
+
+        List<Integer> includedIds = included.stream().map(Mp4Track::trackId).toList();
+        ByteArrayOutputStream moovContent = new ByteArrayOutputStream();
+        int moovHeader = moov.getInt(0) == 1 ? 16 : 8;
+        for (Mp4BoxParser.Box box : Mp4BoxParser.children(moov, moovHeader, moov.limit())) {
+            if (box.type().equals("mvhd")) {
+                copy(moov, box, moovContent);
+            } else if (box.type().equals("trak")) {
+                Mp4BoxParser.Box tkhd = Mp4BoxParser.child(moov, box, "tkhd");
+                if (tkhd != null && includedIds.contains(trackIdOf(moov, tkhd))) {
+                    writeBox(moovContent, "trak", rewriteContainer(moov, box));
+                }
+            }
+        }
+        ByteArrayOutputStream mvex = new ByteArrayOutputStream();
+        for (int trackId : includedIds) {
+            ByteBuffer trex = ByteBuffer.allocate(24);
+            trex.putInt(0).putInt(trackId).putInt(1).putInt(0).putInt(0).putInt(0);
+            writeBox(mvex, "trex", trex.array());
+        }
+        writeBox(moovContent, "mvex", mvex.toByteArray());
+
+        ByteArrayOutputStream init = new ByteArrayOutputStream();
+        ByteBuffer ftyp = ByteBuffer.allocate(20);
+        ftyp.put(ascii("iso6")).putInt(0).put(ascii("iso6")).put(ascii("isom")).put(ascii("mp41"));
+        writeBox(init, "ftyp", ftyp.array());
+        writeBox(init, "moov", moovContent.toByteArray());
+        return init.toByteArray();
+    }
+
+    /**
+     * Copies a trak/mdia/minf/stbl subtree, replacing the sample tables with empty ones.
+     */
+    private static byte[] rewriteContainer(ByteBuffer moov, Mp4BoxParser.Box container) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Mp4BoxParser.Box box : Mp4BoxParser.children(moov, container.start() + container.headerSize(), container.end())) {
+            switch (box.type()) {
+                case "mdia", "minf" -> writeBox(out, box.type(), rewriteContainer(moov, box));
+                case "stbl" -> {
+                    ByteArrayOutputStream stbl = new ByteArrayOutputStream();
+                    Mp4BoxParser.Box stsd = Mp4BoxParser.child(moov, box, "stsd");
+                    if (stsd != null) {
+                        copy(moov, stsd, stbl);
+                    }
+                    writeBox(stbl, "stts", new byte[8]);
+                    writeBox(stbl, "stsc", new byte[8]);
+                    writeBox(stbl, "stsz", new byte[12]);
+                    writeBox(stbl, "stco", new byte[8]);
+                    writeBox(out, "stbl", stbl.toByteArray());
+                }
+                default -> copy(moov, box, out);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int trackIdOf(ByteBuffer moov, Mp4BoxParser.Box tkhd) {
+        ByteBuffer payload = tkhd.payload(moov);
+        int version = payload.get(0) & 0xFF;
+        return payload.getInt(4 + (version == 1 ? 16 : 8));
+    }
+
+    private static void copy(ByteBuffer source, Mp4BoxParser.Box box, ByteArrayOutputStream out) {
+        out.write(source.array(), source.arrayOffset() + box.start(), box.end() - box.start());
+    }
+
+    private static void writeBox(ByteArrayOutputStream out, String type, byte[] payload) {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(8 + payload.length).put(ascii(type));
+        out.write(header.array(), 0, 8);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static byte[] ascii(String type) {
+        return type.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,80 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.logging.JsonLogger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * HLS view of MP4 videos: keeps {@link Mp4Fragmenter}s and their playlists per file, rebuilt when
+ * the mtime or size of the file changes.
+ */
+@Service
+public class Mp4HlsService {
+    public static final String MEDIA_PLAYLIST = "index.m3u8";
+    public static final String INIT_SEGMENT = "init.mp4";
+    public static final String SEGMENT_PREFIX = "seg/";
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+
+    public record Mp4Hls(Mp4Fragmenter fragmenter, String masterPlaylist, String mediaPlaylist) {}
+
+    private record CachedHls(long modified, long size, Mp4Hls hls) {}
+
+    private final VideoSourceResolver videoSourceResolver;
+    private final Map<Path, CachedHls> cache;
+
+    @Value("${streaming-platform.mp4-hls.segment-seconds:6}")
+    private double segmentSeconds;
+
+    public Mp4HlsService(VideoSourceResolver videoSourceResolver,
+                         @Value("${streaming-platform.mp4-hls.cache-size:32}") int cacheSize) {
+        this.videoSourceResolver = videoSourceResolver;
+        this.cache = new LinkedHashMap<>(Math.min(cacheSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedHls> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return empty when the video is unknown or not an MP4 video
+     */
+    public Optional<Mp4Hls> get(String videoFolderId) throws IOException {
+        Optional<Path> file = videoSourceResolver.resolveMp4(videoFolderId);
+        if (file.isEmpty() || !Files.isRegularFile(file.get())) {
+            return Optional.empty();
+        }
+        return Optional.of(get(file.get()));
+    }
+
+    private Mp4Hls get(Path file) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+        CachedHls cached;
+        synchronized (cache) {
+            cached = cache.get(file);
+        }
+        if (cached != null && cached.modified() == modified && cached.size() == size) {
+            return cached.hls();
+        }
+
+        long start = System.currentTimeMillis();
+        Mp4Fragmenter fragmenter = Mp4Fragmenter.open(file, segmentSeconds);
+        Mp4Hls hls = new Mp4Hls(fragmenter, fragmenter.masterPlaylist(MEDIA_PLAYLIST),
+                fragmenter.mediaPlaylist(INIT_SEGMENT, SEGMENT_PREFIX));
+        log.debug("HLS view of {} built in {} ms ({} segments)", file, System.currentTimeMillis() - start,
+                fragmenter.segmentCount());
+        synchronized (cache) {
+            cache.put(file, new CachedHls(modified, size, hls));
+        }
+        return hls;
+    }
+}
@@ -0,0 +1,45 @@
+package com.bervan.streamingapp.media;
+
+import java.util.List;
+
+/**
+ * Movie-level data of an MP4 file as read by {@link Mp4BoxParser}.
+ *
+ * @param moovOffset file offset of the {@code moov} box
+ * @param mdatOffset file offset of the first {@code mdat} box, -1 when there is none
+ * @param timescale  {@code mvhd} timescale
+ * @param duration   {@code mvhd} duration in {@code timescale} units
+ */
+public record Mp4Movie(
+        long fileSize,
+        long moovOffset,
+        long moovSize,
+        long mdatOffset,
+        long timescale,
+        long duration,
+        List<Mp4Track> tracks
+) {
+
+    public double durationSeconds() {
+        if (timescale > 0 && duration > 0) {
+            return (double) duration / timescale;
+        }
+        // some muxers leave mvhd empty, fall back to the longest track
+        return tracks.stream().mapToDouble(Mp4Track::durationSeconds).max().orElse(0);
+    }
+
+    /**
+     * The moov box precedes the media data, so players can start without a request for the file end.
+     */
+    public boolean isFaststart() {
+        return mdatOffset < 0 || moovOffset < mdatOffset;
+    }
+
+    public Mp4Track firstVideoTrack() {
+        return tracks.stream().filter(Mp4Track::isVideo).findFirst().orElse(null);
+    }
+
+    public Mp4Track firstAudioTrack() {
+        return tracks.stream().filter(Mp4Track::isAudio).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,140 @@
+package com.bervan.streamingapp.media;
+
+/**
+ * Sample table ({@code stbl}) of one track: where each sample is stored, how long it is, its
+ * composition offset and which samples are sync samples (keyframes).
+ */
+public class Mp4SampleTable {
+    private final int sampleCount;
+    private final long[] chunkOffsets;
+    // stsc runs: chunks from firstChunk[i] (1-based) on hold samplesPerChunk[i] samples each
+    private final int[] stscFirstChunk;
+    private final int[] stscSamplesPerChunk;
+    private final int constantSampleSize;
+    private final int[] sampleSizes;
+    private final int[] sttsCounts;
+    private final int[] sttsDeltas;
+    // 1-based sample numbers, null when every sample is a sync sample
+    private final int[] syncSamples;
+    // null when the track has no ctts box
+    private final int[] cttsCounts;
+    private final int[] cttsOffsets;
+
+    Mp4SampleTable(int sampleCount, long[] chunkOffsets, int[] stscFirstChunk, int[] stscSamplesPerChunk,
+                   int constantSampleSize, int[] sampleSizes, int[] sttsCounts, int[] sttsDeltas, int[] syncSamples,
+                   int[] cttsCounts, int[] cttsOffsets) {
+        this.sampleCount = sampleCount;
+        this.chunkOffsets = chunkOffsets;
+        this.stscFirstChunk = stscFirstChunk;
+        this.stscSamplesPerChunk = stscSamplesPerChunk;
+        this.constantSampleSize = constantSampleSize;
+        this.sampleSizes = sampleSizes;
+        this.sttsCounts = sttsCounts;
+        this.sttsDeltas = sttsDeltas;
+        this.syncSamples = syncSamples;
+        this.cttsCounts = cttsCounts;
+        this.cttsOffsets = cttsOffsets;
+    }
+
+    public int sampleCount() {
+        return sampleCount;
+    }
+
+    public int sampleSize(int sampleIndex) {
+        return constantSampleSize != 0 ? constantSampleSize : sampleSizes[sampleIndex];
+    }
+
+    public long[] chunkOffsets() {
+        return chunkOffsets;
+    }
+
+    /**
+     * File offset of every sample, resolved through {@code stsc} and {@code stco}/{@code co64}.
+     */
+    public long[] sampleOffsets() {
+        long[] offsets = new long[sampleCount];
+        int sample = 0;
+        for (int run = 0; run < stscFirstChunk.length && sample < sampleCount; run++) {
+            int firstChunk = stscFirstChunk[run] - 1;
+            int lastChunk = run + 1 < stscFirstChunk.length ? stscFirstChunk[run + 1] - 1 : chunkOffsets.length;
+            for (int chunk = firstChunk; chunk < lastChunk && chunk < chunkOffsets.length && sample < sampleCount; chunk++) {
+                long offset = chunkOffsets[chunk];
+                for (int i = 0; i < stscSamplesPerChunk[run] && sample < sampleCount; i++) {
+                    offsets[sample] = offset;
+                    offset += sampleSize(sample);
+                    sample++;
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Decode time of every sample in track timescale units, from {@code stts}.
+     */
+    public long[] sampleDecodeTimes() {
+        long[] times = new long[sampleCount];
+        long time = 0;
+        int sample = 0;
+        for (int run = 0; run < sttsCounts.length; run++) {
+            for (int i = 0; i < sttsCounts[run] && sample < sampleCount; i++) {
+                times[sample++] = time;
+                time += sttsDeltas[run];
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Duration of every sample in track timescale units, from {@code stts}.
+     */
+    public int[] sampleDurations() {
+        int[] durations = new int[sampleCount];
+        int sample = 0;
+        for (int run = 0; run < sttsCounts.length; run++) {
+            for (int i = 0; i < sttsCounts[run] && sample < sampleCount; i++) {
+                durations[sample++] = sttsDeltas[run];
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Composition time offset of every sample (signed, version 1 semantics), or {@code null} without {@code ctts}.
+     */
+    public int[] compositionOffsets() {
+        if (cttsCounts == null) {
+            return null;
+        }
+        int[] offsets = new int[sampleCount];
+        int sample = 0;
+        for (int run = 0; run < cttsCounts.length; run++) {
+            for (int i = 0; i < cttsCounts[run] && sample < sampleCount; i++) {
+                offsets[sample++] = cttsOffsets[run];
+            }
+        }
+        return offsets;
+    }
+
+    public boolean hasSyncTable() {
+        return syncSamples != null;
+    }
+
+    /**
+     * 0-based indexes of the sync samples.
+     */
+    public int[] syncSampleIndexes() {
+        if (syncSamples == null) {
+            int[] all = new int[sampleCount];
+            for (int i = 0; i < sampleCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] indexes = new int[syncSamples.length];
+        for (int i = 0; i < syncSamples.length; i++) {
+            indexes[i] = syncSamples[i] - 1;
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,114 @@
+package com.bervan.streamingapp.media;
+
+import java.util.Arrays;
+
+/**
+ * Keyframe time to byte offset table of the first video track of an MP4 file.
+ *
+ * Times are decode times in seconds; for the keyframes of common H.264/H.265 encodes they match
+ * the presentation times up to the constant composition delay.
+ */
+public class Mp4SeekIndex {
+    private final double[] keyframeTimes;
+    private final long[] keyframeOffsets;
+    private final double durationSeconds;
+    private final long fileSize;
+    private final long moovOffset;
+    private final long moovSize;
+    private final boolean faststart;
+
+    Mp4SeekIndex(double[] keyframeTimes, long[] keyframeOffsets, double durationSeconds, long fileSize,
+                 long moovOffset, long moovSize, boolean faststart) {
+        this.keyframeTimes = keyframeTimes;
+        this.keyframeOffsets = keyframeOffsets;
+        this.durationSeconds = durationSeconds;
+        this.fileSize = fileSize;
+        this.moovOffset = moovOffset;
+        this.moovSize = moovSize;
+        this.faststart = faststart;
+    }
+
+    public static Mp4SeekIndex of(Mp4Movie movie) {
+        Mp4Track video = movie.firstVideoTrack();
+        if (video == null || video.samples() == null || video.timescale() <= 0) {
+            return new Mp4SeekIndex(new double[0], new long[0], movie.durationSeconds(), movie.fileSize(),
+                    movie.moovOffset(), movie.moovSize(), movie.isFaststart());
+        }
+        Mp4SampleTable samples = video.samples();
+        long[] offsets = samples.sampleOffsets();
+        long[] times = samples.sampleDecodeTimes();
+        int[] sync = samples.syncSampleIndexes();
+
+        double[] keyframeTimes = new double[sync.length];
+        long[] keyframeOffsets = new long[sync.length];
+        int count = 0;
+        for (int sample : sync) {
+            if (sample >= 0 && sample < offsets.length) {
+                keyframeTimes[count] = (double) times[sample] / video.timescale();
+                keyframeOffsets[count] = offsets[sample];
+                count++;
+            }
+        }
+        return new Mp4SeekIndex(Arrays.copyOf(keyframeTimes, count), Arrays.copyOf(keyframeOffsets, count),
+                movie.durationSeconds(), movie.fileSize(), movie.moovOffset(), movie.moovSize(), movie.isFaststart());
+    }
+
+    /**
+     * Index of the last keyframe at or before the given time, 0 for times before the first keyframe,
+     * -1 when the file has no keyframes.
+     */
+    public int keyframeAtOrBefore(double seconds) {
+        if (keyframeTimes.length == 0) {
+            return -1;
+        }
+        int found = Arrays.binarySearch(keyframeTimes, seconds);
+        if (found >= 0) {
+            // equal times are possible with broken stts, take the first one
+            while (found > 0 && keyframeTimes[found - 1] == seconds) {
+                found--;
+            }
+            return found;
+        }
+        return Math.max(0, -found - 2);
+    }
+
+    public int keyframeCount() {
+        return keyframeTimes.length;
+    }
+
+    public double keyframeTime(int index) {
+        return keyframeTimes[index];
+    }
+
+    public long keyframeOffset(int index) {
+        return keyframeOffsets[index];
+    }
+
+    public double[] keyframeTimes() {
+        return keyframeTimes.clone();
+    }
+
+    public long[] keyframeOffsets() {
+        return keyframeOffsets.clone();
+    }
+
+    public double durationSeconds() {
+        return durationSeconds;
+    }
+
+    public long fileSize() {
+        return fileSize;
+    }
+
+    public long moovOffset() {
+        return moovOffset;
+    }
+
+    public long moovSize() {
+        return moovSize;
+    }
+
+    public boolean isFaststart() {
+        return faststart;
+    }
+}
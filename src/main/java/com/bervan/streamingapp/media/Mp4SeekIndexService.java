@@ -0,0 +1,69 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.logging.JsonLogger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Builds {@link Mp4SeekIndex}es on first use and keeps the most recently used ones in memory.
+ * An entry is rebuilt when the mtime or size of its file changes.
+ */
+@Service
+public class Mp4SeekIndexService {
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+
+    private record CachedIndex(long modified, long size, Mp4SeekIndex index) {}
+
+    private final VideoSourceResolver videoSourceResolver;
+    private final Map<Path, CachedIndex> cache;
+
+    public Mp4SeekIndexService(VideoSourceResolver videoSourceResolver,
+                               @Value("${streaming-platform.seek-index.cache-size:256}") int cacheSize) {
+        this.videoSourceResolver = videoSourceResolver;
+        this.cache = new LinkedHashMap<>(Math.min(cacheSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedIndex> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return empty when the video is unknown or not an MP4 video
+     */
+    public Optional<Mp4SeekIndex> getIndex(String videoFolderId) throws IOException {
+        Optional<Path> file = videoSourceResolver.resolveMp4(videoFolderId);
+        if (file.isEmpty() || !Files.isRegularFile(file.get())) {
+            return Optional.empty();
+        }
+        return Optional.of(getIndex(file.get()));
+    }
+
+    public Mp4SeekIndex getIndex(Path file) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+        CachedIndex cached;
+        synchronized (cache) {
+            cached = cache.get(file);
+        }
+        if (cached != null && cached.modified() == modified && cached.size() == size) {
+            return cached.index();
+        }
+
+        long start = System.currentTimeMillis();
+        Mp4SeekIndex index = Mp4SeekIndex.of(Mp4BoxParser.parse(file, true));
+        log.debug("Seek index of {} built in {} ms ({} keyframes)", file, System.currentTimeMillis() - start,
+                index.keyframeCount());
+        synchronized (cache) {
+            cache.put(file, new CachedIndex(modified, size, index));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,37 @@
+package com.bervan.streamingapp.media;
+
+/**
+ * One {@code trak} of an MP4 file as read by {@link Mp4BoxParser}.
+ *
+ * @param handlerType {@code vide}, {@code soun}, {@code text}, ...
+ * @param codec       RFC 6381 codec string when it can be derived ({@code avc1.64001f}, {@code mp4a.40.2}),
+ *                    otherwise the sample entry fourcc
+ * @param timescale   units per second of the track's media time
+ * @param duration    in {@code timescale} units
+ * @param samples     sample table, only read when requested from {@link Mp4BoxParser#parse(java.nio.file.Path, boolean)}
+ */
+public record Mp4Track(
+        int trackId,
+        String handlerType,
+        String codec,
+        int width,
+        int height,
+        int channels,
+        int sampleRate,
+        long timescale,
+        long duration,
+        Mp4SampleTable samples
+) {
+
+    public boolean isVideo() {
+        return "vide".equals(handlerType);
+    }
+
+    public boolean isAudio() {
+        return "soun".equals(handlerType);
+    }
+
+    public double durationSeconds() {
+        return timescale > 0 ? (double) duration / timescale : 0;
+    }
+}
@@ -0,0 +1,29 @@
+package com.bervan.streamingapp.media;
+
+/**
+ * Probed properties of one video, persisted per production by {@link VideoProbeService}.
+ *
+ * @param container      {@code mp4} or {@code hls}
+ * @param sizeBytes      bytes a full download transfers (all segments of the chosen variant for HLS)
+ * @param bitrate        bits per second, from the playlist when given, otherwise size over duration
+ * @param sourceModified mtime (epoch ms) of the probed file, used to detect stale entries
+ * @param sourceSize     size of the probed file (the media playlist for HLS)
+ */
+public record StreamInfo(
+        String container,
+        double durationSeconds,
+        String videoCodec,
+        String audioCodec,
+        Integer width,
+        Integer height,
+        Long bitrate,
+        long sizeBytes,
+        boolean faststart,
+        long sourceModified,
+        long sourceSize
+) {
+
+    boolean isCurrentFor(long modified, long size) {
+        return sourceModified == modified && sourceSize == size;
+    }
+}
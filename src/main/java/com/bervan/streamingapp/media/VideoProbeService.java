@@ -0,0 +1,224 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.VideoManager;
+import com.bervan.streamingapp.catalog.CatalogRefreshedEvent;
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.catalog.CatalogSnapshot;
+import com.bervan.streamingapp.catalog.CatalogVideoIndex;
+import com.bervan.streamingapp.config.ProductionData;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Duration, codecs and bitrate of every video, probed once per file in the background.
+ *
+ * Results are kept in memory and persisted per production in {@value #PROBE_FILE} in the production
+ * folder, next to {@code details.json}. An entry is reused while the mtime and size of its file are
+ * unchanged, so a restart or catalog reload only probes new or replaced videos. Requests never probe;
+ * a video that was not probed yet simply has no {@link StreamInfo}.
+ */
+@Service
+public class VideoProbeService {
+    static final String PROBE_FILE = "stream-info.json";
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final CatalogService catalogService;
+    private final Map<String, ProductionData> streamingProductionData;
+    private final VideoSourceResolver videoSourceResolver;
+    private final VideoManager videoManager;
+    private final ObjectMapper objectMapper;
+    private final Map<String, StreamInfo> byVideoFolderId = new ConcurrentHashMap<>();
+    private final AtomicBoolean probeScheduled = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "video-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public VideoProbeService(CatalogService catalogService, Map<String, ProductionData> streamingProductionData,
+                             VideoSourceResolver videoSourceResolver, VideoManager videoManager, ObjectMapper objectMapper) {
+        this.catalogService = catalogService;
+        this.streamingProductionData = streamingProductionData;
+        this.videoSourceResolver = videoSourceResolver;
+        this.videoManager = videoManager;
+        this.objectMapper = objectMapper;
+    }
+
+    public Optional<StreamInfo> get(String videoFolderId) {
+        return Optional.ofNullable(byVideoFolderId.get(videoFolderId));
+    }
+
+    /**
+     * @return duration in seconds or {@code null} when the video was not probed (yet)
+     */
+    public Double getDurationSeconds(String videoFolderId) {
+        StreamInfo info = byVideoFolderId.get(videoFolderId);
+        return info != null && info.durationSeconds() > 0 ? info.durationSeconds() : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduleProbe();
+    }
+
+    @EventListener
+    public void onCatalogRefreshed(CatalogRefreshedEvent event) {
+        scheduleProbe();
+    }
+
+    @EventListener
+    public void onMediaJobFinished(MediaJobFinishedEvent event) {
+        // the job rewrote or added video files
+        if (event.job().getState() == MediaJob.State.SUCCEEDED) {
+            scheduleProbe();
+        }
+    }
+
+    /**
+     * Probes all videos of the current catalog in the background; calls while a run is queued are merged.
+     */
+    public void scheduleProbe() {
+        if (!probeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            probeScheduled.set(false);
+            try {
+                probeAll(catalogService.current());
+            } catch (RuntimeException e) {
+                log.error("Video probe run failed", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void probeAll(CatalogSnapshot snapshot) {
+        long start = System.currentTimeMillis();
+        Set<String> known = new HashSet<>();
+        int probed = 0;
+        for (String productionName : streamingProductionData.keySet()) {
+            ProductionData pd = streamingProductionData.get(productionName);
+            List<CatalogVideoIndex.VideoEntry> videos = snapshot.getVideoIndex().getProductionVideos(productionName);
+            if (pd == null || pd.getMainFolder() == null || videos.isEmpty()) {
+                continue;
+            }
+            Path store = Path.of(videoManager.getSrc(pd.getMainFolder())).resolve(PROBE_FILE);
+            Map<String, StreamInfo> stored = readStore(store);
+            Map<String, StreamInfo> current = new TreeMap<>();
+            for (CatalogVideoIndex.VideoEntry entry : videos) {
+                known.add(entry.videoFolderId());
+                try {
+                    StreamInfo previous = stored.get(entry.videoFolderId());
+                    StreamInfo info = probeIfChanged(entry, previous);
+                    if (info != null) {
+                        current.put(entry.videoFolderId(), info);
+                        byVideoFolderId.put(entry.videoFolderId(), info);
+                        if (info != previous) {
+                            probed++;
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Could not probe video {} of {}: {}", entry.videoFolderId(), productionName, e.getMessage());
+                }
+            }
+            if (!current.equals(stored)) {
+                writeStore(store, current);
+            }
+        }
+        byVideoFolderId.keySet().retainAll(known);
+        log.info("Video probe finished in {} ms ({} videos, {} probed)", System.currentTimeMillis() - start,
+                known.size(), probed);
+    }
+
+    private StreamInfo probeIfChanged(CatalogVideoIndex.VideoEntry entry, StreamInfo previous) throws IOException {
+        Optional<Path> mp4 = videoSourceResolver.resolveMp4(entry);
+        if (mp4.isPresent()) {
+            Path file = mp4.get();
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            return previous != null && previous.isCurrentFor(Files.getLastModifiedTime(file).toMillis(), Files.size(file))
+                    ? previous : probeMp4(file);
+        }
+
+        Optional<Path> hlsDir = videoSourceResolver.resolveHlsDirectory(entry);
+        if (hlsDir.isEmpty() || !Files.isDirectory(hlsDir.get())) {
+            return null;
+        }
+        Path playlist = HlsPlaylistProbe.findMediaPlaylist(hlsDir.get());
+        if (playlist == null) {
+            return null;
+        }
+        if (previous != null && previous.isCurrentFor(Files.getLastModifiedTime(playlist).toMillis(), Files.size(playlist))) {
+            return previous;
+        }
+        return HlsPlaylistProbe.probe(hlsDir.get());
+    }
+
+    static StreamInfo probeMp4(Path file) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        Mp4Movie movie = Mp4BoxParser.parse(file);
+        Mp4Track video = movie.firstVideoTrack();
+        Mp4Track audio = movie.firstAudioTrack();
+        double duration = movie.durationSeconds();
+        return new StreamInfo(
+                "mp4",
+                duration,
+                video != null ? video.codec() : null,
+                audio != null ? audio.codec() : null,
+                video != null ? video.width() : null,
+                video != null ? video.height() : null,
+                duration > 0 ? Math.round(movie.fileSize() * 8 / duration) : null,
+                movie.fileSize(),
+                movie.isFaststart(),
+                modified,
+                movie.fileSize()
+        );
+    }
+
+    private Map<String, StreamInfo> readStore(Path store) {
+        if (!Files.isRegularFile(store)) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(store.toFile(), new TypeReference<TreeMap<String, StreamInfo>>() {
+            });
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable probe file {}: {}", store, e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void writeStore(Path store, Map<String, StreamInfo> entries) {
+        try {
+            Path temp = Files.createTempFile(store.getParent(), PROBE_FILE, ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), entries);
+                Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.warn("Could not write probe file {}: {}", store, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.bervan.streamingapp.media;
+
+import com.bervan.filestorage.model.Metadata;
+import com.bervan.streamingapp.VideoManager;
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.catalog.CatalogVideoIndex;
+import com.bervan.streamingapp.config.ProductionData;
+import com.bervan.streamingapp.config.structure.ProductionFileType;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Maps video folder ids to files on disk using the loaded production structures, without queries.
+ */
+@Component
+public class VideoSourceResolver {
+    private final Map<String, ProductionData> streamingProductionData;
+    private final CatalogService catalogService;
+    private final VideoManager videoManager;
+
+    public VideoSourceResolver(Map<String, ProductionData> streamingProductionData, CatalogService catalogService,
+                               VideoManager videoManager) {
+        this.streamingProductionData = streamingProductionData;
+        this.catalogService = catalogService;
+        this.videoManager = videoManager;
+    }
+
+    public Optional<CatalogVideoIndex.VideoEntry> entry(String videoFolderId) {
+        return Optional.ofNullable(catalogService.current().getVideoIndex().get(videoFolderId));
+    }
+
+    /**
+     * MP4 file of an MP4 video folder.
+     */
+    public Optional<Path> resolveMp4(String videoFolderId) {
+        return entry(videoFolderId).flatMap(this::resolveMp4);
+    }
+
+    public Optional<Path> resolveMp4(CatalogVideoIndex.VideoEntry entry) {
+        if (!"MP4".equals(entry.videoFormat())) {
+            return Optional.empty();
+        }
+        return resolveMp4File(entry);
+    }
+
+    /**
+     * MP4 file stored in the video folder regardless of the production format, e.g. an MP4 episode uploaded
+     * into a production that is served as HLS.
+     */
+    public Optional<Path> resolveMp4File(CatalogVideoIndex.VideoEntry entry) {
+        ProductionData pd = streamingProductionData.get(entry.productionName());
+        if (pd == null || pd.getProductionFoldersByPathAndType() == null) {
+            return Optional.empty();
+        }
+        Metadata folder = entry.videoFolder();
+        Map<ProductionFileType, List<Metadata>> content = pd.getProductionFoldersByPathAndType()
+                .get(folder.getPath() + folder.getFilename() + File.separator);
+        if (content == null || content.get(ProductionFileType.VIDEO) == null || content.get(ProductionFileType.VIDEO).isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(Path.of(videoManager.getSrc(content.get(ProductionFileType.VIDEO).get(0))));
+    }
+
+    /**
+     * Directory holding the playlists of an HLS video folder.
+     */
+    public Optional<Path> resolveHlsDirectory(CatalogVideoIndex.VideoEntry entry) {
+        if (!"HLS".equals(entry.videoFormat())) {
+            return Optional.empty();
+        }
+        return Optional.of(Path.of(videoManager.getSrc(entry.videoFolder())));
+    }
+}
@@ -0,0 +1,60 @@
+package com.bervan.streamingapp.remote;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * NTP-style estimate of the offset between a device clock and the server clock.
+ *
+ * Each exchange gives server send time {@code t0}, device receive time {@code t1}, device send time
+ * {@code t2} and server receive time {@code t3}; offset is {@code ((t1 - t0) + (t2 - t3)) / 2} and the
+ * network delay {@code (t3 - t0) - (t2 - t1)}. Like NTP's clock filter, the estimate is taken from the
+ * sample with the lowest delay among the last few, since queuing delay is what makes the offset wrong.
+ */
+public class ClockOffsetEstimator {
+    private static final int SAMPLES = 8;
+
+    private record Sample(long offsetMs, long delayMs) {}
+
+    private final Deque<Sample> samples = new ArrayDeque<>();
+    private Sample best;
+
+    /**
+     * @return {@code false} when the sample is inconsistent (negative delay) and was ignored
+     */
+    public synchronized boolean add(long t0, long t1, long t2, long t3) {
+        long delay = (t3 - t0) - (t2 - t1);
+        if (delay < 0) {
+            return false;
+        }
+        samples.addLast(new Sample(Math.round(((t1 - t0) + (t2 - t3)) / 2.0), delay));
+        if (samples.size() > SAMPLES) {
+            samples.removeFirst();
+        }
+        best = null;
+        for (Sample sample : samples) {
+            if (best == null || sample.delayMs() < best.delayMs()) {
+                best = sample;
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean hasEstimate() {
+        return best != null;
+    }
+
+    /**
+     * @return device clock minus server clock in milliseconds, 0 without samples
+     */
+    public synchronized long offsetMs() {
+        return best != null ? best.offsetMs() : 0;
+    }
+
+    /**
+     * @return round trip delay of the sample the offset comes from, 0 without samples
+     */
+    public synchronized long delayMs() {
+        return best != null ? best.delayMs() : 0;
+    }
+}
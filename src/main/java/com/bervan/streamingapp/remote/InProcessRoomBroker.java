@@ -0,0 +1,41 @@
+package com.bervan.streamingapp.remote;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link RoomBroker} within one JVM: channels are shared by all instances, so several application contexts
+ * started side by side (a multi-node test setup) reach each other. With a single node nothing is published,
+ * because no other node announces room members. Listeners run on the publishing thread.
+ */
+public class InProcessRoomBroker implements RoomBroker {
+    private static final Map<String, List<Consumer<byte[]>>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final Map<String, Consumer<byte[]>> subscriptions = new ConcurrentHashMap<>();
+
+    @Override
+    public void subscribe(String channel, Consumer<byte[]> listener) {
+        Consumer<byte[]> previous = subscriptions.put(channel, listener);
+        List<Consumer<byte[]>> listeners = CHANNELS.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>());
+        if (previous != null) {
+            listeners.remove(previous);
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void publish(String channel, byte[] message) {
+        for (Consumer<byte[]> listener : CHANNELS.getOrDefault(channel, List.of())) {
+            listener.accept(message);
+        }
+    }
+
+    @Override
+    public void close() {
+        subscriptions.forEach((channel, listener) -> CHANNELS.getOrDefault(channel, List.of()).remove(listener));
+        subscriptions.clear();
+    }
+}
@@ -0,0 +1,272 @@
+package com.bervan.streamingapp.remote;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Sync mode of remote control rooms: TVs of a room play the same position at the same moment.
+ *
+ * <ul>
+ *     <li>A remote switches the mode with {@code SYNC_ON} / {@code SYNC_OFF}; both are relayed to all devices.</li>
+ *     <li>The server sends TVs {@code TIME_SYNC {t0}}; a TV answers {@code TIME_SYNC {t0, t1, t2}} with its
+ *     receive and send time, which feeds its {@link ClockOffsetEstimator}.</li>
+ *     <li>The first {@code SYNC_REPORT {position, localTime, playing}} of a TV after {@code SYNC_ON} anchors the
+ *     room clock, and all TVs get a schedule that follows that TV.</li>
+ *     <li>{@code PLAY}, {@code PAUSE}, {@code TOGGLE_PLAY} and {@code SEEK} from a remote update the room
+ *     {@link SyncClock} and go to TVs as {@code PLAY_AT} / {@code PAUSE_AT {serverTime, position, localTime}}:
+ *     be playing from (or paused at) {@code position} at {@code serverTime}, which is {@code localTime} on
+ *     the TV's own clock. The start lies far enough ahead for the slowest TV to receive it.</li>
+ *     <li>TVs keep sending {@code SYNC_REPORT} while playing. The difference to the room clock
+ *     is the sync error, exported as {@code streaming.remote_control.sync.error}; it is corrected with
+ *     {@code SYNC_RATE {rate}} playback rate nudges, or a new schedule for that TV when it is too far off.</li>
+ * </ul>
+ *
+ * A TV that joins a room in sync mode gets a few {@code TIME_SYNC} requests and then the current schedule.
+ * Commands are relayed unchanged while the clock is not anchored yet: before the first report the server
+ * does not know whether the room plays, and a schedule would have to guess.
+ */
+@Component
+public class PlaybackSync {
+    public static final String SYNC_ON = "SYNC_ON";
+    public static final String SYNC_OFF = "SYNC_OFF";
+    public static final String TIME_SYNC = "TIME_SYNC";
+    public static final String PLAY_AT = "PLAY_AT";
+    public static final String PAUSE_AT = "PAUSE_AT";
+    public static final String SYNC_REPORT = "SYNC_REPORT";
+    public static final String SYNC_RATE = "SYNC_RATE";
+
+    private static final Set<String> SCHEDULED_COMMANDS = Set.of("PLAY", "PAUSE", "TOGGLE_PLAY", "SEEK");
+
+    public record TvSyncStatus(String sessionId, boolean clockEstimated, long clockOffsetMs, long delayMs,
+                               Double lastErrorMs, double rate) {}
+
+    public record RoomSyncStatus(String roomId, boolean enabled, boolean playing, double positionSeconds,
+                                 List<TvSyncStatus> tvs) {}
+
+    private final ObjectMapper objectMapper;
+    private final long leadMs;
+    private final double correctionSeconds;
+    private final double maxRateNudge;
+    private final double deadbandMs;
+    private final double maxDriftMs;
+    private final long timeSyncIntervalMs;
+    private final DistributionSummary syncError;
+
+    /**
+     * @param leadMs            minimum time between a command and its scheduled start, on top of the largest
+     *                          TV round trip
+     * @param correctionSeconds time over which a rate nudge removes the measured error
+     * @param maxRateNudge      largest deviation from rate 1
+     * @param deadbandMs        errors below this do not start a correction
+     * @param maxDriftMs        errors above this are fixed with a new schedule instead of a nudge
+     */
+    public PlaybackSync(MeterRegistry meterRegistry, ObjectMapper objectMapper,
+                        @Value("${streaming-platform.remote-control.sync.lead-ms:300}") long leadMs,
+                        @Value("${streaming-platform.remote-control.sync.correction-seconds:5}") double correctionSeconds,
+                        @Value("${streaming-platform.remote-control.sync.max-rate-nudge:0.05}") double maxRateNudge,
+                        @Value("${streaming-platform.remote-control.sync.deadband-ms:20}") double deadbandMs,
+                        @Value("${streaming-platform.remote-control.sync.max-drift-ms:1000}") double maxDriftMs,
+                        @Value("${streaming-platform.remote-control.sync.time-sync-interval-ms:5000}") long timeSyncIntervalMs) {
+        this.objectMapper = objectMapper;
+        this.timeSyncIntervalMs = timeSyncIntervalMs;
+        this.leadMs = leadMs;
+        this.correctionSeconds = correctionSeconds;
+        this.maxRateNudge = maxRateNudge;
+        this.deadbandMs = deadbandMs;
+        this.maxDriftMs = maxDriftMs;
+        this.syncError = DistributionSummary.builder("streaming.remote_control.sync.error")
+                .description("Absolute difference between a TV's reported position and the room clock")
+                .baseUnit("milliseconds")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public long getTimeSyncIntervalMs() {
+        return timeSyncIntervalMs;
+    }
+
+    public static boolean isScheduled(String action) {
+        return PLAY_AT.equals(action) || PAUSE_AT.equals(action);
+    }
+
+    public RemoteFrame timeSyncRequest() {
+        ObjectNode data = objectMapper.createObjectNode().put("t0", System.currentTimeMillis());
+        return frame(TIME_SYNC, data);
+    }
+
+    public void onTimeSync(RemoteConnection tv, RemoteFrame reply) {
+        long t3 = System.currentTimeMillis();
+        JsonNode data = data(reply);
+        if (data.hasNonNull("t0") && data.hasNonNull("t1") && data.hasNonNull("t2")) {
+            tv.getClock().add(data.get("t0").asLong(), data.get("t1").asLong(), data.get("t2").asLong(), t3);
+        }
+    }
+
+    /**
+     * Applies a playback command from a remote to the room clock.
+     *
+     * @return the schedule to send to the TVs, or {@code null} when the action is not a scheduled command
+     */
+    public RemoteFrame schedule(RemoteRoom room, String action, RemoteFrame command) {
+        if (!SCHEDULED_COMMANDS.contains(action)) {
+            return null;
+        }
+        Double seekPosition = null;
+        if ("SEEK".equals(action)) {
+            JsonNode data = data(command);
+            if (!data.isNumber()) {
+                return null;
+            }
+            seekPosition = data.asDouble();
+        }
+        Predicate<Boolean> nextPlaying = switch (action) {
+            case "PLAY" -> playing -> true;
+            case "PAUSE" -> playing -> false;
+            case "TOGGLE_PLAY" -> playing -> !playing;
+            default -> playing -> playing;
+        };
+        long at = System.currentTimeMillis() + lead(room);
+        SyncClock.State state = room.getClock().reschedule(nextPlaying, at, seekPosition);
+        if (state == null) {
+            return null;
+        }
+        return schedule(state.playing(), state.serverMs(), state.position());
+    }
+
+    /**
+     * Updates the room clock from a schedule made by another node.
+     */
+    public void apply(RemoteRoom room, RemoteFrame schedule) {
+        JsonNode data = data(schedule);
+        room.getClock().schedule(PLAY_AT.equals(schedule.action()), data.path("serverTime").asLong(),
+                data.path("position").asDouble());
+    }
+
+    /**
+     * @return the schedule with the start time on the TV's clock added, when its offset is known
+     */
+    public RemoteFrame personalize(RemoteConnection tv, RemoteFrame schedule) {
+        if (!tv.getClock().hasEstimate()) {
+            return schedule;
+        }
+        JsonNode message = tree(schedule);
+        if (!message.path("data").isObject()) {
+            return schedule;
+        }
+        ObjectNode data = message.path("data").deepCopy();
+        data.put("localTime", data.path("serverTime").asLong() + tv.getClock().offsetMs());
+        return frame(message.path("action").asText(), data);
+    }
+
+    /**
+     * Anchors a room clock that has no schedule yet at the position a TV reports.
+     *
+     * @return whether the clock was anchored, so {@link #current} should go to all TVs
+     */
+    public boolean anchor(RemoteRoom room, RemoteConnection tv, RemoteFrame report) {
+        JsonNode data = data(report);
+        if (!tv.getClock().hasEstimate() || !data.hasNonNull("position") || !data.hasNonNull("localTime")) {
+            return false;
+        }
+        long serverTime = data.get("localTime").asLong() - tv.getClock().offsetMs();
+        return room.getClock().anchor(data.path("playing").asBoolean(true), serverTime, data.get("position").asDouble());
+    }
+
+    /**
+     * Measures the sync error of a TV report.
+     *
+     * @return a rate nudge or a new schedule for the TV, or {@code null} when nothing needs correcting
+     */
+    public RemoteFrame onReport(RemoteRoom room, RemoteConnection tv, RemoteFrame report) {
+        JsonNode data = data(report);
+        SyncClock clock = room.getClock();
+        if (!clock.isAnchored() || !tv.getClock().hasEstimate() || !data.hasNonNull("position")
+                || !data.hasNonNull("localTime")) {
+            return null;
+        }
+        long serverTime = data.get("localTime").asLong() - tv.getClock().offsetMs();
+        double errorMs = (data.get("position").asDouble() - clock.positionAt(serverTime)) * 1000;
+        syncError.record(Math.abs(errorMs));
+        tv.setSyncError(errorMs);
+
+        if (Math.abs(errorMs) > maxDriftMs) {
+            tv.setSyncRate(1.0);
+            return personalize(tv, current(room));
+        }
+        double rate = 1.0;
+        // the deadband only delays the start of a correction, a running one continues down to zero error
+        if (clock.isPlaying() && (Math.abs(errorMs) > deadbandMs || tv.getSyncRate() != 1.0)) {
+            double nudge = errorMs / 1000 / correctionSeconds;
+            rate = 1.0 - Math.max(-maxRateNudge, Math.min(maxRateNudge, nudge));
+        }
+        if (Math.abs(rate - tv.getSyncRate()) < 0.001) {
+            return null;
+        }
+        tv.setSyncRate(rate);
+        return frame(SYNC_RATE, objectMapper.createObjectNode().put("rate", rate));
+    }
+
+    /**
+     * @return a schedule that continues the room clock, for TVs that joined late or drifted too far
+     */
+    public RemoteFrame current(RemoteRoom room) {
+        SyncClock clock = room.getClock();
+        long at = System.currentTimeMillis() + lead(room);
+        return schedule(clock.isPlaying(), at, clock.positionAt(at));
+    }
+
+    public RoomSyncStatus status(RemoteRoom room) {
+        List<TvSyncStatus> tvs = new ArrayList<>();
+        for (RemoteConnection tv : room.members(RemoteRole.TV)) {
+            ClockOffsetEstimator clock = tv.getClock();
+            tvs.add(new TvSyncStatus(tv.getId(), clock.hasEstimate(), clock.offsetMs(), clock.delayMs(),
+                    tv.getSyncError(), tv.getSyncRate()));
+        }
+        SyncClock clock = room.getClock();
+        return new RoomSyncStatus(room.getId(), clock.isEnabled(), clock.isPlaying(),
+                clock.positionAt(System.currentTimeMillis()), tvs);
+    }
+
+    private long lead(RemoteRoom room) {
+        long slowest = 0;
+        for (RemoteConnection tv : room.members(RemoteRole.TV)) {
+            slowest = Math.max(slowest, tv.getClock().delayMs());
+        }
+        return leadMs + slowest;
+    }
+
+    private RemoteFrame schedule(boolean playing, long serverTime, double position) {
+        return frame(playing ? PLAY_AT : PAUSE_AT, objectMapper.createObjectNode()
+                .put("serverTime", serverTime)
+                .put("position", position));
+    }
+
+    private RemoteFrame frame(String action, JsonNode data) {
+        ObjectNode message = objectMapper.createObjectNode().put("action", action);
+        message.set("data", data);
+        return RemoteFrame.ofText(message.toString());
+    }
+
+    private JsonNode data(RemoteFrame frame) {
+        return tree(frame).path("data");
+    }
+
+    private JsonNode tree(RemoteFrame frame) {
+        try {
+            return objectMapper.readTree(frame.json());
+        } catch (JsonProcessingException e) {
+            return objectMapper.missingNode();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.bervan.streamingapp.remote;
+
+import com.bervan.logging.JsonLogger;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * {@link RoomBroker} on Redis pub/sub ({@code PUBLISH} / {@code SUBSCRIBE}), speaking RESP over two plain
+ * sockets so no Redis client library is needed.
+ *
+ * {@link #publish} never touches the network: it queues the command for the publisher thread, which
+ * writes whatever is queued in one pipelined batch and whose replies are drained by a reader thread. Callers
+ * such as WebSocket threads or the remote control scheduler are never held up by a slow or unreachable
+ * Redis. Both connections run on their own threads and reconnect with backoff, the subscriber subscribing
+ * to all registered channels again; messages published while a connection is down are lost, like with any
+ * Redis pub/sub.
+ *
+ * Both sockets use TCP keepalive, and the subscriber sends {@code PING} after {@value #SUBSCRIBER_PING_MS} ms
+ * without traffic. It reconnects when no reply arrives within another interval, so a half-open connection
+ * left behind by a NAT or idle timeout is noticed.
+ */
+public class RedisRoomBroker implements RoomBroker {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long MAX_BACKOFF_MS = 10_000;
+    private static final int PUBLISH_QUEUE_CAPACITY = 10_000;
+    static final int SUBSCRIBER_PING_MS = 15_000;
+
+    private record RedisError(String message) {}
+
+    private record Publish(String channel, byte[] message) {}
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final String host;
+    private final int port;
+    private final String password;
+    private final Map<String, Consumer<byte[]>> listeners = new ConcurrentHashMap<>();
+    private final BlockingQueue<Publish> publishQueue = new LinkedBlockingQueue<>(PUBLISH_QUEUE_CAPACITY);
+    private final Object publishLock = new Object();
+    private final Object subscribeLock = new Object();
+    private final Thread subscriber;
+    private final Thread publisher;
+    private Socket publishSocket;
+    private Socket subscribeSocket;
+    private OutputStream subscribeOut;
+    private volatile boolean closed;
+
+    public RedisRoomBroker(String host, int port, String password) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.subscriber = new Thread(this::subscribeLoop, "remote-control-redis-sub");
+        this.subscriber.setDaemon(true);
+        this.subscriber.start();
+        this.publisher = new Thread(this::publishLoop, "remote-control-redis-pub");
+        this.publisher.setDaemon(true);
+        this.publisher.start();
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<byte[]> listener) {
+        listeners.put(channel, listener);
+        synchronized (subscribeLock) {
+            if (subscribeOut != null) {
+                try {
+                    writeCommand(subscribeOut, bytes("SUBSCRIBE"), bytes(channel));
+                    subscribeOut.flush();
+                } catch (IOException e) {
+                    // the subscriber loop reconnects and subscribes to all channels again
+                    log.warn("Could not subscribe to Redis channel " + channel + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void publish(String channel, byte[] message) {
+        if (!publishQueue.offer(new Publish(channel, message))) {
+            log.warn("Redis publish queue is full, dropping a message to channel " + channel);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        subscriber.interrupt();
+        publisher.interrupt();
+        synchronized (subscribeLock) {
+            closeQuietly(subscribeSocket);
+        }
+        synchronized (publishLock) {
+            closeQuietly(publishSocket);
+        }
+    }
+
+    private void publishLoop() {
+        long backoff = 500;
+        List<Publish> batch = new ArrayList<>();
+        while (!closed) {
+            try (Socket socket = connect()) {
+                synchronized (publishLock) {
+                    if (closed) {
+                        return;
+                    }
+                    publishSocket = socket;
+                }
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                Thread replies = new Thread(() -> drainReplies(socket, in), "remote-control-redis-replies");
+                replies.setDaemon(true);
+                replies.start();
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                backoff = 500;
+                while (!closed) {
+                    batch.add(publishQueue.take());
+                    publishQueue.drainTo(batch);
+                    for (Publish publish : batch) {
+                        writeCommand(out, bytes("PUBLISH"), bytes(publish.channel()), publish.message());
+                    }
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    int dropped = batch.size() + publishQueue.size();
+                    batch.clear();
+                    publishQueue.clear();
+                    log.warn("Redis publisher connection lost, dropped " + dropped + " messages: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                synchronized (publishLock) {
+                    publishSocket = null;
+                }
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void drainReplies(Socket socket, InputStream in) {
+        try {
+            while (!socket.isClosed()) {
+                if (read(in) instanceof RedisError error) {
+                    log.warn("Redis rejected a publish: " + error.message());
+                }
+            }
+        } catch (IOException e) {
+            // connection closed, the publisher thread reconnects
+        }
+    }
+
+    private void subscribeLoop() {
+        long backoff = 500;
+        while (!closed) {
+            try (Socket socket = connect()) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                synchronized (subscribeLock) {
+                    subscribeSocket = socket;
+                    subscribeOut = new BufferedOutputStream(socket.getOutputStream());
+                    if (!listeners.isEmpty()) {
+                        List<byte[]> command = new ArrayList<>();
+                        command.add(bytes("SUBSCRIBE"));
+                        listeners.keySet().forEach(channel -> command.add(bytes(channel)));
+                        writeCommand(subscribeOut, command.toArray(new byte[0][]));
+                        subscribeOut.flush();
+                    }
+                }
+                log.info("Remote control broker subscribed to Redis at " + host + ":" + port);
+                backoff = 500;
+                socket.setSoTimeout(SUBSCRIBER_PING_MS);
+                boolean pingSent = false;
+                while (!closed) {
+                    int type;
+                    try {
+                        type = in.read();
+                    } catch (SocketTimeoutException e) {
+                        if (pingSent) {
+                            throw new IOException("no reply to PING within " + SUBSCRIBER_PING_MS + " ms");
+                        }
+                        synchronized (subscribeLock) {
+                            writeCommand(subscribeOut, bytes("PING"));
+                            subscribeOut.flush();
+                        }
+                        pingSent = true;
+                        continue;
+                    }
+                    pingSent = false;
+                    // the PING reply is a ["pong", ""] push, which dispatch ignores
+                    dispatch(read(in, type));
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Redis subscriber connection lost: " + e.getMessage());
+                }
+            } finally {
+                synchronized (subscribeLock) {
+                    subscribeSocket = null;
+                    subscribeOut = null;
+                }
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void dispatch(Object reply) {
+        if (reply instanceof List<?> push && push.size() == 3 && push.get(0) instanceof byte[] kind
+                && "message".equals(string(kind)) && push.get(2) instanceof byte[] message) {
+            Consumer<byte[]> listener = listeners.get(string((byte[]) push.get(1)));
+            if (listener != null) {
+                try {
+                    listener.accept(message);
+                } catch (RuntimeException e) {
+                    log.warn("Remote control broker listener failed: " + e.getMessage());
+                }
+            }
+        } else if (reply instanceof RedisError error) {
+            log.warn("Redis subscriber error: " + error.message());
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            if (password != null && !password.isEmpty()) {
+                // a Redis that accepts the connection but never answers must not hang the connecting thread
+                socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+                OutputStream out = socket.getOutputStream();
+                writeCommand(out, bytes("AUTH"), bytes(password));
+                out.flush();
+                if (read(new BufferedInputStream(socket.getInputStream(), 1)) instanceof RedisError error) {
+                    throw new IOException("Redis AUTH failed: " + error.message());
+                }
+                // pub/sub connections are idle for as long as nothing is published
+                socket.setSoTimeout(0);
+            }
+            return socket;
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static void writeCommand(OutputStream out, byte[]... arguments) throws IOException {
+        out.write(bytes("*" + arguments.length + "\r\n"));
+        for (byte[] argument : arguments) {
+            out.write(bytes("$" + argument.length + "\r\n"));
+            out.write(argument);
+            out.write('\r');
+            out.write('\n');
+        }
+    }
+
+    private static Object read(InputStream in) throws IOException {
+        return read(in, in.read());
+    }
+
+    private static Object read(InputStream in, int type) throws IOException {
+        if (type == -1) {
+            throw new EOFException("Redis closed the connection");
+        }
+        String line = readLine(in);
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new RedisError(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] value = in.readNBytes(length);
+                if (value.length < length) {
+                    throw new EOFException("Redis closed the connection");
+                }
+                readLine(in);
+                return value;
+            }
+            case '*': {
+                int count = Integer.parseInt(line);
+                List<Object> items = new ArrayList<>(Math.max(count, 0));
+                for (int i = 0; i < count; i++) {
+                    items.add(read(in));
+                }
+                return items;
+            }
+            default:
+                throw new IOException("Unexpected RESP type '" + (char) type + "'");
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException("Redis closed the connection");
+            }
+            line.append((char) c);
+        }
+        in.read(); // '\n'
+        return line.toString();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.bervan.streamingapp.remote;
+
+import com.bervan.streamingapp.RemoteControlMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary framing of remote control messages.
+ *
+ * <pre>
+ * opcode   u8
+ * roomId   unsigned LEB128 varint of the numeric room id + 1, 0 when the message has no room id
+ * body     SEEK: f64 position in seconds, VOLUME: f32 level, nothing for the other opcodes
+ * </pre>
+ *
+ * Messages that do not fit this layout (a target, data other than a SEEK/VOLUME number, a non-numeric room
+ * id, unknown actions or fields) are sent as opcode {@code 0x00} followed by the UTF-8 JSON text, so the
+ * relay between JSON and binary clients never loses anything. All numbers are big-endian. The JSON side is
+ * read and written with the streaming parser, like {@link RemoteMessages}, without an object mapper.
+ */
+public final class RemoteBinaryCodec {
+    public static final byte JSON_ENVELOPE = 0x00;
+
+    private static final String[] ACTIONS = {null, "PLAY", "PAUSE", "TOGGLE_PLAY", "SEEK", "VOLUME", "FULLSCREEN",
+            "MAXIMIZE", "PIP", "GET_TRACKS", "NEXT_EPISODE", "PREV_EPISODE", RemoteMessages.TV_OFFLINE,
+            RemoteMessages.TV_ONLINE};
+    private static final byte SEEK = 0x04;
+    private static final byte VOLUME = 0x05;
+    private static final Map<String, Byte> OPCODES = new HashMap<>();
+    private static final JsonFactory JSON = new JsonFactory();
+
+    static {
+        for (int opcode = 1; opcode < ACTIONS.length; opcode++) {
+            OPCODES.put(ACTIONS[opcode], (byte) opcode);
+        }
+    }
+
+    private RemoteBinaryCodec() {
+    }
+
+    /**
+     * Encodes a JSON text message, compactly when it fits the fixed layout.
+     */
+    public static byte[] encode(String json) {
+        byte[] compact = encodeCompact(json);
+        if (compact != null) {
+            return compact;
+        }
+        byte[] text = json.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[text.length + 1];
+        frame[0] = JSON_ENVELOPE;
+        System.arraycopy(text, 0, frame, 1, text.length);
+        return frame;
+    }
+
+    /**
+     * Checks a received frame without converting it; envelopes are relayed as they are, like JSON messages.
+     *
+     * @throws IllegalArgumentException when the frame is malformed
+     */
+    public static void validate(ByteBuffer frame) {
+        if (!frame.hasRemaining()) {
+            throw new IllegalArgumentException("Empty remote control frame");
+        }
+        if (frame.get(frame.position()) != JSON_ENVELOPE) {
+            decode(frame);
+        }
+    }
+
+    /**
+     * Decodes a compact frame; envelopes carry arbitrary JSON and are only relayed, see {@link #toJson}.
+     *
+     * @throws IllegalArgumentException when the frame is malformed or an envelope
+     */
+    public static RemoteControlMessage decode(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        try {
+            int opcode = Byte.toUnsignedInt(in.get());
+            if (opcode == JSON_ENVELOPE) {
+                throw new IllegalArgumentException("JSON envelope is not a compact frame");
+            }
+            if (opcode >= ACTIONS.length) {
+                throw new IllegalArgumentException("Unknown opcode " + opcode);
+            }
+            long room = readVarint(in);
+            RemoteControlMessage message = new RemoteControlMessage(ACTIONS[opcode], null,
+                    opcode == SEEK ? (Object) in.getDouble() : opcode == VOLUME ? (Object) in.getFloat() : null);
+            message.setRoomId(room == 0 ? null : Long.toString(room - 1));
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after " + ACTIONS[opcode]);
+            }
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated remote control frame", e);
+        }
+    }
+
+    /**
+     * Converts a frame to the JSON text JSON clients receive; envelopes are returned verbatim.
+     *
+     * @throws IllegalArgumentException when the frame is malformed
+     */
+    public static String toJson(ByteBuffer frame) {
+        if (frame.hasRemaining() && frame.get(frame.position()) == JSON_ENVELOPE) {
+            return envelopeText(frame.duplicate().position(frame.position() + 1));
+        }
+        RemoteControlMessage message = decode(frame);
+        // same field order and null handling as the JSON clients send
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = JSON.createGenerator(json)) {
+            generator.writeStartObject();
+            generator.writeStringField("action", message.getAction());
+            if (message.getData() instanceof Double position) {
+                generator.writeNumberField("data", position);
+            } else if (message.getData() instanceof Float level) {
+                generator.writeNumberField("data", level);
+            }
+            if (message.getRoomId() != null) {
+                generator.writeStringField("roomId", message.getRoomId());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * @return the action of a compact frame or {@code null} for envelopes and unknown opcodes
+     */
+    public static String action(ByteBuffer frame) {
+        if (!frame.hasRemaining()) {
+            return null;
+        }
+        int opcode = Byte.toUnsignedInt(frame.get(frame.position()));
+        return opcode < ACTIONS.length ? ACTIONS[opcode] : null;
+    }
+
+    private static byte[] encodeCompact(String json) {
+        String action = null;
+        String roomId = null;
+        Number data = null;
+        try (JsonParser parser = JSON.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "action" -> {
+                        if (value != JsonToken.VALUE_STRING) {
+                            return null;
+                        }
+                        action = parser.getText();
+                    }
+                    case "roomId" -> {
+                        if (value != JsonToken.VALUE_STRING && value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                        roomId = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    }
+                    case "data" -> {
+                        if (value != JsonToken.VALUE_NUMBER_INT && value != JsonToken.VALUE_NUMBER_FLOAT
+                                && value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                        data = value == JsonToken.VALUE_NULL ? null : parser.getNumberValue();
+                    }
+                    case "target" -> {
+                        if (value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                    }
+                    default -> {
+                        // unknown fields only survive in an envelope
+                        return null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        Byte opcode = action != null ? OPCODES.get(action) : null;
+        long room = roomNumber(roomId);
+        if (opcode == null || room < 0) {
+            return null;
+        }
+        int bodySize;
+        if (opcode == SEEK || opcode == VOLUME) {
+            if (data == null) {
+                return null;
+            }
+            bodySize = opcode == SEEK ? Double.BYTES : Float.BYTES;
+        } else if (data != null) {
+            return null;
+        } else {
+            bodySize = 0;
+        }
+        ByteBuffer out = ByteBuffer.allocate(1 + 10 + bodySize);
+        out.put(opcode);
+        writeVarint(out, room);
+        if (opcode == SEEK) {
+            out.putDouble(data.doubleValue());
+        } else if (opcode == VOLUME) {
+            out.putFloat(data.floatValue());
+        }
+        byte[] frame = new byte[out.position()];
+        out.flip().get(frame);
+        return frame;
+    }
+
+    // room id + 1, 0 for no room id, -1 when the id is not a canonical non-negative number
+    private static long roomNumber(String roomId) {
+        if (roomId == null) {
+            return 0;
+        }
+        try {
+            long number = Long.parseLong(roomId);
+            return number >= 0 && number < Long.MAX_VALUE && Long.toString(number).equals(roomId) ? number + 1 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static String envelopeText(ByteBuffer in) {
+        byte[] text = new byte[in.remaining()];
+        in.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,288 @@
+package com.bervan.streamingapp.remote;
+
+import com.bervan.logging.JsonLogger;
+import io.micrometer.core.instrument.Counter;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One remote control WebSocket connection with a bounded outbound queue.
+ *
+ * Works like Spring's {@code ConcurrentWebSocketSessionDecorator}: a sending thread enqueues the message
+ * and only writes to the socket when no other thread is writing already, so a slow device holds up at most
+ * one thread and sends to a session never overlap. When the queued bytes exceed the buffer limit the
+ * oldest status updates are dropped first, since a newer one supersedes them anyway. A connection whose
+ * queue still does not fit, or whose current write takes longer than the send time limit, is closed with
+ * {@link CloseStatus#SESSION_NOT_RELIABLE}; the device reconnects and starts from a fresh state.
+ *
+ * The connection also keeps the heartbeat state: pings carry their send time, so the pong gives the round
+ * trip time. Only a ping that was actually written to the socket waits for a pong; one still queued behind
+ * a slow write elsewhere cannot be missed.
+ */
+public class RemoteConnection {
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+
+    private record Outbound(WebSocketMessage<?> message, boolean status, int size) {}
+
+    private final WebSocketSession session;
+    private final RemoteRole role;
+    private final RemoteProtocol protocol;
+    private final String roomId;
+    private final long sendTimeLimitMs;
+    private final int bufferSizeLimit;
+    private final Counter droppedStatus;
+    private final Counter closedSlow;
+    private final Deque<Outbound> queue = new ArrayDeque<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean closing = new AtomicBoolean();
+    private int bufferSize;
+    private volatile long sendStartMs;
+    private final Object heartbeatLock = new Object();
+    private boolean awaitingPong;
+    private int missedPongs;
+    private final ClockOffsetEstimator clock = new ClockOffsetEstimator();
+    private volatile Double syncError;
+    private volatile double syncRate = 1.0;
+
+    public RemoteConnection(WebSocketSession session, RemoteRole role, String roomId, long sendTimeLimitMs,
+                            int bufferSizeLimit, Counter droppedStatus, Counter closedSlow) {
+        this.session = session;
+        this.role = role;
+        this.protocol = RemoteProtocol.of(session);
+        this.roomId = roomId;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.droppedStatus = droppedStatus;
+        this.closedSlow = closedSlow;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    public RemoteRole getRole() {
+        return role;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public RemoteProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return offset estimate of the device clock, used by {@link PlaybackSync}
+     */
+    public ClockOffsetEstimator getClock() {
+        return clock;
+    }
+
+    /**
+     * @return last measured sync error in milliseconds (positive when ahead) or {@code null}
+     */
+    public Double getSyncError() {
+        return syncError;
+    }
+
+    public void setSyncError(Double syncError) {
+        this.syncError = syncError;
+    }
+
+    public double getSyncRate() {
+        return syncRate;
+    }
+
+    public void setSyncRate(double syncRate) {
+        this.syncRate = syncRate;
+    }
+
+    /**
+     * Queues a message in the protocol of this connection and writes the queue unless another thread is
+     * writing to this session already.
+     *
+     * @param status whether the message is a status update that a newer one makes obsolete
+     */
+    public void send(RemoteFrame frame, boolean status) {
+        if (closing.get() || !session.isOpen()) {
+            return;
+        }
+        enqueue(frame.message(protocol), status);
+    }
+
+    /**
+     * Counts one heartbeat interval; does no IO.
+     *
+     * @return {@code false} when a written ping has gone unanswered for {@code maxMissed} intervals, and no
+     * ping should follow
+     */
+    public boolean expectPong(int maxMissed) {
+        synchronized (heartbeatLock) {
+            missedPongs = awaitingPong ? missedPongs + 1 : 0;
+            return missedPongs < maxMissed;
+        }
+    }
+
+    /**
+     * Sends a heartbeat ping carrying its send time.
+     */
+    public void ping() {
+        enqueue(new PingMessage(ByteBuffer.allocate(Long.BYTES).putLong(System.nanoTime()).flip()), false);
+    }
+
+    /**
+     * @return round trip time in nanoseconds, or -1 when the pong does not answer one of our pings
+     */
+    public long pong(PongMessage pong) {
+        ByteBuffer payload = pong.getPayload();
+        if (payload.remaining() != Long.BYTES) {
+            return -1;
+        }
+        long sentAt = payload.getLong(payload.position());
+        synchronized (heartbeatLock) {
+            awaitingPong = false;
+            missedPongs = 0;
+        }
+        return System.nanoTime() - sentAt;
+    }
+
+    public void close(CloseStatus status) {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        clear();
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.warn("Could not close remote control session " + getId() + ": " + e.getMessage());
+        }
+    }
+
+    private void enqueue(WebSocketMessage<?> message, boolean status) {
+        if (closing.get() || !session.isOpen()) {
+            return;
+        }
+        boolean overflow;
+        synchronized (queue) {
+            queue.addLast(new Outbound(message, status, message.getPayloadLength()));
+            bufferSize += message.getPayloadLength();
+            overflow = bufferSize > bufferSizeLimit && !dropStatusUpdates();
+        }
+        if (overflow) {
+            closeSlowConsumer("send buffer exceeded " + bufferSizeLimit + " bytes");
+            return;
+        }
+        long startedAt = sendStartMs;
+        if (startedAt != 0 && System.currentTimeMillis() - startedAt > sendTimeLimitMs) {
+            closeSlowConsumer("a send took more than " + sendTimeLimitMs + " ms");
+            return;
+        }
+        flush();
+    }
+
+    /**
+     * @return number of messages waiting to be written
+     */
+    public int queuedMessages() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * @return bytes waiting to be written
+     */
+    public int queuedBytes() {
+        synchronized (queue) {
+            return bufferSize;
+        }
+    }
+
+    // caller holds the queue monitor; keeps the newest message even if it is a status update
+    private boolean dropStatusUpdates() {
+        Iterator<Outbound> iterator = queue.iterator();
+        Outbound newest = queue.peekLast();
+        while (bufferSize > bufferSizeLimit && iterator.hasNext()) {
+            Outbound queued = iterator.next();
+            if (queued.status() && queued != newest) {
+                iterator.remove();
+                bufferSize -= queued.size();
+                droppedStatus.increment();
+            }
+        }
+        return bufferSize <= bufferSizeLimit;
+    }
+
+    private void flush() {
+        while (hasQueued() && flushLock.tryLock()) {
+            try {
+                Outbound next;
+                while (!closing.get() && (next = poll()) != null) {
+                    if (next.message() instanceof PingMessage) {
+                        synchronized (heartbeatLock) {
+                            awaitingPong = true;
+                        }
+                    }
+                    sendStartMs = System.currentTimeMillis();
+                    session.sendMessage(next.message());
+                    sendStartMs = 0;
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.warn("Could not send remote control message to session " + getId() + ": " + e.getMessage());
+                closing.set(true);
+                clear();
+            } finally {
+                sendStartMs = 0;
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private boolean hasQueued() {
+        synchronized (queue) {
+            return !closing.get() && !queue.isEmpty();
+        }
+    }
+
+    private Outbound poll() {
+        synchronized (queue) {
+            Outbound next = queue.pollFirst();
+            if (next != null) {
+                bufferSize -= next.size();
+            }
+            return next;
+        }
+    }
+
+    private void clear() {
+        synchronized (queue) {
+            queue.clear();
+            bufferSize = 0;
+        }
+    }
+
+    private void closeSlowConsumer(String reason) {
+        if (closing.get()) {
+            return;
+        }
+        closedSlow.increment();
+        log.warn("Closing slow remote control session " + getId() + " in room " + roomId + ": " + reason);
+        close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+}
@@ -0,0 +1,24 @@
+package com.bervan.streamingapp.remote;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RemoteControlBrokerConfig {
+
+    /**
+     * {@code streaming-platform.remote-control.broker=redis} connects the nodes through Redis pub/sub,
+     * anything else keeps remote control rooms within this JVM.
+     */
+    @Bean(destroyMethod = "close")
+    public RoomBroker roomBroker(@Value("${streaming-platform.remote-control.broker:local}") String broker,
+                                 @Value("${streaming-platform.remote-control.redis.host:localhost}") String host,
+                                 @Value("${streaming-platform.remote-control.redis.port:6379}") int port,
+                                 @Value("${streaming-platform.remote-control.redis.password:}") String password) {
+        if ("redis".equalsIgnoreCase(broker)) {
+            return new RedisRoomBroker(host, port, password);
+        }
+        return new InProcessRoomBroker();
+    }
+}
@@ -0,0 +1,102 @@
+package com.bervan.streamingapp.remote;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A relayed remote control message in the format it arrived in, converted for recipients that use the other
+ * {@link RemoteProtocol} at most once, however many of them there are.
+ */
+public final class RemoteFrame {
+    private volatile String text;
+    // never handed out directly: sending a binary message consumes its buffer
+    private volatile ByteBuffer binary;
+    private volatile String action;
+    private volatile boolean actionRead;
+
+    private RemoteFrame(String text, ByteBuffer binary) {
+        this.text = text;
+        this.binary = binary;
+    }
+
+    /**
+     * @throws IllegalArgumentException when a binary message is not a valid frame
+     */
+    public static RemoteFrame of(WebSocketMessage<?> message) {
+        if (message instanceof BinaryMessage binaryMessage) {
+            // the container may reuse the buffer of an incoming message once the handler returns
+            ByteBuffer payload = binaryMessage.getPayload();
+            ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+            copy.put(payload.duplicate()).flip();
+            RemoteBinaryCodec.validate(copy);
+            return new RemoteFrame(null, copy.asReadOnlyBuffer());
+        }
+        return new RemoteFrame(message.getPayload().toString(), null);
+    }
+
+    public static RemoteFrame ofText(String text) {
+        return new RemoteFrame(text, null);
+    }
+
+    /**
+     * @param frame an already validated frame, e.g. one relayed by another node
+     */
+    public static RemoteFrame ofBinary(ByteBuffer frame) {
+        return new RemoteFrame(null, frame.asReadOnlyBuffer());
+    }
+
+    public WebSocketMessage<?> message(RemoteProtocol protocol) {
+        if (protocol == RemoteProtocol.BINARY) {
+            ByteBuffer frame = binary;
+            if (frame == null) {
+                frame = ByteBuffer.wrap(RemoteBinaryCodec.encode(text)).asReadOnlyBuffer();
+                binary = frame;
+            }
+            return new BinaryMessage(frame.duplicate());
+        }
+        return new TextMessage(json());
+    }
+
+    /**
+     * @return the message action or {@code null} when it has none
+     */
+    public String action() {
+        if (!actionRead) {
+            ByteBuffer frame = binary;
+            String compact = frame != null ? RemoteBinaryCodec.action(frame) : null;
+            action = compact != null ? compact : RemoteMessages.action(json());
+            actionRead = true;
+        }
+        return action;
+    }
+
+    /**
+     * @return the binary form if the frame arrived binary or was already converted, otherwise {@code null}
+     */
+    ByteBuffer binaryIfPresent() {
+        ByteBuffer frame = binary;
+        return frame != null ? frame.duplicate() : null;
+    }
+
+    /**
+     * @return the JSON text if the frame arrived as text or was already converted, otherwise {@code null}
+     */
+    String textIfPresent() {
+        return text;
+    }
+
+    /**
+     * @return the message as JSON text, converting a binary frame if needed
+     */
+    public String json() {
+        String json = text;
+        if (json == null) {
+            json = RemoteBinaryCodec.toJson(binary);
+            text = json;
+        }
+        return json;
+    }
+}
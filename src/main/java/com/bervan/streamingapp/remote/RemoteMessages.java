@@ -0,0 +1,85 @@
+package com.bervan.streamingapp.remote;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Set;
+
+/**
+ * Helpers for the JSON remote control messages ({@code {"action": ..., "target": ..., "data": ...}}).
+ */
+public final class RemoteMessages {
+    /**
+     * Actions that control playback or navigation. They are relayed at once in both directions, everything
+     * else a TV sends is a status update that may be coalesced.
+     */
+    public static final Set<String> CONTROL_ACTIONS = Set.of("PLAY", "PAUSE", "TOGGLE_PLAY", "SEEK", "VOLUME",
+            "FULLSCREEN", "MAXIMIZE", "PIP", "NAVIGATE", "GET_TRACKS", "SET_AUDIO_TRACK", "SET_SUBTITLE_TRACK",
+            "NEXT_EPISODE", "PREV_EPISODE");
+
+    /**
+     * Sent by the server to the remotes of a room when its last TV disconnects, and to a remote that joins or
+     * sends a command while no TV is connected.
+     */
+    public static final String TV_OFFLINE = "TV_OFFLINE";
+    /**
+     * Sent by the server to the remotes of a room when its first TV connects.
+     */
+    public static final String TV_ONLINE = "TV_ONLINE";
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private RemoteMessages() {
+    }
+
+    /**
+     * Reads the top-level {@code action} field without building a tree; status updates arrive several times
+     * a second per TV.
+     *
+     * @return the action or {@code null} when the payload is not a JSON object with a string action
+     */
+    public static String action(String payload) {
+        try (JsonParser parser = JSON.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                token = parser.nextToken();
+                if ("action".equals(field)) {
+                    return token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static boolean isControl(String action) {
+        return CONTROL_ACTIONS.contains(action);
+    }
+
+    /**
+     * @return a server notice such as {@link #TV_OFFLINE} for a room
+     */
+    public static RemoteFrame notice(String action, String roomId) {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = JSON.createGenerator(json)) {
+            generator.writeStartObject();
+            generator.writeStringField("action", action);
+            generator.writeStringField("roomId", roomId);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return RemoteFrame.ofText(json.toString());
+    }
+}
@@ -0,0 +1,28 @@
+package com.bervan.streamingapp.remote;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+
+/**
+ * Wire format of a remote control connection, chosen with the WebSocket subprotocol at handshake.
+ *
+ * Clients that request {@value #BINARY_SUBPROTOCOL} get {@link RemoteBinaryCodec} frames, everything else
+ * (including clients that request no subprotocol) keeps the JSON text messages.
+ */
+public enum RemoteProtocol {
+    JSON,
+    BINARY;
+
+    public static final String BINARY_SUBPROTOCOL = "remote-control.bin.v1";
+    public static final String JSON_SUBPROTOCOL = "remote-control.json.v1";
+
+    /**
+     * Subprotocols offered at handshake, in order of preference.
+     */
+    public static final List<String> SUBPROTOCOLS = List.of(BINARY_SUBPROTOCOL, JSON_SUBPROTOCOL);
+
+    public static RemoteProtocol of(WebSocketSession session) {
+        return BINARY_SUBPROTOCOL.equals(session.getAcceptedProtocol()) ? BINARY : JSON;
+    }
+}
@@ -0,0 +1,29 @@
+package com.bervan.streamingapp.remote;
+
+/**
+ * Role of a remote control WebSocket connection, taken from the {@code deviceType} handshake parameter.
+ */
+public enum RemoteRole {
+    TV,
+    REMOTE;
+
+    /**
+     * @return the role for a {@code deviceType} value or {@code null} when it is not a known device type
+     */
+    public static RemoteRole of(String deviceType) {
+        if ("TV".equals(deviceType)) {
+            return TV;
+        }
+        if ("REMOTE".equals(deviceType)) {
+            return REMOTE;
+        }
+        return null;
+    }
+
+    /**
+     * @return the role that receives messages sent by this role
+     */
+    public RemoteRole peer() {
+        return this == TV ? REMOTE : TV;
+    }
+}
@@ -0,0 +1,60 @@
+package com.bervan.streamingapp.remote;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connections of one remote control room: any number of TVs and any number of remotes.
+ *
+ * The sets are concurrent so messages can fan out while devices join and leave. Adding and removing
+ * members is done by {@code RemoteControlWebSocketHandler} inside a {@code compute} on its room map, so
+ * an empty room is never removed while a device joins it.
+ */
+public class RemoteRoom {
+    private final String id;
+    private final Set<RemoteConnection> tvs = ConcurrentHashMap.newKeySet();
+    private final Set<RemoteConnection> remotes = ConcurrentHashMap.newKeySet();
+    private final Map<String, StatusCoalescer.Slot> statusSlots = new ConcurrentHashMap<>();
+    private final SyncClock clock = new SyncClock();
+
+    public RemoteRoom(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void add(RemoteConnection connection) {
+        set(connection.getRole()).add(connection);
+    }
+
+    public void remove(RemoteConnection connection) {
+        set(connection.getRole()).remove(connection);
+    }
+
+    /**
+     * @return live view of the connections with the given role
+     */
+    public Set<RemoteConnection> members(RemoteRole role) {
+        return Collections.unmodifiableSet(set(role));
+    }
+
+    public SyncClock getClock() {
+        return clock;
+    }
+
+    public boolean isEmpty() {
+        return tvs.isEmpty() && remotes.isEmpty();
+    }
+
+    Map<String, StatusCoalescer.Slot> statusSlots() {
+        return statusSlots;
+    }
+
+    private Set<RemoteConnection> set(RemoteRole role) {
+        return role == RemoteRole.TV ? tvs : remotes;
+    }
+}
@@ -0,0 +1,20 @@
+package com.bervan.streamingapp.remote;
+
+import java.util.function.Consumer;
+
+/**
+ * Pub/sub transport between application instances, used by {@link RoomRouter} to reach remote control peers
+ * connected to another node. Delivery is best effort: messages published while a node is unreachable are lost.
+ */
+public interface RoomBroker extends AutoCloseable {
+
+    /**
+     * Registers the listener of a channel; a later call for the same channel replaces it.
+     */
+    void subscribe(String channel, Consumer<byte[]> listener);
+
+    void publish(String channel, byte[] message);
+
+    @Override
+    void close();
+}
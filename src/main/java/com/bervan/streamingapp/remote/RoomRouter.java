@@ -0,0 +1,279 @@
+package com.bervan.streamingapp.remote;
+
+import com.bervan.logging.JsonLogger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes remote control messages to peers connected to other application instances.
+ *
+ * Peers on this node are served by {@code RemoteControlWebSocketHandler} directly; this class only handles
+ * the rest. Each node announces on the membership channel which roles it hosts in which rooms (when the
+ * first TV or remote of a room connects or the last one leaves, and again every
+ * {@code streaming-platform.remote-control.membership-refresh-ms}), so a message is published only to the
+ * channels of nodes that host recipients and a single node publishes nothing. Announcements not refreshed
+ * for three intervals expire, which cleans up after nodes that died without saying goodbye.
+ *
+ * Messages from other nodes are handed to local peers on {@code delivery-threads} threads, each serving a
+ * fixed share of the rooms. The broker thread is never held up by a slow local socket, and messages of one
+ * room keep their order.
+ */
+@Component
+public class RoomRouter {
+    private static final byte MESSAGE = 1;
+    private static final byte JOIN = 2;
+    private static final byte LEAVE = 3;
+    private static final byte HELLO = 4;
+    private static final byte BYE = 5;
+    private static final byte TEXT_FRAME = 0;
+    private static final byte BINARY_FRAME = 1;
+    private static final int DELIVERY_QUEUE_CAPACITY = 10_000;
+
+    /**
+     * Delivers a message that arrived from another node to the local peers of a room.
+     */
+    @FunctionalInterface
+    public interface LocalDelivery {
+        void deliver(String roomId, RemoteRole role, RemoteFrame frame, boolean status);
+    }
+
+    private record Membership(String roomId, RemoteRole role) {}
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final RoomBroker broker;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final String channelPrefix;
+    private final long refreshMs;
+    private final Set<Membership> local = ConcurrentHashMap.newKeySet();
+    // nodes hosting a role in a room, with the time of their last announcement
+    private final Map<Membership, Map<String, Long>> remote = new ConcurrentHashMap<>();
+    private final Counter published;
+    private final Counter received;
+    private final ExecutorService[] deliveryExecutors;
+    private volatile LocalDelivery localDelivery;
+
+    public RoomRouter(RoomBroker broker, MeterRegistry meterRegistry,
+                      @Value("${streaming-platform.remote-control.broker-channel-prefix:remote-control:}") String channelPrefix,
+                      @Value("${streaming-platform.remote-control.membership-refresh-ms:30000}") long refreshMs,
+                     @Value("${streaming-platform.remote-control.delivery-threads:4}") int deliveryThreads) {
+        this.broker = broker;
+        this.channelPrefix = channelPrefix;
+        this.refreshMs = refreshMs;
+        this.published = meterRegistry.counter("streaming.remote_control.broker.published");
+        this.received = meterRegistry.counter("streaming.remote_control.broker.received");
+        meterRegistry.gauge("streaming.remote_control.broker.remote_memberships", remote, Map::size);
+        this.deliveryExecutors = new ExecutorService[Math.max(1, deliveryThreads)];
+        for (int i = 0; i < deliveryExecutors.length; i++) {
+            String name = "remote-control-delivery-" + i;
+            deliveryExecutors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(DELIVERY_QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        broker.subscribe(membershipChannel(), this::onMembership);
+        broker.subscribe(nodeChannel(nodeId), this::onMessage);
+    }
+
+    public void setLocalDelivery(LocalDelivery localDelivery) {
+        this.localDelivery = localDelivery;
+    }
+
+    /**
+     * Called when the first peer with the role joins a room on this node ({@code present}) or the last one
+     * leaves it; repeated calls with the same state publish nothing. Must not be called while holding a
+     * room map lock: the broker may run listeners on the calling thread.
+     */
+    public void membershipChanged(String roomId, RemoteRole role, boolean present) {
+        Membership membership = new Membership(roomId, role);
+        if (present ? local.add(membership) : local.remove(membership)) {
+            publishMembership(present ? JOIN : LEAVE, membership);
+        }
+    }
+
+    /**
+     * Publishes a message to every other node that hosts peers with the role in the room.
+     */
+    public void forward(String roomId, RemoteRole role, RemoteFrame frame, boolean status) {
+        Map<String, Long> nodes = remote.get(new Membership(roomId, role));
+        if (nodes == null || nodes.isEmpty()) {
+            return;
+        }
+        byte[] message = encodeMessage(roomId, role, frame, status);
+        for (String node : nodes.keySet()) {
+            broker.publish(nodeChannel(node), message);
+            published.increment();
+        }
+    }
+
+    /**
+     * @return whether another node announced peers with the role in the room
+     */
+    public boolean hasRemoteMembers(String roomId, RemoteRole role) {
+        Map<String, Long> nodes = remote.get(new Membership(roomId, role));
+        return nodes != null && !nodes.isEmpty();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void hello() {
+        publishMembership(HELLO, null);
+    }
+
+    @Scheduled(fixedDelayString = "${streaming-platform.remote-control.membership-refresh-ms:30000}")
+    public void refresh() {
+        for (Membership membership : local) {
+            publishMembership(JOIN, membership);
+        }
+        long expired = System.currentTimeMillis() - 3 * refreshMs;
+        remote.values().forEach(nodes -> nodes.values().removeIf(seen -> seen < expired));
+        remote.values().removeIf(Map::isEmpty);
+    }
+
+    @PreDestroy
+    public void bye() {
+        publishMembership(BYE, null);
+        for (ExecutorService executor : deliveryExecutors) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void publishMembership(byte type, Membership membership) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeUTF(nodeId);
+            if (membership != null) {
+                out.writeUTF(membership.roomId());
+                out.writeByte(membership.role().ordinal());
+            }
+            broker.publish(membershipChannel(), bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void onMembership(byte[] message) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            byte type = in.readByte();
+            String node = in.readUTF();
+            if (nodeId.equals(node)) {
+                return;
+            }
+            switch (type) {
+                case JOIN -> remote.computeIfAbsent(readMembership(in), m -> new ConcurrentHashMap<>())
+                        .put(node, System.currentTimeMillis());
+                case LEAVE -> remote.computeIfPresent(readMembership(in), (m, nodes) -> {
+                    nodes.remove(node);
+                    return nodes.isEmpty() ? null : nodes;
+                });
+                case HELLO -> local.forEach(membership -> publishMembership(JOIN, membership));
+                case BYE -> {
+                    remote.values().forEach(nodes -> nodes.remove(node));
+                    remote.values().removeIf(Map::isEmpty);
+                }
+                default -> log.warn("Unknown remote control membership message type " + type);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Malformed remote control membership message: " + e.getMessage());
+        }
+    }
+
+    private void onMessage(byte[] message) {
+        received.increment();
+        LocalDelivery delivery = localDelivery;
+        if (delivery == null) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            if (in.readByte() != MESSAGE) {
+                return;
+            }
+            String roomId = in.readUTF();
+            RemoteRole role = RemoteRole.values()[in.readByte()];
+            boolean status = in.readBoolean();
+            byte kind = in.readByte();
+            byte[] payload = in.readAllBytes();
+            RemoteFrame frame = kind == BINARY_FRAME
+                    ? RemoteFrame.ofBinary(ByteBuffer.wrap(payload))
+                    : RemoteFrame.ofText(new String(payload, StandardCharsets.UTF_8));
+            deliver(delivery, roomId, role, frame, status);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Malformed remote control message from the broker: " + e.getMessage());
+        }
+    }
+
+    private void deliver(LocalDelivery delivery, String roomId, RemoteRole role, RemoteFrame frame, boolean status) {
+        ExecutorService executor = deliveryExecutors[Math.floorMod(roomId.hashCode(), deliveryExecutors.length)];
+        try {
+            executor.execute(() -> {
+                try {
+                    delivery.deliver(roomId, role, frame, status);
+                } catch (RuntimeException e) {
+                    log.warn("Delivering a remote control message to room " + roomId + " failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Remote control delivery queue is full, dropping a message to room " + roomId);
+        }
+    }
+
+    private static Membership readMembership(DataInputStream in) throws IOException {
+        String roomId = in.readUTF();
+        return new Membership(roomId, RemoteRole.values()[in.readByte()]);
+    }
+
+    private byte[] encodeMessage(String roomId, RemoteRole role, RemoteFrame frame, boolean status) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MESSAGE);
+            out.writeUTF(roomId);
+            out.writeByte(role.ordinal());
+            out.writeBoolean(status);
+            ByteBuffer binary = frame.binaryIfPresent();
+            if (binary != null) {
+                out.writeByte(BINARY_FRAME);
+                byte[] payload = new byte[binary.remaining()];
+                binary.duplicate().get(payload);
+                out.write(payload);
+            } else {
+                out.writeByte(TEXT_FRAME);
+                out.write(frame.textIfPresent().getBytes(StandardCharsets.UTF_8));
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String membershipChannel() {
+        return channelPrefix + "membership";
+    }
+
+    private String nodeChannel(String node) {
+        return channelPrefix + "node:" + node;
+    }
+}
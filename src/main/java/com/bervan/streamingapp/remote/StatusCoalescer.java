@@ -0,0 +1,88 @@
+package com.bervan.streamingapp.remote;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Limits TV status updates to a maximum rate per room and message type, keeping only the latest one.
+ *
+ * An update that arrives when the last one of its type went out at least one interval ago is emitted at
+ * once, so sparse updates get no extra latency. Updates arriving faster replace the pending one, which is
+ * emitted when the interval is over, on the emit executor: the scheduler only keeps time and never waits
+ * for a send. The pending updates live on the {@link RemoteRoom}, so they go away with the room.
+ */
+public class StatusCoalescer {
+
+    static final class Slot {
+        private long lastEmittedNanos;
+        private RemoteFrame pending;
+
+        private Slot(long lastEmittedNanos) {
+            this.lastEmittedNanos = lastEmittedNanos;
+        }
+    }
+
+    private final long intervalNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Executor emitExecutor;
+    private final BiConsumer<RemoteRoom, RemoteFrame> emitter;
+    private final Counter received;
+    private final Counter coalesced;
+
+    /**
+     * @param maxRate      maximum updates per second and type emitted for one room
+     * @param emitExecutor runs the emitter for delayed updates
+     * @param emitter      delivers an update to the remotes of the room
+     */
+    public StatusCoalescer(double maxRate, ScheduledExecutorService scheduler, Executor emitExecutor,
+                           BiConsumer<RemoteRoom, RemoteFrame> emitter, Counter received, Counter coalesced) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxRate);
+        this.scheduler = scheduler;
+        this.emitExecutor = emitExecutor;
+        this.emitter = emitter;
+        this.received = received;
+        this.coalesced = coalesced;
+    }
+
+    public void offer(RemoteRoom room, String type, RemoteFrame status) {
+        received.increment();
+        Slot slot = room.statusSlots().computeIfAbsent(type, t -> new Slot(System.nanoTime() - intervalNanos));
+        boolean emitNow = false;
+        long delay = -1;
+        synchronized (slot) {
+            long now = System.nanoTime();
+            if (slot.pending == null && now - slot.lastEmittedNanos >= intervalNanos) {
+                slot.lastEmittedNanos = now;
+                emitNow = true;
+            } else {
+                if (slot.pending != null) {
+                    coalesced.increment();
+                } else {
+                    delay = Math.max(0, slot.lastEmittedNanos + intervalNanos - now);
+                }
+                slot.pending = status;
+            }
+        }
+        if (emitNow) {
+            emitter.accept(room, status);
+        } else if (delay >= 0) {
+            scheduler.schedule(() -> emitExecutor.execute(() -> emitPending(room, slot)), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void emitPending(RemoteRoom room, Slot slot) {
+        RemoteFrame status;
+        synchronized (slot) {
+            status = slot.pending;
+            slot.pending = null;
+            slot.lastEmittedNanos = System.nanoTime();
+        }
+        if (status != null) {
+            emitter.accept(room, status);
+        }
+    }
+}
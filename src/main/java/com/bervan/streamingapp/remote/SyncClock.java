@@ -0,0 +1,94 @@
+package com.bervan.streamingapp.remote;
+
+import java.util.function.Predicate;
+
+/**
+ * Authoritative playback clock of a room in sync mode: whether the room plays and the position it has at a
+ * given server time. The state comes from the latest {@code PLAY_AT} / {@code PAUSE_AT} schedule, so every
+ * node that delivers the schedule ends up with the same clock.
+ *
+ * Switching sync mode on or off forgets the schedule; until the next one the clock is not anchored and the
+ * room plays as the TVs report.
+ *
+ * Changes that depend on the current state are made by one method call each ({@link #anchor},
+ * {@link #reschedule}), so concurrent commands, e.g. two {@code TOGGLE_PLAY}s, apply one after the other.
+ */
+public class SyncClock {
+    private boolean enabled;
+    private boolean anchored;
+    private boolean playing;
+    private long anchorServerMs;
+    private double anchorPosition;
+
+    /**
+     * State that starts at {@code serverMs}: paused at or playing from {@code position}.
+     */
+    public record State(boolean playing, long serverMs, double position) {}
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        this.anchored = false;
+        this.playing = false;
+    }
+
+    public synchronized boolean isAnchored() {
+        return anchored;
+    }
+
+    public synchronized boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Sets the state that starts at {@code serverMs}: paused at or playing from {@code position}.
+     */
+    public synchronized void schedule(boolean playing, long serverMs, double position) {
+        this.anchored = true;
+        this.playing = playing;
+        this.anchorServerMs = serverMs;
+        this.anchorPosition = position;
+    }
+
+    /**
+     * Sets the first state, unless sync mode is off or the clock is anchored already.
+     *
+     * @return whether the state was set
+     */
+    public synchronized boolean anchor(boolean playing, long serverMs, double position) {
+        if (!enabled || anchored) {
+            return false;
+        }
+        schedule(playing, serverMs, position);
+        return true;
+    }
+
+    /**
+     * Sets the state that starts at {@code serverMs}, derived from the state the clock has then.
+     *
+     * @param nextPlaying  whether the room plays afterwards, given whether it plays now
+     * @param seekPosition position to continue from, or {@code null} to continue from the current one
+     * @return the new state, or {@code null} when the clock is not anchored
+     */
+    public synchronized State reschedule(Predicate<Boolean> nextPlaying, long serverMs, Double seekPosition) {
+        if (!anchored) {
+            return null;
+        }
+        double position = seekPosition != null ? seekPosition : positionAt(serverMs);
+        schedule(nextPlaying.test(playing), serverMs, position);
+        return new State(playing, serverMs, position);
+    }
+
+    /**
+     * @return playback position in seconds at the given server time
+     */
+    public synchronized double positionAt(long serverMs) {
+        if (!playing || serverMs <= anchorServerMs) {
+            return anchorPosition;
+        }
+        return anchorPosition + (serverMs - anchorServerMs) / 1000.0;
+    }
+}
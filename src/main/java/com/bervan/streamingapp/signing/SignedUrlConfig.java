@@ -0,0 +1,26 @@
+package com.bervan.streamingapp.signing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Registers {@link SignedUrlFilter} for signed media paths only, before Spring Security.
+ */
+@Configuration
+public class SignedUrlConfig {
+
+    @Bean
+    public FilterRegistrationBean<SignedUrlFilter> signedUrlFilter(SignedUrlService signedUrlService,
+                                                                   MeterRegistry meterRegistry) {
+        SignedUrlFilter filter = new SignedUrlFilter(signedUrlService,
+                DispatcherServletAutoConfiguration.DEFAULT_DISPATCHER_SERVLET_BEAN_NAME, meterRegistry);
+        FilterRegistrationBean<SignedUrlFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns(SignedUrlService.SIGNED_PREFIX + "*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,122 @@
+package com.bervan.streamingapp.signing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+
+/**
+ * Serves {@code /storage/videos/signed/**} requests without the rest of the filter chain.
+ *
+ * The MAC is checked first; a valid request is forwarded with the unsigned path through the named dispatcher
+ * of the Spring MVC servlet. Named dispatches skip URL-mapped filters, so Spring Security, the session and
+ * the TV token lookup never run for it. The wrapped request reports no session. Anything that fails the check answers 403 without reaching the chain.
+ * Registered by {@link SignedUrlConfig} ahead of the security filters.
+ */
+public class SignedUrlFilter implements Filter {
+
+    private final SignedUrlService signedUrlService;
+    private final String servletName;
+    private final Counter valid;
+    private final Counter expired;
+    private final Counter invalid;
+
+    public SignedUrlFilter(SignedUrlService signedUrlService, String servletName,
+                           MeterRegistry meterRegistry) {
+        this.signedUrlService = signedUrlService;
+        this.servletName = servletName;
+        this.valid = meterRegistry.counter("streaming.signed_urls.requests", "result", "valid");
+        this.expired = meterRegistry.counter("streaming.signed_urls.requests", "result", "expired");
+        this.invalid = meterRegistry.counter("streaming.signed_urls.requests", "result", "invalid");
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        String uri = request.getRequestURI().substring(request.getContextPath().length());
+        if (!uri.startsWith(SignedUrlService.SIGNED_PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        SignedUrlService.Verified verified =
+                signedUrlService.verify(uri.substring(SignedUrlService.MEDIA_PREFIX.length()));
+        switch (verified.result()) {
+            case VALID -> valid.increment();
+            case EXPIRED -> expired.increment();
+            case INVALID -> invalid.increment();
+        }
+        if (verified.result() != SignedUrlService.Result.VALID) {
+            response.setStatus(HttpStatus.FORBIDDEN.value());
+            return;
+        }
+        RequestDispatcher dispatcher = request.getServletContext().getNamedDispatcher(servletName);
+        if (dispatcher == null) {
+            throw new ServletException("No servlet named " + servletName);
+        }
+        dispatcher.forward(new UnsignedRequest(request, verified.path()), response);
+    }
+
+    /**
+     * The signed request as if the unsigned path had been requested, without a session.
+     */
+    private static final class UnsignedRequest extends HttpServletRequestWrapper {
+        private final String path;
+
+        UnsignedRequest(HttpServletRequest request, String path) {
+            super(request);
+            this.path = path;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return getContextPath() + path;
+        }
+
+        @Override
+        public StringBuffer getRequestURL() {
+            HttpServletRequest request = (HttpServletRequest) getRequest();
+            StringBuffer url = request.getRequestURL();
+            url.setLength(url.length() - request.getRequestURI().length());
+            return url.append(getRequestURI());
+        }
+
+        @Override
+        public String getServletPath() {
+            return path;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return null;
+        }
+
+        @Override
+        public HttpSession getSession(boolean create) {
+            return create ? super.getSession(true) : null;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return getSession(true);
+        }
+
+        @Override
+        public String getRequestedSessionId() {
+            return null;
+        }
+    }
+}
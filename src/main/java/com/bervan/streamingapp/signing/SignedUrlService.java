@@ -0,0 +1,160 @@
+package com.bervan.streamingapp.signing;
+
+import com.bervan.logging.JsonLogger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Signs media URLs under {@code /storage/videos/} so they can be fetched without a session or token.
+ *
+ * {@code /storage/videos/hls/{id}/master.m3u8} becomes
+ * {@code /storage/videos/signed/{expires}/{mac}/hls/{id}/master.m3u8}. The MAC is an HMAC-SHA256 of the
+ * expiry and the scope, the first two path segments ({@code hls/{id}}), so it also covers every URL below
+ * that prefix: variant playlists and segments referenced relatively from the playlist keep the signed
+ * prefix and need no signature of their own. Expiry times are rounded up to whole
+ * {@code streaming-platform.signed-urls.rotation-seconds}, so the same URL is handed out for a while and
+ * a reverse proxy can cache its responses.
+ */
+@Service
+public class SignedUrlService {
+    public static final String MEDIA_PREFIX = "/storage/videos/";
+    public static final String SIGNED_PREFIX = MEDIA_PREFIX + "signed/";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final long rotationSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    public enum Result {VALID, EXPIRED, INVALID}
+
+    /**
+     * Target of a signed request.
+     *
+     * @param path unsigned path below the context path, still URL-encoded
+     */
+    public record Verified(Result result, String path) {}
+
+    public SignedUrlService(@Value("${streaming-platform.signed-urls.secret:}") String secret,
+                            @Value("${streaming-platform.signed-urls.ttl-seconds:21600}") long ttlSeconds,
+                            @Value("${streaming-platform.signed-urls.rotation-seconds:3600}") long rotationSeconds) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            // URLs then stop working on restart and are not accepted by other instances
+            log.warn("streaming-platform.signed-urls.secret is not set, using a random key");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.rotationSeconds = Math.max(1, rotationSeconds);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * @return the signed form of a {@code /storage/videos/} URL, other URLs unchanged
+     */
+    public String sign(String url) {
+        if (url == null || !url.startsWith(MEDIA_PREFIX) || url.startsWith(SIGNED_PREFIX)) {
+            return url;
+        }
+        String path = url.substring(MEDIA_PREFIX.length());
+        String scope = scope(path);
+        if (scope == null) {
+            return url;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        long expires = ((now + ttlSeconds + rotationSeconds - 1) / rotationSeconds) * rotationSeconds;
+        return SIGNED_PREFIX + expires + "/" + encode(mac(expires, scope)) + "/" + path;
+    }
+
+    public Map<String, String> sign(Map<String, String> urls) {
+        return urls.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> sign(e.getValue()),
+                (a, b) -> a, LinkedHashMap::new));
+    }
+
+    /**
+     * Checks a request path ({@code signed/{expires}/{mac}/...}, relative to {@link #MEDIA_PREFIX}).
+     */
+    public Verified verify(String signedPath) {
+        int expiresEnd = signedPath.indexOf('/', 7);
+        int macEnd = expiresEnd < 0 ? -1 : signedPath.indexOf('/', expiresEnd + 1);
+        if (!signedPath.startsWith("signed/") || macEnd < 0) {
+            return new Verified(Result.INVALID, null);
+        }
+        long expires;
+        try {
+            expires = Long.parseLong(signedPath.substring(7, expiresEnd));
+        } catch (NumberFormatException e) {
+            return new Verified(Result.INVALID, null);
+        }
+        String path = signedPath.substring(macEnd + 1);
+        String scope = scope(path);
+        Optional<byte[]> given = decode(signedPath.substring(expiresEnd + 1, macEnd));
+        if (scope == null || given.isEmpty() || !MessageDigest.isEqual(given.get(), mac(expires, scope))) {
+            return new Verified(Result.INVALID, null);
+        }
+        if (expires < System.currentTimeMillis() / 1000) {
+            return new Verified(Result.EXPIRED, null);
+        }
+        return new Verified(Result.VALID, MEDIA_PREFIX + path);
+    }
+
+    // first two segments ("hls/{id}"); "." and ".." are refused so a scope cannot be escaped
+    private static String scope(String path) {
+        int first = path.indexOf('/');
+        if (first <= 0) {
+            return null;
+        }
+        int second = path.indexOf('/', first + 1);
+        String scope = second < 0 ? path : path.substring(0, second);
+        String id = scope.substring(first + 1);
+        if (id.isEmpty() || id.equals(".") || id.equals("..") || id.contains("%") || path.contains("/../")
+                || path.endsWith("/..")) {
+            return null;
+        }
+        return scope;
+    }
+
+    private byte[] mac(long expires, String scope) {
+        Mac mac = macs.get();
+        return mac.doFinal((expires + "\n" + scope).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static Optional<byte[]> decode(String value) {
+        try {
+            return Optional.of(Base64.getUrlDecoder().decode(value));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
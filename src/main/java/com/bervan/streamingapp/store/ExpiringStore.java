@@ -0,0 +1,204 @@
+package com.bervan.streamingapp.store;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory key-value store whose entries expire after a per-entry time to live.
+ *
+ * Expired entries are removed by a hashed timing wheel: every entry sits in the bucket of the first tick at
+ * or after its deadline, and each tick only looks at its own bucket, so expiry costs O(1) per entry however
+ * many entries are never looked up again. Lookups never return an expired entry, even between ticks.
+ * The number of entries is capped; {@link #put} of a new key beyond the cap throws
+ * {@link CapacityExceededException} instead of evicting live entries. Create stores with {@link ExpiringStores}.
+ */
+public final class ExpiringStore<K, V> {
+
+    /**
+     * Thrown when a new entry would exceed the cap of a store.
+     */
+    public static class CapacityExceededException extends RuntimeException {
+        public CapacityExceededException(String store, int maxEntries) {
+            super("Store " + store + " is full (" + maxEntries + " entries)");
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long deadline;
+        final int bucket;
+
+        Node(K key, V value, long deadline, int bucket) {
+            this.key = key;
+            this.value = value;
+            this.deadline = deadline;
+            this.bucket = bucket;
+        }
+    }
+
+    private final String name;
+    private final long tickMs;
+    private final int maxEntries;
+    private final Map<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+    private final Set<Node<K, V>>[] wheel;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Counter expired;
+    private final Counter rejected;
+    private long lastTick;
+
+    @SuppressWarnings("unchecked")
+    ExpiringStore(String name, long tickMs, int wheelSize, int maxEntries, Counter expired, Counter rejected) {
+        this.name = name;
+        this.tickMs = tickMs;
+        this.maxEntries = maxEntries;
+        this.expired = expired;
+        this.rejected = rejected;
+        this.wheel = new Set[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.lastTick = System.currentTimeMillis() / tickMs;
+    }
+
+    /**
+     * Stores the value, replacing the entry of the key and its expiry if there is one.
+     *
+     * @throws CapacityExceededException when the key is new and the store is full
+     */
+    public void put(K key, V value, long ttlMs) {
+        long deadline = System.currentTimeMillis() + ttlMs;
+        Node<K, V> node = new Node<>(key, value, deadline, bucketOf(deadline));
+        boolean[] full = {false};
+        entries.compute(key, (k, old) -> {
+            if (old == null) {
+                if (size.incrementAndGet() > maxEntries) {
+                    size.decrementAndGet();
+                    full[0] = true;
+                    return null;
+                }
+            } else {
+                wheel[old.bucket].remove(old);
+            }
+            wheel[node.bucket].add(node);
+            return node;
+        });
+        if (full[0]) {
+            rejected.increment();
+            throw new CapacityExceededException(name, maxEntries);
+        }
+    }
+
+    /**
+     * Replaces the value of a live entry, keeping its expiry.
+     *
+     * @return {@code false} when the key has no live entry
+     */
+    public boolean replace(K key, V value) {
+        long now = System.currentTimeMillis();
+        boolean[] replaced = {false};
+        entries.computeIfPresent(key, (k, old) -> {
+            if (old.deadline <= now) {
+                return old; // left for the wheel or the next lookup
+            }
+            Node<K, V> node = new Node<>(key, value, old.deadline, old.bucket);
+            wheel[old.bucket].remove(old);
+            wheel[node.bucket].add(node);
+            replaced[0] = true;
+            return node;
+        });
+        return replaced[0];
+    }
+
+    public Optional<V> get(K key) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        Node<K, V> node = entries.get(key);
+        if (node == null) {
+            return Optional.empty();
+        }
+        if (node.deadline <= System.currentTimeMillis()) {
+            expire(node);
+            return Optional.empty();
+        }
+        return Optional.of(node.value);
+    }
+
+    /**
+     * Removes the entry; for one-time values.
+     *
+     * @return the value when the entry was live
+     */
+    public Optional<V> remove(K key) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        Node<K, V> node = entries.get(key);
+        if (node == null || !unlink(node)) {
+            return Optional.empty();
+        }
+        if (node.deadline <= System.currentTimeMillis()) {
+            expired.increment();
+            return Optional.empty();
+        }
+        return Optional.of(node.value);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    long getTickMs() {
+        return tickMs;
+    }
+
+    /**
+     * Expires the entries of all ticks since the last call; called by {@link ExpiringStores} every tick.
+     */
+    void advance() {
+        long now = System.currentTimeMillis();
+        long tick = now / tickMs;
+        long from;
+        synchronized (this) {
+            from = Math.max(lastTick + 1, tick - wheel.length + 1);
+            lastTick = tick;
+        }
+        for (long t = from; t <= tick; t++) {
+            for (Node<K, V> node : wheel[(int) (t % wheel.length)]) {
+                if (node.deadline <= now) {
+                    expire(node);
+                }
+            }
+        }
+    }
+
+    private void expire(Node<K, V> node) {
+        if (unlink(node)) {
+            expired.increment();
+        }
+    }
+
+    private boolean unlink(Node<K, V> node) {
+        if (!entries.remove(node.key, node)) {
+            return false;
+        }
+        wheel[node.bucket].remove(node);
+        size.decrementAndGet();
+        return true;
+    }
+
+    // bucket of the first tick at or after the deadline, so the entry is due when its bucket comes up
+    private int bucketOf(long deadline) {
+        return (int) (((deadline + tickMs - 1) / tickMs) % wheel.length);
+    }
+}
@@ -0,0 +1,52 @@
+package com.bervan.streamingapp.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates {@link ExpiringStore}s and advances their timing wheels on one shared thread.
+ *
+ * Every store exports {@code streaming.expiring_store.entries}, {@code .expired} and {@code .rejected}
+ * (entries refused because the store was full), tagged with the store name.
+ */
+@Component
+public class ExpiringStores {
+    private static final int WHEEL_SIZE = 512;
+
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "expiring-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ExpiringStores(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param tickMs     expiry granularity; entries are removed at most one tick after their deadline. A
+     *                   wheel turn is 512 ticks, longer time to live just means more turns in the bucket.
+     * @param maxEntries hard cap on live and not yet removed entries
+     */
+    public <K, V> ExpiringStore<K, V> create(String name, long tickMs, int maxEntries) {
+        Tags tags = Tags.of("store", name);
+        ExpiringStore<K, V> store = new ExpiringStore<>(name, tickMs, WHEEL_SIZE, maxEntries,
+                meterRegistry.counter("streaming.expiring_store.expired", tags),
+                meterRegistry.counter("streaming.expiring_store.rejected", tags));
+        meterRegistry.gauge("streaming.expiring_store.entries", tags, store, ExpiringStore::size);
+        ticker.scheduleAtFixedRate(store::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        return store;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+}
@@ -1,5 +1,8 @@
 package com.bervan.streamingapp.tv;
 
+import com.bervan.streamingapp.store.ExpiringStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
@@ -13,6 +16,7 @@ import java.util.Map;
  * 2. User enters this code in the React app (TV Pairing view).
  * 3. Backend calls PairingService.confirmPairing(code, token) from TvPairingProxyController.
  * 4. TV polls GET /api/tv/pair/token/{pairCode} until it receives {"status":"READY","token":"..."}
+ * 5. On sign out TV calls POST /api/tv/pair/revoke with its token in X-Auth-Token.
  *
  * The token is an opaque string defined and validated by the main application.
  * TV page only stores it in memory and uses it to call other APIs.
@@ -22,17 +26,25 @@ import java.util.Map;
 public class PairingApiController {
 
     private final PairingService pairingService;
+    private final TvAccessTokenService tvAccessTokenService;
 
-    public PairingApiController(PairingService pairingService) {
+    public PairingApiController(PairingService pairingService, TvAccessTokenService tvAccessTokenService) {
         this.pairingService = pairingService;
+        this.tvAccessTokenService = tvAccessTokenService;
     }
 
     @PostMapping("/start")
-    public Map<String, String> startPairing() {
-        String code = pairingService.startPairing();
+    public ResponseEntity<Map<String, String>> startPairing() {
+        String code;
+        try {
+            code = pairingService.startPairing();
+        } catch (ExpiringStore.CapacityExceededException e) {
+            // too many pending pairings, the TV retries later
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
         Map<String, String> response = new HashMap<>();
         response.put("pairCode", code);
-        return response;
+        return ResponseEntity.ok(response);
     }
 
     @GetMapping("/token/{pairCode}")
@@ -47,5 +59,17 @@ public class PairingApiController {
                 });
         return response;
     }
-}
 
+    /**
+     * Sign the TV out: the token it sends in X-Auth-Token stops working immediately.
+     */
+    @PostMapping("/revoke")
+    public ResponseEntity<Void> revoke(@RequestHeader(value = "X-Auth-Token", required = false) String token) {
+        if (token == null || token.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return tvAccessTokenService.revoke(token)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
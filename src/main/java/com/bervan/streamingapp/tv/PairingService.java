@@ -1,11 +1,12 @@
 package com.bervan.streamingapp.tv;
 
+import com.bervan.streamingapp.store.ExpiringStore;
+import com.bervan.streamingapp.store.ExpiringStores;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.security.SecureRandom;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * In-memory pairing storage between TV devices and tokens issued inside the main application.
@@ -25,43 +26,44 @@ public class PairingService {
 
     private final SecureRandom random = new SecureRandom();
 
-    private final Map<String, String> codeToToken = new ConcurrentHashMap<>();
-    private final Map<String, Long> codeExpiry = new ConcurrentHashMap<>();
+    /**
+     * @param token {@code null} until the pairing is confirmed
+     */
+    private record Pairing(String token) {
+    }
+
+    private final ExpiringStore<String, Pairing> pairings;
+
+    public PairingService(ExpiringStores expiringStores,
+                          @Value("${streaming-platform.tv-pairing.max-codes:10000}") int maxCodes) {
+        this.pairings = expiringStores.create("tv-pairing", 1000, maxCodes);
+    }
 
+    /**
+     * @throws ExpiringStore.CapacityExceededException when too many pairings are pending
+     */
     public String startPairing() {
         String code = generateCode();
-        long expiresAt = System.currentTimeMillis() + DEFAULT_TTL_MILLIS;
-        codeExpiry.put(code, expiresAt);
-        // clear any previous token (if any) to make sure this code is fresh
-        codeToToken.remove(code);
+        // replaces any previous pairing with this code to make sure it is fresh
+        pairings.put(code, new Pairing(null), DEFAULT_TTL_MILLIS);
         return code;
     }
 
+    /**
+     * @return whether {@code code} was started and has not expired yet
+     */
+    public boolean isPending(String code) {
+        return code != null && pairings.get(code).isPresent();
+    }
+
     public void confirmPairing(String code, String token) {
-        if (!isValid(code)) {
+        if (code == null || !pairings.replace(code, new Pairing(token))) {
             throw new IllegalArgumentException("Pairing code expired or unknown");
         }
-        codeToToken.put(code, token);
     }
 
     public Optional<String> getToken(String code) {
-        if (!isValid(code)) {
-            return Optional.empty();
-        }
-        return Optional.ofNullable(codeToToken.get(code));
-    }
-
-    private boolean isValid(String code) {
-        Long expiry = codeExpiry.get(code);
-        if (expiry == null) {
-            return false;
-        }
-        if (expiry < System.currentTimeMillis()) {
-            codeExpiry.remove(code);
-            codeToToken.remove(code);
-            return false;
-        }
-        return true;
+        return pairings.get(code).map(Pairing::token);
     }
 
     private String generateCode() {
@@ -1,14 +1,14 @@
 package com.bervan.streamingapp.tv;
 
 import com.bervan.common.user.User;
+import com.bervan.streamingapp.store.ExpiringStore;
+import com.bervan.streamingapp.store.ExpiringStores;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * In-memory access token storage for TV clients.
@@ -21,10 +21,17 @@ import java.util.concurrent.ConcurrentHashMap;
 public class TvAccessTokenService {
 
     private static final long DEFAULT_TTL_SECONDS = 60 * 60 * 24; // 24 hour
-    private final Map<String, Entry> tokenStore = new ConcurrentHashMap<>();
+    private final ExpiringStore<String, UUID> tokenStore;
+
+    public TvAccessTokenService(ExpiringStores expiringStores,
+                                @Value("${streaming-platform.tv-tokens.max-entries:100000}") int maxEntries) {
+        this.tokenStore = expiringStores.create("tv-tokens", 60_000, maxEntries);
+    }
 
     /**
      * Create a token for currently logged in user.
+     *
+     * @throws ExpiringStore.CapacityExceededException when too many tokens are active
      */
     public String createTokenForCurrentUser() {
         Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
@@ -38,8 +45,7 @@ public class TvAccessTokenService {
             throw new IllegalStateException("No logged in user, cannot create TV access token");
         }
         String token = UUID.randomUUID().toString();
-        Instant expires = Instant.now().plusSeconds(DEFAULT_TTL_SECONDS);
-        tokenStore.put(token, new Entry(userId, expires));
+        tokenStore.put(token, userId, DEFAULT_TTL_SECONDS * 1000);
         return token;
     }
 
@@ -50,25 +56,15 @@ public class TvAccessTokenService {
         if (token == null || token.isBlank()) {
             return Optional.empty();
         }
-        Entry entry = tokenStore.get(token);
-        if (entry == null) {
-            return Optional.empty();
-        }
-        if (entry.expiresAt.isBefore(Instant.now())) {
-            tokenStore.remove(token);
-            return Optional.empty();
-        }
-        return Optional.of(entry.userId);
+        return tokenStore.get(token);
     }
 
-    private static class Entry {
-        final UUID userId;
-        final Instant expiresAt;
-
-        Entry(UUID userId, Instant expiresAt) {
-            this.userId = userId;
-            this.expiresAt = expiresAt;
-        }
+    /**
+     * Revoke a token, e.g. when the TV signs out. Requests carrying it are no longer authenticated.
+     *
+     * @return {@code false} when the token was unknown or already expired
+     */
+    public boolean revoke(String token) {
+        return tokenStore.remove(token).isPresent();
     }
 }
-
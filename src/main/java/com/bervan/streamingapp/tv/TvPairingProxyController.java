@@ -1,5 +1,7 @@
 package com.bervan.streamingapp.tv;
 
+import com.bervan.streamingapp.store.ExpiringStore;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -16,8 +18,9 @@ import java.util.Map;
  * - User is logged in in the main app (React frontend).
  * - User enters pairing code from TV screen into the main app UI.
  * - Main app calls POST /api/tv/pair/assign with {"pairCode": "..."}.
- * - Controller generates an access token for current user and stores it
- *   in PairingService so that TV page can pick it up.
+ * - Controller checks the code, generates an access token for current user and stores it
+ *   in PairingService so that TV page can pick it up. Unknown codes never mint a token, and
+ *   a token whose code expired in the meantime is revoked again.
  */
 @RestController
 @RequestMapping("/api/tv/pair")
@@ -38,14 +41,24 @@ public class TvPairingProxyController {
         if (pairCode == null || pairCode.isBlank()) {
             return ResponseEntity.badRequest().body("pairCode is required");
         }
+        String code = pairCode.trim();
+        if (!pairingService.isPending(code)) {
+            return ResponseEntity.badRequest().body("Pairing code not found or expired");
+        }
 
         // Create token for currently logged-in user
-        String token = tvAccessTokenService.createTokenForCurrentUser();
+        String token;
+        try {
+            token = tvAccessTokenService.createTokenForCurrentUser();
+        } catch (ExpiringStore.CapacityExceededException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many active TV tokens");
+        }
 
         try {
-            pairingService.confirmPairing(pairCode.trim(), token);
+            pairingService.confirmPairing(code, token);
             return ResponseEntity.ok().build();
         } catch (IllegalArgumentException ex) {
+            tvAccessTokenService.revoke(token);
             return ResponseEntity.badRequest().body("Pairing code not found or expired");
         }
     }
@@ -2,10 +2,15 @@ package com.bervan.streamingapp.tv;
 
 import com.bervan.common.user.User;
 import com.bervan.common.user.UserRepository;
+import com.bervan.streamingapp.store.ExpiringStore;
+import com.bervan.streamingapp.store.ExpiringStores;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -21,17 +26,33 @@ import java.util.UUID;
  *
  * This allows TV browser (second app) to call the main API using only the token
  * issued by the main server. No login form on the TV app is required.
+ *
+ * TVs send the token with every HLS segment and range request, so loaded users are cached per token for
+ * {@code streaming-platform.tv-tokens.principal-cache-ttl-ms}. The token itself is still resolved on every
+ * request (in memory), so a cached user is dropped as soon as its token expires or is revoked.
  */
 @Component
 public class TvTokenAuthenticationFilter extends OncePerRequestFilter {
 
     private final TvAccessTokenService tvAccessTokenService;
     private final UserRepository userRepository;
+    private final ExpiringStore<String, User> principalCache;
+    private final long principalCacheTtlMs;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
 
     public TvTokenAuthenticationFilter(TvAccessTokenService tvAccessTokenService,
-                                       UserRepository userRepository) {
+                                       UserRepository userRepository,
+                                       ExpiringStores expiringStores,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${streaming-platform.tv-tokens.principal-cache-ttl-ms:60000}") long principalCacheTtlMs,
+                                       @Value("${streaming-platform.tv-tokens.principal-cache-size:10000}") int principalCacheSize) {
         this.tvAccessTokenService = tvAccessTokenService;
         this.userRepository = userRepository;
+        this.principalCache = expiringStores.create("tv-principals", 1000, principalCacheSize);
+        this.principalCacheTtlMs = principalCacheTtlMs;
+        this.cacheHits = meterRegistry.counter("streaming.tv_auth.principal_cache", "result", "hit");
+        this.cacheMisses = meterRegistry.counter("streaming.tv_auth.principal_cache", "result", "miss");
     }
 
     @Override
@@ -45,17 +66,34 @@ public class TvTokenAuthenticationFilter extends OncePerRequestFilter {
             String token = request.getHeader("X-Auth-Token");
             Optional<UUID> userIdOpt = tvAccessTokenService.resolveUserId(token);
             if (userIdOpt.isPresent()) {
-                UUID userId = userIdOpt.get();
-                Optional<User> userOpt = userRepository.findById(userId);
-                userOpt.ifPresent(user -> {
+                resolveUser(token, userIdOpt.get()).ifPresent(user -> {
                     UsernamePasswordAuthenticationToken auth =
                             new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
                     SecurityContextHolder.getContext().setAuthentication(auth);
                 });
+            } else if (token != null) {
+                principalCache.remove(token);
             }
         }
 
         filterChain.doFilter(request, response);
     }
-}
 
+    private Optional<User> resolveUser(String token, UUID userId) {
+        Optional<User> cached = principalCache.get(token).filter(user -> userId.equals(user.getId()));
+        if (cached.isPresent()) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isPresent() && principalCacheTtlMs > 0) {
+            try {
+                principalCache.put(token, userOpt.get(), principalCacheTtlMs);
+            } catch (ExpiringStore.CapacityExceededException ignored) {
+                // cache full, this token is looked up again next time
+            }
+        }
+        return userOpt;
+    }
+}
@@ -0,0 +1,159 @@
+package com.bervan.streamingapp.watch;
+
+import com.bervan.streamingapp.ContinueWatchingController.ContinueWatchingItemDto;
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+import com.bervan.streamingapp.WatchDetails;
+import com.bervan.streamingapp.WatchDetailsRepository;
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.catalog.CatalogSnapshot;
+import com.bervan.streamingapp.catalog.CatalogVideoIndex;
+import com.bervan.streamingapp.media.VideoProbeService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * "Continue watching" feed: the user's most recently watched videos, one per production, resolved
+ * through the catalog video index. A nearly finished episode is replaced by the next one.
+ *
+ * Feeds are cached per user and dropped on every {@link WatchProgressRecordedEvent} of that user
+ * and whenever the catalog snapshot changes.
+ */
+@Service
+public class ContinueWatchingService {
+    private static final int MAX_ITEMS = 50;
+
+    private record CachedFeed(long catalogVersion, List<ContinueWatchingItemDto> items) {}
+
+    private final WatchDetailsRepository watchDetailsRepository;
+    private final WatchProgressBuffer watchProgressBuffer;
+    private final CatalogService catalogService;
+    private final VideoProbeService videoProbeService;
+    private final Map<UUID, CachedFeed> feeds;
+    // builds in progress per user; a progress event of that user removes the marker so the build is not cached
+    private final Map<UUID, Object> builds = new HashMap<>();
+
+    @Value("${streaming-platform.continue-watching.nearly-finished-ratio:0.92}")
+    private double nearlyFinishedRatio;
+
+    public ContinueWatchingService(WatchDetailsRepository watchDetailsRepository, WatchProgressBuffer watchProgressBuffer,
+                                   CatalogService catalogService, VideoProbeService videoProbeService,
+                                   @Value("${streaming-platform.continue-watching.cache-size:1000}") int cacheSize) {
+        this.watchDetailsRepository = watchDetailsRepository;
+        this.watchProgressBuffer = watchProgressBuffer;
+        this.catalogService = catalogService;
+        this.videoProbeService = videoProbeService;
+        this.feeds = new LinkedHashMap<>(Math.min(cacheSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedFeed> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public List<ContinueWatchingItemDto> getFeed(UUID userId, int limit) {
+        CatalogSnapshot snapshot = catalogService.current();
+        CachedFeed cached;
+        synchronized (feeds) {
+            cached = feeds.get(userId);
+        }
+        if (cached == null || cached.catalogVersion() != snapshot.getVersion()) {
+            Object build = new Object();
+            synchronized (feeds) {
+                builds.put(userId, build);
+            }
+            try {
+                cached = new CachedFeed(snapshot.getVersion(), buildFeed(userId, snapshot));
+            } catch (RuntimeException e) {
+                synchronized (feeds) {
+                    builds.remove(userId, build);
+                }
+                throw e;
+            }
+            synchronized (feeds) {
+                // a progress event of this user during the build may have made the feed stale already
+                if (builds.remove(userId, build)) {
+                    feeds.put(userId, cached);
+                }
+            }
+        }
+        List<ContinueWatchingItemDto> items = cached.items();
+        return items.size() > limit ? items.subList(0, limit) : items;
+    }
+
+    @EventListener
+    public void onWatchProgressRecorded(WatchProgressRecordedEvent event) {
+        synchronized (feeds) {
+            builds.remove(event.userId());
+            feeds.remove(event.userId());
+        }
+    }
+
+    private List<ContinueWatchingItemDto> buildFeed(UUID userId, CatalogSnapshot snapshot) {
+        // buffered positions are newer than anything in the database
+        Map<UUID, WatchDetails> byVideo = new HashMap<>();
+        for (WatchDetails watchDetails : watchDetailsRepository
+                .findByUserIdAndDeletedFalseAndModificationDateNotNullOrderByModificationDateDesc(userId, PageRequest.of(0, MAX_ITEMS * 2))) {
+            byVideo.putIfAbsent(watchDetails.getVideoId(), watchDetails);
+        }
+        for (WatchDetails pending : watchProgressBuffer.getPendingForUser(userId)) {
+            byVideo.put(pending.getVideoId(), pending);
+        }
+        List<WatchDetails> recent = new ArrayList<>(byVideo.values());
+        recent.sort(Comparator.comparing(WatchDetails::getModificationDate,
+                Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder())));
+
+        CatalogVideoIndex videoIndex = snapshot.getVideoIndex();
+        Set<String> seenProductions = new HashSet<>();
+        List<ContinueWatchingItemDto> items = new ArrayList<>();
+        for (WatchDetails watchDetails : recent) {
+            if (items.size() >= MAX_ITEMS) {
+                break;
+            }
+            CatalogVideoIndex.VideoEntry entry = videoIndex.get(watchDetails.getVideoId().toString());
+            if (entry == null || watchDetails.getCurrentVideoTime() <= 0 || !seenProductions.add(entry.productionName())) {
+                continue;
+            }
+
+            double position = watchDetails.getCurrentVideoTime();
+            boolean upNext = false;
+            Double duration = durationOf(entry);
+            if (duration != null && position >= duration * nearlyFinishedRatio) {
+                CatalogVideoIndex.VideoEntry next = entry.nextEpisodeId() != null ? videoIndex.get(entry.nextEpisodeId()) : null;
+                if (next == null) {
+                    continue; // finished the movie or the last episode
+                }
+                entry = next;
+                position = 0;
+                upNext = true;
+                duration = durationOf(next);
+            }
+
+            ProductionSummaryDto production = snapshot.getSummary(entry.productionName());
+            items.add(new ContinueWatchingItemDto(
+                    entry.productionName(),
+                    production != null ? production.title() : entry.productionName(),
+                    production != null ? production.posterUrl() : null,
+                    entry.videoFolderId(),
+                    entry.videoName(),
+                    entry.seasonName(),
+                    position,
+                    duration,
+                    upNext,
+                    watchDetails.getModificationDate()
+            ));
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Without a probed duration an episode never counts as nearly finished.
+     */
+    private Double durationOf(CatalogVideoIndex.VideoEntry entry) {
+        return videoProbeService.getDurationSeconds(entry.videoFolderId());
+    }
+}
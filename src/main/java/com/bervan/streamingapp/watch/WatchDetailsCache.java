@@ -0,0 +1,167 @@
+package com.bervan.streamingapp.watch;
+
+import com.bervan.streamingapp.WatchDetails;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of {@link WatchDetails} per (user, video).
+ *
+ * Misses are single-flight: concurrent lookups of the same key wait for one loader call instead
+ * of each querying (and possibly inserting) on their own.
+ *
+ * Keys known to have no row are remembered as well (bounded the same way), so videos a user never
+ * played are not queried again on every page; a {@link WatchProgressRecordedEvent} or a cached row
+ * for the key drops that marker.
+ *
+ * Nothing tells this cache about rows another node writes, so entries expire: rows after
+ * {@code watch-details.ttl-ms} and absent markers, which would hide a row created elsewhere, after the
+ * much shorter {@code watch-details.absent-ttl-ms}.
+ */
+@Component
+public class WatchDetailsCache {
+
+    record Key(UUID userId, UUID videoId) {}
+
+    private record Cached(WatchDetails details, long expiresAtNanos) {}
+
+    private final Map<Key, Cached> entries;
+    // expiry deadline per key, in System.nanoTime()
+    private final Map<Key, Long> absent;
+    private final Map<Key, CompletableFuture<WatchDetails>> inFlight = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final long absentTtlNanos;
+
+    public WatchDetailsCache(@Value("${streaming-platform.watch-details.cache-size:10000}") int maxSize,
+                             @Value("${streaming-platform.watch-details.ttl-ms:300000}") long ttlMs,
+                             @Value("${streaming-platform.watch-details.absent-ttl-ms:30000}") long absentTtlMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.absentTtlNanos = TimeUnit.MILLISECONDS.toNanos(absentTtlMs);
+        this.entries = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.absent = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public WatchDetails getIfPresent(UUID userId, UUID videoId) {
+        synchronized (entries) {
+            return cached(new Key(userId, videoId));
+        }
+    }
+
+    public WatchDetails getOrLoad(UUID userId, UUID videoId, Supplier<WatchDetails> loader) {
+        Key key = new Key(userId, videoId);
+        WatchDetails cached;
+        synchronized (entries) {
+            cached = cached(key);
+        }
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<WatchDetails> mine = new CompletableFuture<>();
+        CompletableFuture<WatchDetails> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            // a load that finished between our cache check and putIfAbsent has already filled the cache
+            synchronized (entries) {
+                cached = cached(key);
+            }
+            if (cached != null) {
+                mine.complete(cached);
+                return cached;
+            }
+            WatchDetails loaded = loader.get();
+            put(loaded);
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public void put(WatchDetails watchDetails) {
+        Key key = new Key(watchDetails.getUserId(), watchDetails.getVideoId());
+        synchronized (entries) {
+            entries.put(key, new Cached(watchDetails, System.nanoTime() + ttlNanos));
+            absent.remove(key);
+        }
+    }
+
+    /**
+     * @return {@code true} when the user has no row for the video, as far as this cache knows
+     */
+    public boolean isKnownAbsent(UUID userId, UUID videoId) {
+        Key key = new Key(userId, videoId);
+        synchronized (entries) {
+            Long expiresAtNanos = absent.get(key);
+            if (expiresAtNanos == null) {
+                return false;
+            }
+            if (System.nanoTime() - expiresAtNanos >= 0) {
+                absent.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    public void markAbsent(UUID userId, UUID videoId) {
+        Key key = new Key(userId, videoId);
+        synchronized (entries) {
+            if (cached(key) == null) {
+                absent.put(key, System.nanoTime() + absentTtlNanos);
+            }
+        }
+    }
+
+    @EventListener
+    public void onWatchProgressRecorded(WatchProgressRecordedEvent event) {
+        synchronized (entries) {
+            absent.remove(new Key(event.userId(), event.videoId()));
+        }
+    }
+
+    /**
+     * Call while holding the {@code entries} lock.
+     */
+    private WatchDetails cached(Key key) {
+        Cached cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (System.nanoTime() - cached.expiresAtNanos() >= 0) {
+            entries.remove(key);
+            return null;
+        }
+        return cached.details();
+    }
+}
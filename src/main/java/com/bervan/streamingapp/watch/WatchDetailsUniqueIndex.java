@@ -0,0 +1,115 @@
+package com.bervan.streamingapp.watch;
+
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.WatchDetails;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Adds the unique (userId, videoId) index of {@link WatchDetails} to existing databases.
+ *
+ * The entity declares the constraint, but a schema update cannot create it on a table that already holds
+ * duplicate rows, which concurrent inserts from several nodes could produce before it existed. On startup,
+ * before requests are served, this removes the duplicates, keeping the non-deleted, most recently modified row
+ * of each pair, and creates the index unless a unique index on the two columns already exists. Both steps are
+ * idempotent; if they fail, e.g. because another node is doing the same, the next startup tries again.
+ */
+@Component
+public class WatchDetailsUniqueIndex {
+    static final String INDEX_NAME = "uk_watch_details_user_video";
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final DataSource dataSource;
+
+    public WatchDetailsUniqueIndex(EntityManager entityManager, TransactionTemplate transactionTemplate,
+                                   DataSource dataSource) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    void ensureUniqueIndex() {
+        try {
+            AbstractEntityPersister persister = (AbstractEntityPersister) entityManager.getEntityManagerFactory()
+                    .unwrap(SessionFactoryImplementor.class)
+                    .getMappingMetamodel()
+                    .getEntityDescriptor(WatchDetails.class);
+            String table = persister.getTableName();
+            String userColumn = persister.getPropertyColumnNames("userId")[0];
+            String videoColumn = persister.getPropertyColumnNames("videoId")[0];
+            if (hasUniqueIndex(table, userColumn, videoColumn)) {
+                return;
+            }
+
+            Integer removed = transactionTemplate.execute(status -> removeDuplicates());
+            transactionTemplate.executeWithoutResult(status -> entityManager.createNativeQuery(
+                    "CREATE UNIQUE INDEX " + INDEX_NAME + " ON " + table + " (" + userColumn + ", " + videoColumn + ")")
+                    .executeUpdate());
+            log.info("Created unique index {} on {}, removed {} duplicate WatchDetails rows", INDEX_NAME, table, removed);
+        } catch (RuntimeException | SQLException e) {
+            log.warn("Could not create the unique (userId, videoId) index of WatchDetails, retrying on next startup", e);
+        }
+    }
+
+    private boolean hasUniqueIndex(String table, String userColumn, String videoColumn) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String storedTable = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT)
+                    : metaData.storesLowerCaseIdentifiers() ? table.toLowerCase(Locale.ROOT) : table;
+            Map<String, Set<String>> columnsByIndex = new HashMap<>();
+            try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(),
+                    storedTable, true, false)) {
+                while (indexes.next()) {
+                    String index = indexes.getString("INDEX_NAME");
+                    String column = indexes.getString("COLUMN_NAME");
+                    if (index != null && column != null) {
+                        columnsByIndex.computeIfAbsent(index, key -> new HashSet<>()).add(column.toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            return columnsByIndex.containsValue(Set.of(userColumn.toLowerCase(Locale.ROOT), videoColumn.toLowerCase(Locale.ROOT)));
+        }
+    }
+
+    private int removeDuplicates() {
+        List<Object[]> pairs = entityManager.createQuery(
+                        "SELECT w.userId, w.videoId FROM WatchDetails w GROUP BY w.userId, w.videoId HAVING COUNT(w) > 1",
+                        Object[].class)
+                .getResultList();
+        int removed = 0;
+        for (Object[] pair : pairs) {
+            List<WatchDetails> rows = entityManager.createQuery(
+                            "SELECT w FROM WatchDetails w WHERE w.userId = :userId AND w.videoId = :videoId "
+                                    + "ORDER BY w.deleted, w.modificationDate DESC NULLS LAST, w.creationDate DESC NULLS LAST",
+                            WatchDetails.class)
+                    .setParameter("userId", (UUID) pair[0])
+                    .setParameter("videoId", (UUID) pair[1])
+                    .getResultList();
+            for (WatchDetails duplicate : rows.subList(1, rows.size())) {
+                entityManager.remove(duplicate);
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
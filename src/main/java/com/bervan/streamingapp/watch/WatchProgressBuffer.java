@@ -0,0 +1,237 @@
+package com.bervan.streamingapp.watch;
+
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.WatchDetails;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for watch progress.
+ *
+ * Players report their position every few seconds; only the latest position per (user, video)
+ * matters, so updates are coalesced in memory and written on a timer, when the buffer reaches its
+ * size threshold (on the flush thread, not the reporting request) and on shutdown. Each chunk of
+ * {@code batch-size} entries is one bulk {@code UPDATE ... WHERE id IN (...)} of the position and
+ * modification date, without loading or merging the entities; rows are created before their first
+ * report, so an update always has a row to hit. Reads of a buffered entry should go through
+ * {@link #applyPending(WatchDetails)} so they see the latest reported position.
+ */
+@Service
+public class WatchProgressBuffer {
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+
+    private record Key(UUID userId, UUID videoId) {}
+
+    private record PendingProgress(WatchDetails details, double currentVideoTime, LocalDateTime modificationDate,
+                                   long queuedAtNanos) {}
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<Key, PendingProgress> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Map<Integer, String> bulkUpdates = new ConcurrentHashMap<>();
+    private final AtomicBoolean thresholdFlushQueued = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "watch-progress-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Timer flushLag;
+    private final DistributionSummary batchSize;
+
+    @Value("${streaming-platform.watch-progress.flush-threshold:500}")
+    private int flushThreshold;
+    @Value("${streaming-platform.watch-progress.batch-size:100}")
+    private int jdbcBatchSize;
+
+    public WatchProgressBuffer(EntityManager entityManager, TransactionTemplate transactionTemplate,
+                               MeterRegistry meterRegistry, ApplicationEventPublisher eventPublisher) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.flushLag = Timer.builder("streaming.watch_progress.flush.lag")
+                .description("Time between the first buffered update of an entry and its write")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("streaming.watch_progress.flush.batch_size")
+                .description("Entries written per flush")
+                .register(meterRegistry);
+        meterRegistry.gauge("streaming.watch_progress.pending", pending, Map::size);
+    }
+
+    /**
+     * Buffers the position; the entity is updated in place so the caller keeps seeing its own value.
+     */
+    public void record(WatchDetails watchDetails, double currentVideoTime) {
+        LocalDateTime now = LocalDateTime.now();
+        watchDetails.setCurrentVideoTime(currentVideoTime);
+        watchDetails.setModificationDate(now);
+        long nowNanos = System.nanoTime();
+        pending.merge(key(watchDetails), new PendingProgress(watchDetails, currentVideoTime, now, nowNanos),
+                // keep the time of the first unflushed update so the lag metric covers the whole wait
+                (previous, latest) -> new PendingProgress(latest.details(), latest.currentVideoTime(),
+                        latest.modificationDate(), previous.queuedAtNanos()));
+        eventPublisher.publishEvent(new WatchProgressRecordedEvent(watchDetails.getUserId(), watchDetails.getVideoId(),
+                currentVideoTime));
+
+        if (pending.size() >= flushThreshold && thresholdFlushQueued.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                thresholdFlushQueued.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Copies a buffered, not yet written position onto an entity loaded from the database.
+     */
+    public WatchDetails applyPending(WatchDetails watchDetails) {
+        PendingProgress progress = pending.get(key(watchDetails));
+        if (progress != null) {
+            watchDetails.setCurrentVideoTime(progress.currentVideoTime());
+            watchDetails.setModificationDate(progress.modificationDate());
+        }
+        return watchDetails;
+    }
+
+    public Optional<Double> getPendingTime(UUID userId, UUID videoId) {
+        PendingProgress progress = pending.get(new Key(userId, videoId));
+        return progress != null ? Optional.of(progress.currentVideoTime()) : Optional.empty();
+    }
+
+    /**
+     * Applies and drops the buffered position of the entity; use before saving it directly so the
+     * buffer does not overwrite that write later with a stale copy.
+     */
+    public WatchDetails takePending(WatchDetails watchDetails) {
+        PendingProgress progress = pending.remove(key(watchDetails));
+        if (progress != null) {
+            watchDetails.setCurrentVideoTime(progress.currentVideoTime());
+            watchDetails.setModificationDate(progress.modificationDate());
+        }
+        return watchDetails;
+    }
+
+    /**
+     * Buffered entities of one user, with the buffered position applied.
+     */
+    public List<WatchDetails> getPendingForUser(UUID userId) {
+        List<WatchDetails> result = new ArrayList<>();
+        for (Map.Entry<Key, PendingProgress> entry : pending.entrySet()) {
+            if (entry.getKey().userId().equals(userId)) {
+                result.add(applyPending(entry.getValue().details()));
+            }
+        }
+        return result;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @Scheduled(fixedDelayString = "${streaming-platform.watch-progress.flush-interval-ms:5000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushExecutor.shutdown();
+        log.info("Flushing {} buffered watch progress entries before shutdown", pending.size());
+        flush();
+    }
+
+    private void flushLocked() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingProgress> drained = new ArrayList<>(pending.size());
+        for (Key key : new ArrayList<>(pending.keySet())) {
+            PendingProgress progress = pending.remove(key);
+            if (progress != null) {
+                drained.add(progress);
+            }
+        }
+
+        int written = 0;
+        for (int from = 0; from < drained.size(); from += jdbcBatchSize) {
+            List<PendingProgress> chunk = drained.subList(from, Math.min(from + jdbcBatchSize, drained.size()));
+            try {
+                writeChunk(chunk);
+                written += chunk.size();
+                long now = System.nanoTime();
+                for (PendingProgress progress : chunk) {
+                    flushLag.record(Duration.ofNanos(now - progress.queuedAtNanos()));
+                }
+            } catch (RuntimeException e) {
+                log.error("Could not write {} watch progress entries, they will be retried", chunk.size(), e);
+                // newer updates received meanwhile win over the failed ones
+                for (PendingProgress progress : chunk) {
+                    pending.putIfAbsent(key(progress.details()), progress);
+                }
+            }
+        }
+        batchSize.record(written);
+    }
+
+    private void writeChunk(List<PendingProgress> chunk) {
+        String jpql = bulkUpdates.computeIfAbsent(chunk.size(), WatchProgressBuffer::bulkUpdate);
+        List<UUID> ids = new ArrayList<>(chunk.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            Query query = entityManager.createQuery(jpql);
+            for (int i = 0; i < chunk.size(); i++) {
+                PendingProgress progress = chunk.get(i);
+                query.setParameter("id" + i, progress.details().getId());
+                query.setParameter("time" + i, progress.currentVideoTime());
+                query.setParameter("date" + i, progress.modificationDate());
+                ids.add(progress.details().getId());
+            }
+            query.setParameter("ids", ids);
+            query.executeUpdate();
+        });
+    }
+
+    // one statement for a whole chunk: SET x = CASE id WHEN :id0 THEN :x0 ... END WHERE id IN :ids
+    private static String bulkUpdate(int size) {
+        StringBuilder time = new StringBuilder("CASE w.id");
+        StringBuilder date = new StringBuilder("CASE w.id");
+        for (int i = 0; i < size; i++) {
+            time.append(" WHEN :id").append(i).append(" THEN :time").append(i);
+            date.append(" WHEN :id").append(i).append(" THEN :date").append(i);
+        }
+        return "UPDATE WatchDetails w SET w.currentVideoTime = " + time + " END, w.modificationDate = " + date
+                + " END WHERE w.id IN :ids";
+    }
+
+    private static Key key(WatchDetails watchDetails) {
+        return new Key(watchDetails.getUserId(), watchDetails.getVideoId());
+    }
+}
@@ -0,0 +1,8 @@
+package com.bervan.streamingapp.watch;
+
+import java.util.UUID;
+
+/**
+ * Published when a player reported a new position, before it is written to the database.
+ */
+public record WatchProgressRecordedEvent(UUID userId, UUID videoId, double currentVideoTime) {}
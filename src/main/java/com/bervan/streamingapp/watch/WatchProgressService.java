@@ -0,0 +1,70 @@
+package com.bervan.streamingapp.watch;
+
+import com.bervan.streamingapp.WatchDetails;
+import com.bervan.streamingapp.WatchDetailsRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Watch positions of one user for many videos at once, e.g. for the progress bars of a season page.
+ *
+ * Positions come from the write-behind buffer and the {@link WatchDetailsCache} first; the rest is
+ * read with one {@code userId = ? AND videoId IN (...)} query, whose rows then warm the cache. Videos
+ * the query finds no row for are cached as absent until the user starts playing them.
+ */
+@Service
+public class WatchProgressService {
+    private final WatchDetailsRepository watchDetailsRepository;
+    private final WatchDetailsCache watchDetailsCache;
+    private final WatchProgressBuffer watchProgressBuffer;
+
+    public WatchProgressService(WatchDetailsRepository watchDetailsRepository, WatchDetailsCache watchDetailsCache,
+                                WatchProgressBuffer watchProgressBuffer) {
+        this.watchDetailsRepository = watchDetailsRepository;
+        this.watchDetailsCache = watchDetailsCache;
+        this.watchProgressBuffer = watchProgressBuffer;
+    }
+
+    /**
+     * @return video id to current position in seconds; videos never played by the user are absent
+     */
+    public Map<String, Double> getProgress(UUID userId, Collection<String> videoIds) {
+        Map<String, Double> progress = new LinkedHashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (String videoId : videoIds) {
+            UUID videoUuid;
+            try {
+                videoUuid = UUID.fromString(videoId);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            Optional<Double> pending = watchProgressBuffer.getPendingTime(userId, videoUuid);
+            if (pending.isPresent()) {
+                progress.put(videoId, pending.get());
+                continue;
+            }
+            WatchDetails cached = watchDetailsCache.getIfPresent(userId, videoUuid);
+            if (cached != null) {
+                progress.put(videoId, cached.getCurrentVideoTime());
+            } else if (!watchDetailsCache.isKnownAbsent(userId, videoUuid)) {
+                missing.add(videoUuid);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (WatchDetails watchDetails : watchDetailsRepository.findByUserIdAndDeletedFalseAndVideoIdIn(userId, missing)) {
+                watchDetailsCache.put(watchDetails);
+                progress.putIfAbsent(watchDetails.getVideoId().toString(), watchDetails.getCurrentVideoTime());
+            }
+            for (UUID videoUuid : missing) {
+                // skip videos whose first position was reported while the query ran
+                if (!progress.containsKey(videoUuid.toString())
+                        && watchProgressBuffer.getPendingTime(userId, videoUuid).isEmpty()) {
+                    watchDetailsCache.markAbsent(userId, videoUuid);
+                }
+            }
+        }
+        return progress;
+    }
+}
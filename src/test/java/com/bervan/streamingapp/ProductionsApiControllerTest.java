@@ -0,0 +1,70 @@
+package com.bervan.streamingapp;
+
+import com.bervan.streamingapp.catalog.CatalogService;
+import com.bervan.streamingapp.config.ProductionData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductionsApiControllerTest {
+
+    private ProductionsApiController controller;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, ProductionData> productions = new HashMap<>();
+        for (String name : new String[]{"alpha", "beta", "gamma"}) {
+            ProductionData pd = new ProductionData();
+            pd.setProductionName(name);
+            productions.put(name, pd);
+        }
+        CatalogService catalogService = new CatalogService(productions, new ObjectMapper(), null, event -> {
+        });
+        controller = new ProductionsApiController(productions, null, catalogService, null, null, null);
+    }
+
+    @Test
+    void pageRequestedWithItsOwnEtagIsNotModified() {
+        ResponseEntity<?> first = controller.listProductions(2, null, "title", "-title", null, null);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        String etag = first.getHeaders().getETag();
+        assertNotNull(etag);
+
+        ResponseEntity<?> second = controller.listProductions(2, null, "title", "-title", etag, null);
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+
+        ResponseEntity<?> otherPage = controller.listProductions(1, null, "title", "-title", etag, null);
+        assertEquals(HttpStatus.OK, otherPage.getStatusCode());
+    }
+
+    @Test
+    void gzipListingHasItsOwnEtag() {
+        ResponseEntity<?> identity = controller.listProductions(null, null, null, null, null, null);
+        ResponseEntity<?> gzip = controller.listProductions(null, null, null, null, null, "gzip, deflate");
+        assertNotEquals(identity.getHeaders().getETag(), gzip.getHeaders().getETag());
+
+        ResponseEntity<?> revalidated = controller.listProductions(null, null, null, null,
+                gzip.getHeaders().getETag(), "gzip");
+        assertEquals(HttpStatus.NOT_MODIFIED, revalidated.getStatusCode());
+        ResponseEntity<?> crossed = controller.listProductions(null, null, null, null,
+                identity.getHeaders().getETag(), "gzip");
+        assertEquals(HttpStatus.OK, crossed.getStatusCode());
+    }
+
+    @Test
+    void cursorWithNegativePositionIsRejected() {
+        String cursor = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("title|-5|unknown".getBytes(StandardCharsets.UTF_8));
+        ResponseEntity<?> response = controller.listProductions(2, cursor, null, null, null, null);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+}
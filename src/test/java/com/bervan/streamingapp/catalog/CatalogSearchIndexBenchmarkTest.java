@@ -0,0 +1,117 @@
+package com.bervan.streamingapp.catalog;
+
+import com.bervan.logging.JsonLogger;
+import com.bervan.streamingapp.ProductionsApiController.ProductionSummaryDto;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Search latency over a synthetic catalog of 10k productions with a mix of exact, prefix and
+ * typo queries. Percentiles are logged and p99 must stay within {@link #P99_LIMIT_MS}. Tagged so that it
+ * only runs with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class CatalogSearchIndexBenchmarkTest {
+    private static final int PRODUCTIONS = 10_000;
+    private static final int VOCABULARY = 3_000;
+    private static final int QUERIES = 1_000;
+    // generous enough for a loaded CI machine, still far below a request budget
+    private static final double P99_LIMIT_MS = 5;
+
+    private final JsonLogger log = JsonLogger.getLogger(getClass(), "streaming");
+
+    @Test
+    void searchLatencyOverTenThousandProductions() {
+        Random random = new Random(42);
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 4 + random.nextInt(7);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+
+        List<ProductionSummaryDto> summaries = new ArrayList<>(PRODUCTIONS);
+        for (int i = 0; i < PRODUCTIONS; i++) {
+            String title = words[random.nextInt(VOCABULARY)] + " " + words[random.nextInt(VOCABULARY)] + " " + i;
+            StringBuilder description = new StringBuilder();
+            for (int j = 0; j < 30; j++) {
+                description.append(words[random.nextInt(VOCABULARY)]).append(' ');
+            }
+            summaries.add(new ProductionSummaryDto("p" + i, title, "MOVIE", description.toString(), 7.0, 2000, 2001,
+                    List.of(words[random.nextInt(40)]), List.of(words[random.nextInt(200)]), List.of("en"),
+                    "Poland", "/poster", "MP4"));
+        }
+        // generated words are at most 10 letters, so only this production contains the word
+        summaries.add(new ProductionSummaryDto("kaleidoscope", "Kaleidoscope", "MOVIE", "", 7.0, 2000, 2001,
+                List.of(), List.of(), List.of("en"), "Poland", "/poster", "MP4"));
+
+        long start = System.nanoTime();
+        CatalogSearchIndex index = CatalogSearchIndex.build(summaries, null);
+        long built = System.nanoTime();
+        CatalogSearchIndex.build(summaries, index);
+        long rebuilt = System.nanoTime();
+        log.info("build {} ms, incremental rebuild {} ms, {} terms",
+                (built - start) / 1_000_000, (rebuilt - built) / 1_000_000, index.termCount());
+
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < queries.length; i++) {
+            String word = words[random.nextInt(VOCABULARY)];
+            int n = word.length();
+            queries[i] = switch (i % 3) {
+                case 0 -> word;
+                case 1 -> word.substring(0, 3);
+                // last two letters swapped
+                default -> word.substring(0, n - 2) + word.charAt(n - 1) + word.charAt(n - 2);
+            };
+        }
+        for (int warmup = 0; warmup < 20; warmup++) {
+            for (String query : queries) {
+                index.search(query, 20);
+            }
+        }
+        long[] latencies = new long[queries.length * 5];
+        int n = 0;
+        for (int round = 0; round < 5; round++) {
+            for (String query : queries) {
+                long queryStart = System.nanoTime();
+                index.search(query, 20);
+                latencies[n++] = System.nanoTime() - queryStart;
+            }
+        }
+        Arrays.sort(latencies);
+        double p99Ms = latencies[n * 99 / 100] / 1e6;
+        log.info("{} queries: p50 {} us, p90 {} us, p99 {} us", n,
+                latencies[n / 2] / 1000, latencies[n * 9 / 10] / 1000, latencies[n * 99 / 100] / 1000);
+        assertTrue(p99Ms < P99_LIMIT_MS, "p99 search latency was " + p99Ms + " ms");
+
+        String title = summaries.get(1234).title();
+        String word = title.substring(0, title.indexOf(' '));
+        assertFalse(index.search(word, 20).isEmpty());
+        assertFalse(index.search(word.substring(0, 3), 20).isEmpty());
+        assertTrue(index.search(title, 5).stream().anyMatch(hit -> hit.ordinal() == ordinalOf(summaries, "p1234")),
+                "full title finds its production");
+
+        List<CatalogSearchIndex.Hit> typoHits = index.search("kaleidoscoep", 1);
+        assertFalse(typoHits.isEmpty(), "typo finds a production");
+        assertEquals(ordinalOf(summaries, "kaleidoscope"), typoHits.get(0).ordinal(), "typo finds the production it misspells");
+    }
+
+    private static int ordinalOf(List<ProductionSummaryDto> summaries, String productionName) {
+        for (int i = 0; i < summaries.size(); i++) {
+            if (summaries.get(i).productionName().equals(productionName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
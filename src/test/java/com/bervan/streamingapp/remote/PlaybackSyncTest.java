@@ -0,0 +1,193 @@
+package com.bervan.streamingapp.remote;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Includes a simulation of two TVs with skewed clocks, asymmetric network delays and drifting playback,
+ * which bounds the sync error the room achieves.
+ */
+class PlaybackSyncTest {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private SimpleMeterRegistry meterRegistry;
+    private PlaybackSync sync;
+    private RemoteRoom room;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sync = new PlaybackSync(meterRegistry, JSON, 300, 5, 0.05, 20, 1000, 5000);
+        room = new RemoteRoom("1");
+        room.getClock().setEnabled(true);
+    }
+
+    @Test
+    void commandsBeforeTheClockIsAnchoredAreRelayedUnchanged() {
+        assertNull(sync.schedule(room, "SEEK", command("SEEK", "100")));
+        assertNull(sync.schedule(room, "PLAY", command("PLAY", null)));
+        assertFalse(room.getClock().isAnchored());
+    }
+
+    @Test
+    void seekKeepsTheRoomPlaying() throws Exception {
+        RemoteConnection tv = tv("tv", 0, 10, 10);
+        long now = System.currentTimeMillis();
+        assertTrue(sync.anchor(room, tv, report(40, now, true)));
+
+        JsonNode schedule = JSON.readTree(sync.schedule(room, "SEEK", command("SEEK", "100")).json());
+
+        assertEquals(PlaybackSync.PLAY_AT, schedule.path("action").asText());
+        assertEquals(100.0, schedule.path("data").path("position").asDouble());
+        assertTrue(room.getClock().isPlaying());
+    }
+
+    @Test
+    void seekWhilePausedStaysPaused() throws Exception {
+        RemoteConnection tv = tv("tv", 0, 10, 10);
+        assertTrue(sync.anchor(room, tv, report(40, System.currentTimeMillis(), false)));
+
+        JsonNode schedule = JSON.readTree(sync.schedule(room, "SEEK", command("SEEK", "100")).json());
+
+        assertEquals(PlaybackSync.PAUSE_AT, schedule.path("action").asText());
+        assertFalse(room.getClock().isPlaying());
+    }
+
+    @Test
+    void concurrentTogglesApplyOneAfterAnother() throws Exception {
+        RemoteConnection tv = tv("tv", 0, 10, 10);
+        assertTrue(sync.anchor(room, tv, report(40, System.currentTimeMillis(), false)));
+
+        int threads = 8;
+        int togglesPerThread = 20_001;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> togglers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread toggler = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < togglesPerThread; i++) {
+                    assertNotNull(sync.schedule(room, "TOGGLE_PLAY", command("TOGGLE_PLAY", null)));
+                }
+            });
+            toggler.start();
+            togglers.add(toggler);
+        }
+        start.countDown();
+        for (Thread toggler : togglers) {
+            toggler.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        // an even number of toggles ends where it started
+        assertFalse(room.getClock().isPlaying());
+    }
+
+    @Test
+    void syncErrorOfDriftingTvsConverges() throws Exception {
+        long[] offsetMs = {120_000, -3_500};
+        long[] upMs = {40, 15};
+        long[] downMs = {20, 15};
+        // playback speed of each TV relative to real time
+        double[] naturalRate = {1.003, 0.998};
+        RemoteConnection[] tvs = {tv("tv0", offsetMs[0], upMs[0], downMs[0]), tv("tv1", offsetMs[1], upMs[1], downMs[1])};
+        for (int i = 0; i < tvs.length; i++) {
+            // the offset estimate is off by at most half the delay asymmetry
+            assertEquals(offsetMs[i], tvs[i].getClock().offsetMs(), Math.abs(upMs[i] - downMs[i]) / 2.0 + 1);
+        }
+
+        // tv0 reports first and anchors the room at its position
+        long anchorServerMs = System.currentTimeMillis();
+        assertTrue(sync.anchor(room, tvs[0], report(100, anchorServerMs + offsetMs[0], true)));
+        RemoteFrame start = sync.current(room);
+
+        double[] position = new double[tvs.length];
+        double[] rate = {1, 1};
+        double[] lastMs = new double[tvs.length];
+        for (int i = 0; i < tvs.length; i++) {
+            JsonNode data = JSON.readTree(sync.personalize(tvs[i], start).json()).path("data");
+            // the TV starts when its own clock shows localTime
+            lastMs[i] = data.path("localTime").asLong() - offsetMs[i];
+            position[i] = data.path("position").asDouble();
+        }
+
+        double nowMs = Math.max(lastMs[0], lastMs[1]);
+        double maxLateErrorMs = 0;
+        int resyncs = 0;
+        for (int second = 1; second <= 120; second++) {
+            nowMs += 1000;
+            for (int i = 0; i < tvs.length; i++) {
+                position[i] += (nowMs - lastMs[i]) / 1000 * naturalRate[i] * rate[i];
+                lastMs[i] = nowMs;
+                RemoteFrame correction = sync.onReport(room, tvs[i],
+                        report(position[i], (long) nowMs + offsetMs[i], true));
+                if (correction != null) {
+                    JsonNode message = JSON.readTree(correction.json());
+                    if (PlaybackSync.SYNC_RATE.equals(message.path("action").asText())) {
+                        rate[i] = message.path("data").path("rate").asDouble();
+                    } else {
+                        resyncs++;
+                    }
+                }
+                if (second > 60) {
+                    maxLateErrorMs = Math.max(maxLateErrorMs, Math.abs(tvs[i].getSyncError()));
+                }
+            }
+        }
+
+        DistributionSummary error = meterRegistry.find("streaming.remote_control.sync.error").summary();
+        assertEquals(240L, error.count());
+        assertTrue(error.mean() < 40, "mean sync error was " + error.mean() + " ms");
+        assertEquals(0, resyncs);
+        assertTrue(maxLateErrorMs < 40, "sync error after 60 s was " + maxLateErrorMs + " ms");
+    }
+
+    /**
+     * A TV whose clock is {@code offsetMs} ahead of the server, after a burst of time sync exchanges in which
+     * later samples queued a little longer.
+     */
+    private RemoteConnection tv(String id, long offsetMs, long upMs, long downMs) {
+        WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "isOpen" -> true;
+                    default -> null;
+                });
+        RemoteConnection tv = new RemoteConnection(session, RemoteRole.TV, room.getId(), 1000, 65536,
+                meterRegistry.counter("dropped"), meterRegistry.counter("closed"));
+        room.add(tv);
+        for (int k = 0; k < 4; k++) {
+            long t3 = System.currentTimeMillis();
+            long t0 = t3 - upMs - downMs - 1 - k * 7L;
+            long t1 = t0 + downMs + k * 7L + offsetMs;
+            long t2 = t1 + 1;
+            sync.onTimeSync(tv, RemoteFrame.ofText("{\"action\":\"TIME_SYNC\",\"data\":{\"t0\":" + t0
+                    + ",\"t1\":" + t1 + ",\"t2\":" + t2 + "}}"));
+        }
+        return tv;
+    }
+
+    private static RemoteFrame command(String action, String data) {
+        return RemoteFrame.ofText("{\"action\":\"" + action + "\"" + (data != null ? ",\"data\":" + data : "") + "}");
+    }
+
+    private static RemoteFrame report(double position, long localTime, boolean playing) {
+        return RemoteFrame.ofText("{\"action\":\"SYNC_REPORT\",\"data\":{\"position\":" + position
+                + ",\"localTime\":" + localTime + ",\"playing\":" + playing + "}}");
+    }
+}
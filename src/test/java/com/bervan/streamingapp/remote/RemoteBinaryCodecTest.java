@@ -0,0 +1,56 @@
+package com.bervan.streamingapp.remote;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteBinaryCodecTest {
+
+    @Test
+    void compactFramesRoundTrip() {
+        assertRoundTrip("{\"action\":\"PLAY\",\"roomId\":\"42\"}", 2);
+        assertRoundTrip("{\"action\":\"SEEK\",\"data\":12.5,\"roomId\":\"7\"}", 10);
+        assertRoundTrip("{\"action\":\"VOLUME\",\"data\":0.5}", 6);
+        assertRoundTrip("{\"action\":\"PAUSE\"}", 2);
+    }
+
+    @Test
+    void nullFieldsAreDropped() {
+        byte[] frame = RemoteBinaryCodec.encode("{\"action\":\"PLAY\",\"target\":null,\"data\":null,\"roomId\":null}");
+        assertEquals(2, frame.length);
+        assertEquals("{\"action\":\"PLAY\"}", RemoteBinaryCodec.toJson(ByteBuffer.wrap(frame)));
+    }
+
+    @Test
+    void messagesOutsideTheLayoutAreEnveloped() {
+        for (String json : new String[]{
+                "{\"action\":\"PLAY\",\"target\":\"player\"}",
+                "{\"action\":\"SEEK\",\"data\":\"12\"}",
+                "{\"action\":\"NAVIGATE\",\"data\":\"/home\"}",
+                "{\"action\":\"PLAY\",\"roomId\":\"abc\"}",
+                "{\"action\":\"PLAY\",\"roomId\":\"007\"}",
+                "{\"action\":\"PLAY\",\"extra\":1}",
+                "{\"action\":\"PLAY\",\"data\":{\"a\":1}}",
+                "not json"}) {
+            byte[] frame = RemoteBinaryCodec.encode(json);
+            assertEquals(RemoteBinaryCodec.JSON_ENVELOPE, frame[0], json);
+            assertEquals(json, RemoteBinaryCodec.toJson(ByteBuffer.wrap(frame)));
+        }
+    }
+
+    @Test
+    void malformedFramesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RemoteBinaryCodec.validate(ByteBuffer.allocate(0)));
+        assertThrows(IllegalArgumentException.class, () -> RemoteBinaryCodec.validate(ByteBuffer.wrap(new byte[]{0x04, 0x01})));
+        assertThrows(IllegalArgumentException.class, () -> RemoteBinaryCodec.validate(ByteBuffer.wrap(new byte[]{0x7F, 0x00})));
+        assertThrows(IllegalArgumentException.class, () -> RemoteBinaryCodec.validate(ByteBuffer.wrap(new byte[]{0x01, 0x00, 0x00})));
+    }
+
+    private static void assertRoundTrip(String json, int expectedSize) {
+        byte[] frame = RemoteBinaryCodec.encode(json);
+        assertEquals(expectedSize, frame.length, json);
+        assertEquals(json, RemoteBinaryCodec.toJson(ByteBuffer.wrap(frame)));
+    }
+}
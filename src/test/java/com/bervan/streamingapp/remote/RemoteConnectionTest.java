@@ -0,0 +1,88 @@
+package com.bervan.streamingapp.remote;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteConnectionTest {
+
+    @Test
+    void unansweredWrittenPingIsMissed() {
+        List<WebSocketMessage<?>> written = new CopyOnWriteArrayList<>();
+        RemoteConnection connection = connection(written, null);
+
+        connection.ping();
+        assertEquals(1, written.size());
+        assertTrue(connection.expectPong(2));
+        assertFalse(connection.expectPong(2));
+    }
+
+    @Test
+    void pongResetsTheCount() {
+        List<WebSocketMessage<?>> written = new CopyOnWriteArrayList<>();
+        RemoteConnection connection = connection(written, null);
+
+        connection.ping();
+        assertTrue(connection.expectPong(2));
+        assertTrue(connection.pong(new PongMessage(((PingMessage) written.get(0)).getPayload())) >= 0);
+        assertTrue(connection.expectPong(2));
+        assertTrue(connection.expectPong(2));
+    }
+
+    @Test
+    void pingQueuedBehindASlowWriteIsNotMissed() throws Exception {
+        List<WebSocketMessage<?>> written = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        RemoteConnection connection = connection(written, release);
+
+        Thread slowWriter = new Thread(() -> connection.send(RemoteFrame.ofText("{\"action\":\"PLAY\"}"), false));
+        slowWriter.start();
+        while (written.isEmpty()) {
+            Thread.sleep(1);
+        }
+        // queued, the other thread is still inside the first write
+        connection.ping();
+        for (int interval = 0; interval < 5; interval++) {
+            assertTrue(connection.expectPong(2));
+        }
+
+        release.countDown();
+        slowWriter.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(2, written.size());
+        assertTrue(connection.expectPong(2));
+        assertFalse(connection.expectPong(2));
+    }
+
+    /**
+     * @param release when set, the first write blocks until it is counted down
+     */
+    private static RemoteConnection connection(List<WebSocketMessage<?>> written, CountDownLatch release) {
+        WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(RemoteConnectionTest.class.getClassLoader(),
+                new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> "tv";
+                    case "isOpen" -> true;
+                    case "sendMessage" -> {
+                        written.add((WebSocketMessage<?>) args[0]);
+                        if (release != null && written.size() == 1) {
+                            release.await();
+                        }
+                        yield null;
+                    }
+                    default -> null;
+                });
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new RemoteConnection(session, RemoteRole.TV, "1", 60_000, 65536,
+                meterRegistry.counter("dropped"), meterRegistry.counter("closed"));
+    }
+}
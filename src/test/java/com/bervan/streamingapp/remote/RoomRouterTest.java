@@ -0,0 +1,130 @@
+package com.bervan.streamingapp.remote;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes connected through {@link InProcessRoomBroker}.
+ */
+class RoomRouterTest {
+
+    private record Delivery(String roomId, RemoteRole role, RemoteFrame frame, boolean status) {}
+
+    private final List<InProcessRoomBroker> brokers = new ArrayList<>();
+    private final List<RoomRouter> routers = new ArrayList<>();
+    private String channelPrefix;
+    private RoomRouter nodeA;
+    private RoomRouter nodeB;
+    private BlockingQueue<Delivery> deliveredToB;
+
+    @BeforeEach
+    void setUp() {
+        // the in-process channels are shared by the whole JVM
+        channelPrefix = "test-" + UUID.randomUUID() + ":";
+        nodeA = router();
+        nodeB = router();
+        deliveredToB = new LinkedBlockingQueue<>();
+        nodeB.setLocalDelivery((roomId, role, frame, status) -> deliveredToB.add(new Delivery(roomId, role, frame, status)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        routers.forEach(RoomRouter::bye);
+        brokers.forEach(InProcessRoomBroker::close);
+    }
+
+    @Test
+    void membershipIsAnnouncedToOtherNodes() {
+        assertFalse(nodeA.hasRemoteMembers("1", RemoteRole.TV));
+
+        nodeB.membershipChanged("1", RemoteRole.TV, true);
+        assertTrue(nodeA.hasRemoteMembers("1", RemoteRole.TV));
+        assertFalse(nodeA.hasRemoteMembers("1", RemoteRole.REMOTE));
+        assertFalse(nodeA.hasRemoteMembers("2", RemoteRole.TV));
+        // a node does not count itself
+        assertFalse(nodeB.hasRemoteMembers("1", RemoteRole.TV));
+
+        nodeB.membershipChanged("1", RemoteRole.TV, false);
+        assertFalse(nodeA.hasRemoteMembers("1", RemoteRole.TV));
+    }
+
+    @Test
+    void messagesReachOnlyNodesHostingTheRole() throws Exception {
+        nodeB.membershipChanged("1", RemoteRole.TV, true);
+
+        nodeA.forward("1", RemoteRole.REMOTE, RemoteFrame.ofText("{\"action\":\"STATUS\"}"), true);
+        nodeA.forward("2", RemoteRole.TV, RemoteFrame.ofText("{\"action\":\"PLAY\"}"), false);
+        nodeA.forward("1", RemoteRole.TV, RemoteFrame.ofText("{\"action\":\"PAUSE\"}"), false);
+
+        Delivery delivery = deliveredToB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(delivery);
+        assertEquals("1", delivery.roomId());
+        assertEquals(RemoteRole.TV, delivery.role());
+        assertFalse(delivery.status());
+        assertEquals("{\"action\":\"PAUSE\"}", delivery.frame().json());
+        assertNull(deliveredToB.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void binaryFramesStayBinary() throws Exception {
+        nodeB.membershipChanged("7", RemoteRole.TV, true);
+        byte[] seek = RemoteBinaryCodec.encode("{\"action\":\"SEEK\",\"data\":12.5,\"roomId\":\"7\"}");
+
+        nodeA.forward("7", RemoteRole.TV, RemoteFrame.ofBinary(ByteBuffer.wrap(seek)), false);
+
+        Delivery delivery = deliveredToB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(delivery);
+        ByteBuffer binary = delivery.frame().binaryIfPresent();
+        assertNotNull(binary);
+        byte[] received = new byte[binary.remaining()];
+        binary.get(received);
+        assertArrayEquals(seek, received);
+    }
+
+    @Test
+    void messagesOfARoomKeepTheirOrder() throws Exception {
+        nodeB.membershipChanged("1", RemoteRole.TV, true);
+        for (int i = 0; i < 200; i++) {
+            nodeA.forward("1", RemoteRole.TV, RemoteFrame.ofText("{\"action\":\"SEEK\",\"data\":" + i + "}"), false);
+        }
+        for (int i = 0; i < 200; i++) {
+            Delivery delivery = deliveredToB.poll(5, TimeUnit.SECONDS);
+            assertNotNull(delivery);
+            assertEquals("{\"action\":\"SEEK\",\"data\":" + i + "}", delivery.frame().json());
+        }
+    }
+
+    @Test
+    void helloMakesNodesAnnounceAgainAndByeForgetsThem() {
+        nodeB.membershipChanged("1", RemoteRole.TV, true);
+        RoomRouter nodeC = router();
+        assertFalse(nodeC.hasRemoteMembers("1", RemoteRole.TV));
+
+        nodeC.hello();
+        assertTrue(nodeC.hasRemoteMembers("1", RemoteRole.TV));
+
+        nodeB.bye();
+        assertFalse(nodeA.hasRemoteMembers("1", RemoteRole.TV));
+        assertFalse(nodeC.hasRemoteMembers("1", RemoteRole.TV));
+    }
+
+    private RoomRouter router() {
+        InProcessRoomBroker broker = new InProcessRoomBroker();
+        brokers.add(broker);
+        RoomRouter router = new RoomRouter(broker, new SimpleMeterRegistry(), channelPrefix, 30_000, 2);
+        routers.add(router);
+        return router;
+    }
+}